@@ -0,0 +1,130 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.cassandra.cql.jdbc;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Estimates how many connections a host pool needs from the traffic it serves.
+ * <p>
+ * By Little's law the connections in use on average are the borrow rate times the time a connection
+ * is held. Both are smoothed over the samples taken by the pool maintenance, so the estimate follows
+ * the daily cycle of the traffic but not its short bursts, for which the pool keeps some headroom
+ * on top. Borrowers waiting for a connection mean the pool is too small right now, so the estimate
+ * then grows beyond the peak concurrency observed.
+ */
+class AdaptiveSizer
+{
+	// the weight of the latest sample in the moving averages
+	private static final double ALPHA = 0.3;
+
+	private static final double HEADROOM = 1.25;
+
+	// borrowers waiting longer than this on average, in seconds, call for more connections
+	private static final double WAIT_THRESHOLD = 0.002;
+
+	private final AtomicLong borrows = new AtomicLong();
+
+	private final AtomicLong waitNanos = new AtomicLong();
+
+	private final AtomicLong returns = new AtomicLong();
+
+	private final AtomicLong holdNanos = new AtomicLong();
+
+	private final AtomicInteger peakInFlight = new AtomicInteger();
+
+	// the moving averages, only used by the thread sampling
+	private double borrowRate = 0;
+
+	private double holdTime = 0;
+
+	private double waitTime = 0;
+
+	private volatile int target = 0;
+
+	void borrowed(long waitNanos, int inFlight)
+	{
+		borrows.incrementAndGet();
+		this.waitNanos.addAndGet(waitNanos);
+		while (true)
+		{
+			int peak = peakInFlight.get();
+			if (inFlight <= peak || peakInFlight.compareAndSet(peak, inFlight))
+			{
+				return;
+			}
+		}
+	}
+
+	void returned(long holdNanos)
+	{
+		returns.incrementAndGet();
+		this.holdNanos.addAndGet(holdNanos);
+	}
+
+	/**
+	 * Folds the activity since the previous sample into the estimate.
+	 *
+	 * @param elapsedNanos the time since the previous sample
+	 * @param inFlight the connections in use now
+	 * @param lower the smallest size to return
+	 * @param upper the largest size to return
+	 * @return the number of connections the pool should hold
+	 */
+	int sample(long elapsedNanos, int inFlight, int lower, int upper)
+	{
+		if (elapsedNanos > 0)
+		{
+			double elapsed = elapsedNanos / 1e9;
+			long borrowed = borrows.getAndSet(0);
+			long returned = returns.getAndSet(0);
+			double waited = waitNanos.getAndSet(0) / 1e9;
+			double held = holdNanos.getAndSet(0) / 1e9;
+			int peak = Math.max(peakInFlight.getAndSet(inFlight), inFlight);
+
+			borrowRate = ewma(borrowRate, borrowed / elapsed);
+			if (returned > 0)
+			{
+				holdTime = ewma(holdTime, held / returned);
+			}
+			waitTime = ewma(waitTime, borrowed > 0 ? waited / borrowed : 0);
+
+			int estimate = (int) Math.ceil(borrowRate * holdTime * HEADROOM);
+			if (waitTime > WAIT_THRESHOLD)
+			{
+				estimate = Math.max(estimate, peak + (peak + 3) / 4);
+			}
+			target = estimate;
+		}
+		return Math.max(lower, Math.min(upper, target));
+	}
+
+	int getTarget()
+	{
+		return target;
+	}
+
+	private static double ewma(double average, double sample)
+	{
+		return average + ALPHA * (sample - average);
+	}
+}
@@ -0,0 +1,534 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.cassandra.cql.jdbc;
+
+import static org.apache.cassandra.cql.jdbc.Utils.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.sql.SQLNonTransientConnectionException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.cassandra.thrift.AuthenticationRequest;
+import org.apache.cassandra.thrift.Cassandra;
+import org.apache.cassandra.thrift.Compression;
+import org.apache.cassandra.thrift.ConsistencyLevel;
+import org.apache.cassandra.thrift.CqlResult;
+import org.apache.thrift.TException;
+import org.apache.thrift.async.AsyncMethodCallback;
+import org.apache.thrift.async.TAsyncClientManager;
+import org.apache.thrift.protocol.TBinaryProtocol;
+import org.apache.thrift.transport.TNonblockingSocket;
+import org.apache.thrift.transport.TNonblockingTransport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+/**
+ * Executes CQL on behalf of a connection without blocking the calling thread.
+ * <p>
+ * Requests are sent over a small set of non-blocking Thrift channels, all driven by a single selector
+ * thread shared across the JVM. A Thrift channel carries one request at a time, so requests submitted
+ * while every channel is busy are queued and handed to the next channel that completes. Each channel
+ * authenticates and selects the keyspace of its connection on its own, and since Cassandra scopes
+ * prepared statement ids to the socket they were prepared on, each channel prepares the statements it
+ * executes the first time it sees them.
+ */
+class AsyncExecutor
+{
+    private static final Logger logger = LoggerFactory.getLogger(AsyncExecutor.class);
+
+    static final int DEFAULT_MAX_CHANNELS = 8;
+
+    private static TAsyncClientManager manager;
+
+    private final String host;
+    private final int port;
+    private final String username;
+    private final String password;
+    private final String cqlVersion;
+    private final int majorCqlVersion;
+    private final Compression compression;
+    private final int maxChannels;
+
+    private final AtomicInteger openChannels = new AtomicInteger();
+    private final Set<Channel> channels = Collections.newSetFromMap(new ConcurrentHashMap<Channel, Boolean>());
+    private final ConcurrentLinkedQueue<Channel> idle = new ConcurrentLinkedQueue<Channel>();
+    private final ConcurrentLinkedQueue<Request> pending = new ConcurrentLinkedQueue<Request>();
+
+    private volatile boolean closed = false;
+
+    AsyncExecutor(String host, int port, String username, String password, String cqlVersion, int majorCqlVersion, Compression compression, int maxChannels)
+    {
+        if (maxChannels < 1) throw new IllegalArgumentException("at least one asynchronous channel is required: " + maxChannels);
+        this.host = host;
+        this.port = port;
+        this.username = username;
+        this.password = password;
+        this.cqlVersion = cqlVersion;
+        this.majorCqlVersion = majorCqlVersion;
+        this.compression = compression;
+        this.maxChannels = maxChannels;
+    }
+
+    // the selector thread is a daemon so it is started once and shared by every connection
+    private static synchronized TAsyncClientManager manager() throws IOException
+    {
+        if (manager == null || !manager.isRunning()) manager = new TAsyncClientManager();
+        return manager;
+    }
+
+    /**
+     * Submit a query, or the execution of a prepared statement when values are given.
+     *
+     * @param cql the query, which is also the key of the prepared statement
+     * @param values the bound values of a prepared statement, or null to execute the query directly
+     * @param consistencyLevel the consistency level of the request
+     * @param keyspace the keyspace the request must run in
+     * @param timeout the time allowed for each call in milliseconds, or 0 for no limit
+     * @return the future result of the request, failing with a TimeoutException if a call takes too long
+     */
+    ListenableFuture<CqlResult> submit(String cql, List<ByteBuffer> values, ConsistencyLevel consistencyLevel, String keyspace, int timeout)
+    {
+        Request request = new Request(cql, values, consistencyLevel, keyspace, timeout);
+        if (closed)
+        {
+            request.future.setException(new SQLNonTransientConnectionException(WAS_CLOSED_CON));
+            return request.future;
+        }
+
+        Channel channel = idle.poll();
+        if (channel == null) channel = openChannel(request);
+        if (channel != null)
+        {
+            channel.start(request);
+        }
+        else if (!request.future.isDone())
+        {
+            pending.add(request);
+            drain();
+            // do not strand the request if the connection was closed meanwhile
+            if (closed) close();
+        }
+        return request.future;
+    }
+
+    /**
+     * Fail every queued and in flight request and close the channels.
+     */
+    void close()
+    {
+        closed = true;
+        SQLNonTransientConnectionException error = new SQLNonTransientConnectionException(WAS_CLOSED_CON);
+
+        Request request;
+        while ((request = pending.poll()) != null)
+            request.future.setException(error);
+
+        for (Channel channel : channels)
+            channel.abort(error);
+    }
+
+    // open a new channel if the limit allows it, failing the request if the socket cannot be created
+    private Channel openChannel(Request request)
+    {
+        while (true)
+        {
+            int current = openChannels.get();
+            if (current >= maxChannels) return null;
+            if (openChannels.compareAndSet(current, current + 1)) break;
+        }
+
+        try
+        {
+            Channel channel = new Channel();
+            channels.add(channel);
+            return channel;
+        }
+        catch (IOException e)
+        {
+            openChannels.decrementAndGet();
+            request.future.setException(new SQLNonTransientConnectionException(e));
+            return null;
+        }
+    }
+
+    // hand queued requests to idle channels; called after every change that may pair them up
+    private void drain()
+    {
+        while (!pending.isEmpty())
+        {
+            Channel channel = idle.poll();
+            if (channel == null) return;
+
+            Request request = pending.poll();
+            if (request == null)
+            {
+                // another thread took the request, put the channel back and look again
+                idle.add(channel);
+                continue;
+            }
+            channel.start(request);
+        }
+    }
+
+    // the transport and client of a new channel, overridden by tests to run without a server
+    TNonblockingTransport openTransport() throws IOException
+    {
+        return new TNonblockingSocket(host, port);
+    }
+
+    Cassandra.AsyncClient openClient(TNonblockingTransport transport) throws IOException
+    {
+        return new Cassandra.AsyncClient(new TBinaryProtocol.Factory(), manager(), transport);
+    }
+
+    private void release(Channel channel)
+    {
+        if (closed)
+        {
+            channel.abort(new SQLNonTransientConnectionException(WAS_CLOSED_CON));
+            discard(channel);
+            return;
+        }
+
+        Request next = pending.poll();
+        if (next != null)
+        {
+            channel.start(next);
+        }
+        else
+        {
+            idle.add(channel);
+            drain();
+        }
+    }
+
+    private void discard(Channel channel)
+    {
+        if (!channels.remove(channel)) return;
+        openChannels.decrementAndGet();
+
+        // replace the channel if requests are still waiting for one
+        Request next = pending.poll();
+        if (next == null) return;
+
+        Channel replacement = openChannel(next);
+        if (replacement != null) replacement.start(next);
+        else if (!next.future.isDone())
+        {
+            pending.add(next);
+            drain();
+        }
+    }
+
+    private static class Request
+    {
+        final String cql;
+        final List<ByteBuffer> values;
+        final ConsistencyLevel consistencyLevel;
+        final String keyspace;
+        final int timeout;
+        final SettableFuture<CqlResult> future = SettableFuture.create();
+
+        Request(String cql, List<ByteBuffer> values, ConsistencyLevel consistencyLevel, String keyspace, int timeout)
+        {
+            this.cql = cql;
+            this.values = values;
+            this.consistencyLevel = consistencyLevel;
+            this.keyspace = keyspace;
+            this.timeout = timeout;
+        }
+    }
+
+    /**
+     * A non-blocking Thrift connection running one request at a time. Completing a request needs up to
+     * a few calls (login, keyspace, prepare) before the actual execution, so each callback issues the
+     * next call still needed until the request is done.
+     */
+    private class Channel
+    {
+        private final TNonblockingTransport socket;
+        private final Cassandra.AsyncClient client;
+
+        // statement ids prepared on this socket, keyed by the keyspace they were prepared in and their CQL
+        private final Map<String, Integer> prepared = new HashMap<String, Integer>();
+
+        private boolean authenticated;
+        private boolean versionSet;
+        private String keyspace;
+
+        private volatile Request current;
+
+        Channel() throws IOException
+        {
+            socket = openTransport();
+            client = openClient(socket);
+            authenticated = (username == null);
+            versionSet = (majorCqlVersion <= 2);
+        }
+
+        void start(Request request)
+        {
+            current = request;
+            // a timed out call closes the socket, so the channel is discarded as any broken one
+            client.setTimeout(request.timeout);
+            advance();
+        }
+
+        // issue the next call the current request is waiting for
+        private void advance()
+        {
+            final Request request = current;
+            try
+            {
+                if (!authenticated)
+                {
+                    Map<String, String> credentials = new HashMap<String, String>();
+                    credentials.put("username", username);
+                    if (password != null) credentials.put("password", password);
+                    client.login(new AuthenticationRequest(credentials), new Step<Cassandra.AsyncClient.login_call>()
+                    {
+                        CqlResult completed(Cassandra.AsyncClient.login_call call) throws Exception
+                        {
+                            call.getResult();
+                            authenticated = true;
+                            return null;
+                        }
+                    });
+                }
+                else if (!versionSet)
+                {
+                    client.set_cql_version(cqlVersion, new Step<Cassandra.AsyncClient.set_cql_version_call>()
+                    {
+                        CqlResult completed(Cassandra.AsyncClient.set_cql_version_call call) throws Exception
+                        {
+                            call.getResult();
+                            versionSet = true;
+                            return null;
+                        }
+                    });
+                }
+                else if (request.keyspace != null && !request.keyspace.equals(keyspace))
+                {
+                    client.set_keyspace(request.keyspace, new Step<Cassandra.AsyncClient.set_keyspace_call>()
+                    {
+                        CqlResult completed(Cassandra.AsyncClient.set_keyspace_call call) throws Exception
+                        {
+                            call.getResult();
+                            keyspace = request.keyspace;
+                            return null;
+                        }
+                    });
+                }
+                else if (request.values != null && !prepared.containsKey(preparedKey(request)))
+                {
+                    prepare(request);
+                }
+                else
+                {
+                    execute(request);
+                }
+            }
+            catch (TException e)
+            {
+                broken(e);
+            }
+            catch (RuntimeException e)
+            {
+                broken(e);
+            }
+        }
+
+        // a statement resolves its tables in the keyspace it is prepared in, so its id is only valid there
+        private String preparedKey(Request request)
+        {
+            // a keyspace name has no spaces, so the key cannot be ambiguous
+            return keyspace == null ? " " + request.cql : keyspace + " " + request.cql;
+        }
+
+        private void prepare(final Request request) throws TException
+        {
+            final String key = preparedKey(request);
+            ByteBuffer query = Utils.compressQuery(request.cql, compression);
+            if (majorCqlVersion == 3)
+            {
+                client.prepare_cql3_query(query, compression, new Step<Cassandra.AsyncClient.prepare_cql3_query_call>()
+                {
+                    CqlResult completed(Cassandra.AsyncClient.prepare_cql3_query_call call) throws Exception
+                    {
+                        prepared.put(key, call.getResult().itemId);
+                        return null;
+                    }
+                });
+            }
+            else
+            {
+                client.prepare_cql_query(query, compression, new Step<Cassandra.AsyncClient.prepare_cql_query_call>()
+                {
+                    CqlResult completed(Cassandra.AsyncClient.prepare_cql_query_call call) throws Exception
+                    {
+                        prepared.put(key, call.getResult().itemId);
+                        return null;
+                    }
+                });
+            }
+        }
+
+        private void execute(final Request request) throws TException
+        {
+            if (request.values != null)
+            {
+                int itemId = prepared.get(preparedKey(request));
+                if (majorCqlVersion == 3)
+                {
+                    client.execute_prepared_cql3_query(itemId, request.values, request.consistencyLevel, new Step<Cassandra.AsyncClient.execute_prepared_cql3_query_call>()
+                    {
+                        CqlResult completed(Cassandra.AsyncClient.execute_prepared_cql3_query_call call) throws Exception
+                        {
+                            return call.getResult();
+                        }
+                    });
+                }
+                else
+                {
+                    client.execute_prepared_cql_query(itemId, request.values, new Step<Cassandra.AsyncClient.execute_prepared_cql_query_call>()
+                    {
+                        CqlResult completed(Cassandra.AsyncClient.execute_prepared_cql_query_call call) throws Exception
+                        {
+                            return call.getResult();
+                        }
+                    });
+                }
+            }
+            else
+            {
+                ByteBuffer query = Utils.compressQuery(request.cql, compression);
+                if (majorCqlVersion == 3)
+                {
+                    client.execute_cql3_query(query, compression, request.consistencyLevel, new Step<Cassandra.AsyncClient.execute_cql3_query_call>()
+                    {
+                        CqlResult completed(Cassandra.AsyncClient.execute_cql3_query_call call) throws Exception
+                        {
+                            return call.getResult();
+                        }
+                    });
+                }
+                else
+                {
+                    client.execute_cql_query(query, compression, new Step<Cassandra.AsyncClient.execute_cql_query_call>()
+                    {
+                        CqlResult completed(Cassandra.AsyncClient.execute_cql_query_call call) throws Exception
+                        {
+                            return call.getResult();
+                        }
+                    });
+                }
+            }
+        }
+
+        private void done(CqlResult result)
+        {
+            Request request = current;
+            current = null;
+
+            // a USE statement moves this socket to another keyspace
+            keyspace = determineCurrentKeyspace(request.cql, keyspace);
+            request.future.set(result);
+            release(this);
+        }
+
+        // the server rejected the request but the channel is still usable
+        private void failed(Exception e)
+        {
+            Request request = current;
+            current = null;
+            request.future.setException(e);
+            release(this);
+        }
+
+        // the transport failed, so the channel can not be reused
+        private void broken(Exception e)
+        {
+            if (logger.isDebugEnabled()) logger.debug("asynchronous channel to {}:{} failed: {}", new Object[]{host, port, e});
+            abort(e);
+            discard(this);
+        }
+
+        void abort(Exception e)
+        {
+            Request request = current;
+            current = null;
+            if (request != null) request.future.setException(e);
+            socket.close();
+        }
+
+        /**
+         * Callback of one call: a failure reported by the server fails the request, anything else
+         * fails the channel. Callbacks run on the selector thread and must never throw.
+         */
+        private abstract class Step<T> implements AsyncMethodCallback<T>
+        {
+            /**
+             * @return the result of the request, or null if it still needs more calls
+             */
+            abstract CqlResult completed(T call) throws Exception;
+
+            public void onComplete(T call)
+            {
+                if (current == null) return; // aborted while the call was in flight
+
+                CqlResult result;
+                try
+                {
+                    result = completed(call);
+                }
+                catch (TException e)
+                {
+                    broken(e);
+                    return;
+                }
+                catch (Exception e)
+                {
+                    failed(e);
+                    return;
+                }
+
+                if (result == null) advance();
+                else done(result);
+            }
+
+            public void onError(Exception e)
+            {
+                broken(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,251 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.cassandra.cql.jdbc;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import org.apache.cassandra.cql.jdbc.CqlTemplate.Literal;
+import org.apache.cassandra.thrift.ConsistencyLevel;
+import org.apache.cassandra.thrift.CqlPreparedResult;
+import org.apache.cassandra.thrift.CqlResult;
+import org.apache.cassandra.thrift.InvalidRequestException;
+import org.apache.cassandra.thrift.SchemaDisagreementException;
+import org.apache.cassandra.thrift.TimedOutException;
+import org.apache.cassandra.thrift.UnavailableException;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.thrift.TException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Executes the CQL strings of plain statements through prepared statements.
+ * <p>
+ * With auto-parameterization, the literals of a statement are replaced by bind markers (see
+ * {@link CqlTemplate}), so that all the statements differing only by their literals share one
+ * prepared statement, to which the literals are bound. With auto-preparation, a statement, or its
+ * template, is only prepared once it was executed that many times, so that one-off statements do
+ * not cost an extra round trip. A template the server refuses to prepare, or whose literals do not
+ * exactly match the types of its bind markers, is executed as the CQL it came from.
+ */
+class AutoPreparer
+{
+    private static final Logger logger = LoggerFactory.getLogger(AutoPreparer.class);
+
+    // the statements whose executions are counted, the least recently executed are forgotten first
+    private static final int MAX_COUNTED = 1024;
+
+    // the count of a statement the server refused to prepare
+    private static final int REFUSED = -1;
+
+    private static final Set<String> INTEGER_TYPES = new HashSet<String>(Arrays.asList("int", "bigint", "varint", "counter", "decimal", "double", "float", "timestamp"));
+
+    private static final Set<String> FLOAT_TYPES = new HashSet<String>(Arrays.asList("decimal", "double", "float"));
+
+    private final CassandraConnection connection;
+
+    private final boolean parameterize;
+
+    private final int threshold;
+
+    @SuppressWarnings("serial")
+    private final Map<String, Integer> executions = new LinkedHashMap<String, Integer>(16, 0.75f, true)
+    {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest)
+        {
+            return size() > MAX_COUNTED;
+        }
+    };
+
+    /**
+     * @param parameterize true to replace the literals of the statements by bind markers
+     * @param threshold the executions of a statement before it is prepared, 0 to prepare templates
+     *        at once and never prepare statements without literals
+     */
+    AutoPreparer(CassandraConnection connection, boolean parameterize, int threshold)
+    {
+        this.connection = connection;
+        this.parameterize = parameterize;
+        this.threshold = threshold;
+    }
+
+    /**
+     * @return the prepared execution of a statement, or null to execute its CQL as is
+     */
+    Execution forQuery(String cql) throws SQLException
+    {
+        // USE must go through the connection, which tracks the keyspace, and schema changes are one-offs
+        if (!CqlTemplate.isDml(cql)) return null;
+        CqlTemplate template = parameterize ? CqlTemplate.parse(cql) : null;
+        String prepared = template == null ? cql : template.getCql();
+        if (template == null && threshold == 0) return null;
+        if (!due(prepared)) return null;
+
+        CqlPreparedResult result;
+        try
+        {
+            result = connection.prepareCached(prepared);
+        }
+        catch (InvalidRequestException e)
+        {
+            logger.debug("Executing without preparing, the server refused '{}': {}", prepared, e.getWhy());
+            refuse(prepared);
+            return null;
+        }
+        catch (TException e)
+        {
+            throw new SQLNonTransientConnectionException(e);
+        }
+
+        List<ByteBuffer> values = template == null ? new ArrayList<ByteBuffer>(0) : bind(template.getLiterals(), ParameterBinder.forResult(result));
+        if (values == null) return null;
+        return new Execution(prepared, result.itemId, connection.generation, values);
+    }
+
+    // counts an execution of the statement, true if it is to be prepared
+    private synchronized boolean due(String cql)
+    {
+        Integer count = executions.get(cql);
+        if (count != null && count == REFUSED) return false;
+        if (threshold <= 1) return true;
+        int executed = count == null ? 1 : Math.min(count + 1, threshold);
+        executions.put(cql, executed);
+        return executed >= threshold;
+    }
+
+    private synchronized void refuse(String cql)
+    {
+        executions.put(cql, REFUSED);
+    }
+
+    // the literals encoded as the types of their bind markers, null if one does not match exactly
+    private static List<ByteBuffer> bind(List<Literal> literals, ParameterBinder[] binders)
+    {
+        if (binders.length != literals.size()) return null;
+        List<ByteBuffer> values = new ArrayList<ByteBuffer>(binders.length);
+        for (int i = 0; i < binders.length; i++)
+        {
+            ParameterBinder binder = binders[i];
+            Object value = binder == null || !binder.isTyped() ? null : value(literals.get(i), binder.getTypeName());
+            if (value == null) return null;
+            try
+            {
+                values.add(binder.encode(i + 1, value));
+            }
+            catch (SQLException e)
+            {
+                // e.g. an integer out of the range of its type, for the server to report
+                return null;
+            }
+        }
+        return values;
+    }
+
+    // the value of a literal for a type, when the server would read the literal as that value
+    private static Object value(Literal literal, String type)
+    {
+        try
+        {
+            switch (literal.kind)
+            {
+                case STRING:
+                    if (type.equals("text") || (type.equals("ascii") && isAscii(literal.text))) return literal.text;
+                    break;
+                case INTEGER:
+                    if (INTEGER_TYPES.contains(type)) return new BigInteger(literal.text);
+                    break;
+                case FLOAT:
+                    if (FLOAT_TYPES.contains(type)) return new BigDecimal(literal.text);
+                    break;
+                case UUID:
+                    if (type.equals("uuid") || type.equals("timeuuid")) return UUID.fromString(literal.text);
+                    break;
+                case BOOLEAN:
+                    if (type.equals("boolean")) return Boolean.valueOf(literal.text);
+                    break;
+                case HEX:
+                    if (type.equals("blob") && literal.text.length() % 2 == 0) return ByteBufferUtil.hexToBytes(literal.text);
+                    break;
+            }
+        }
+        catch (NumberFormatException e)
+        {
+            // left to the server
+        }
+        return null;
+    }
+
+    private static boolean isAscii(String string)
+    {
+        for (int i = 0; i < string.length(); i++)
+        {
+            if (string.charAt(i) >= 0x80) return false;
+        }
+        return true;
+    }
+
+    /**
+     * One execution of a prepared statement with the values bound to it.
+     */
+    static class Execution
+    {
+        private final String cql;
+
+        private int itemId;
+
+        private int generation;
+
+        private final List<ByteBuffer> values;
+
+        Execution(String cql, int itemId, int generation, List<ByteBuffer> values)
+        {
+            this.cql = cql;
+            this.itemId = itemId;
+            this.generation = generation;
+            this.values = values;
+        }
+
+        CqlResult send(CassandraConnection connection, ConsistencyLevel level, int timeout)
+                  throws InvalidRequestException, UnavailableException, TimedOutException, SchemaDisagreementException, TException, SQLException
+        {
+            // the statement is gone from the server if the transport was reopened since it was prepared
+            connection.checkTransport();
+            if (generation != connection.generation)
+            {
+                itemId = connection.prepareCached(cql).itemId;
+                generation = connection.generation;
+            }
+            return connection.execute(itemId, values, level, timeout);
+        }
+    }
+}
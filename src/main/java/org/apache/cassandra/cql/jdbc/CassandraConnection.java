@@ -20,6 +20,7 @@
  */
 package org.apache.cassandra.cql.jdbc;
 
+import java.net.SocketTimeoutException;
 import java.nio.ByteBuffer;
 import java.sql.*;
 import java.util.HashMap;
@@ -28,11 +29,13 @@ import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Executor;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import org.apache.cassandra.thrift.*;
+import org.apache.thrift.TApplicationException;
 import org.apache.thrift.TException;
 import org.apache.thrift.protocol.TBinaryProtocol;
 import org.apache.thrift.protocol.TProtocol;
@@ -40,6 +43,8 @@ import org.apache.thrift.transport.TFramedTransport;
 import org.apache.thrift.transport.TSocket;
 import org.apache.thrift.transport.TTransport;
 
+import com.google.common.util.concurrent.ListenableFuture;
+
 import static org.apache.cassandra.cql.jdbc.Utils.*;
 import static org.apache.cassandra.cql.jdbc.CassandraResultSet.*;
 
@@ -47,13 +52,12 @@ import static org.apache.cassandra.cql.jdbc.CassandraResultSet.*;
 /**
  * Implementation class for {@link Connection}.
  */
-class CassandraConnection extends AbstractConnection implements Connection
+class CassandraConnection extends AbstractConnection implements CassandraConnectionExtras, Connection
 {
 
     private static final Logger logger = LoggerFactory.getLogger(CassandraConnection.class);
 
-    static final String IS_VALID_CQLQUERY_2_0_0 = "SELECT COUNT(1) FROM system.Versions WHERE component = 'cql';";
-    static final String IS_VALID_CQLQUERY_3_0_0 = "SELECT COUNT(1) FROM system.\"Versions\" WHERE component = 'cql';";
+    static final int DEFAULT_VALIDATION_WINDOW = 5000;
     
     public static final int DB_MAJOR_VERSION = 1;
     public static final int DB_MINOR_VERSION = 2;
@@ -84,7 +88,7 @@ class CassandraConnection extends AbstractConnection implements Connection
     private Cassandra.Client client;
     private TTransport transport;
 
-    protected long timeOfLastFailure = 0;
+    protected volatile long timeOfLastFailure = 0;
     protected int numFailures = 0;
     protected String username = null;
     protected String url = null;
@@ -94,13 +98,50 @@ class CassandraConnection extends AbstractConnection implements Connection
     ColumnDecoder decoder;
 
     private TSocket socket;
-    
-    PreparedStatement isAlive = null;
-    
-    private String currentCqlVersion;
+
+    private String host;
+    private int port;
+    private String password;
+    private String version;
+
+    private volatile boolean closed = false;
+
+    // set when a call failed half way: the framed transport is out of step and must be reopened
+    private volatile boolean recycle = false;
+
+    // set by cancel() while a call is running
+    private volatile boolean cancelled = false;
+
+    private volatile boolean inCall = false;
+
+    private int networkTimeout = 0;
+
+    // when the last response was received, isValid trusts a connection that answered recently
+    private volatile long timeOfLastSuccess = 0;
+
+    private int validationWindow;
+
+    private PreparedStatementCache preparedStatementCache;
+
+    /**
+     * Incremented each time the transport is reopened. Prepared statement ids are scoped to the
+     * transport, so statements prepared in an earlier generation must be prepared again.
+     */
+    int generation = 0;
     
     ConsistencyLevel defaultConsistencyLevel;
 
+    RetryPolicy defaultRetryPolicy;
+
+    RetryBudget retryBudget;
+
+    ObjectSerializer objectSerializer;
+
+    /** executes the CQL of plain statements through prepared statements, null unless asked for */
+    AutoPreparer autoPreparer;
+
+    private AsyncExecutor asyncExecutor;
+
     /**
      * Instantiates a new CassandraConnection.
      */
@@ -111,23 +152,56 @@ class CassandraConnection extends AbstractConnection implements Connection
         url = PROTOCOL + createSubName(props);
         try
         {
-            String host = props.getProperty(TAG_SERVER_NAME);
-            int port = Integer.parseInt(props.getProperty(TAG_PORT_NUMBER));
+            host = props.getProperty(TAG_SERVER_NAME);
+            port = Integer.parseInt(props.getProperty(TAG_PORT_NUMBER));
             currentKeyspace = props.getProperty(TAG_DATABASE_NAME);
             username = props.getProperty(TAG_USER);
-            String password = props.getProperty(TAG_PASSWORD);
-            String version = props.getProperty(TAG_CQL_VERSION,DEFAULT_CQL_VERSION);
+            password = props.getProperty(TAG_PASSWORD);
+            version = props.getProperty(TAG_CQL_VERSION,DEFAULT_CQL_VERSION);
             connectionProps.setProperty(TAG_ACTIVE_CQL_VERSION, version);
             majorCqlVersion = getMajor(version);
             defaultConsistencyLevel = ConsistencyLevel.valueOf(props.getProperty(TAG_CONSISTENCY_LEVEL,ConsistencyLevel.ONE.name()));
+            defaultRetryPolicy = createRetryPolicy(props.getProperty(TAG_RETRY_POLICY));
+            objectSerializer = createObjectSerializer(props.getProperty(TAG_OBJECT_SERIALIZER));
+            retryBudget = new RetryBudget(Double.parseDouble(props.getProperty(TAG_RETRY_BUDGET, String.valueOf(RetryBudget.DEFAULT_RATIO))));
+            validationWindow = Integer.parseInt(props.getProperty(TAG_VALIDATION_WINDOW, String.valueOf(DEFAULT_VALIDATION_WINDOW)));
+            preparedStatementCache = new PreparedStatementCache(
+                Integer.parseInt(props.getProperty(TAG_PREPARED_CACHE_SIZE, String.valueOf(PreparedStatementCache.DEFAULT_MAX_ENTRIES))),
+                Long.parseLong(props.getProperty(TAG_PREPARED_CACHE_BYTES, String.valueOf(PreparedStatementCache.DEFAULT_MAX_BYTES))));
+
+            connect();
+
+            boolean parameterize = Boolean.parseBoolean(props.getProperty(TAG_AUTO_PARAMETERIZE));
+            int autoPrepare = Integer.parseInt(props.getProperty(TAG_AUTO_PREPARE, "0"));
+            // only CQL 3 reports the types of the bind markers, which the literals are bound as
+            if (majorCqlVersion == 3 && (parameterize || autoPrepare > 0)) autoPreparer = new AutoPreparer(this, parameterize, autoPrepare);
 
+            cluster = client.describe_cluster_name();
+            decoder = new ColumnDecoder(client.describe_keyspaces());
+
+            Object[] args = {host, port,currentKeyspace,cluster,version, defaultConsistencyLevel.name()};
+            logger.debug("Connected to {}:{} in Cluster '{}' using Keyspace '{}', CQL version '{}' and Consistency level {}",args);                       
+        }
+        catch (InvalidRequestException e)
+        {
+            throw new SQLSyntaxErrorException(e);
+        }
+        catch (TException e)
+        {
+            throw new SQLNonTransientConnectionException(e);
+        }
+    }
+
+    // open the transport and set up the session on it: credentials, CQL version and keyspace
+    private void connect() throws SQLException
+    {
+        try
+        {
             socket = new TSocket(host, port);
             transport = new TFramedTransport(socket);
             TProtocol protocol = new TBinaryProtocol(transport);
             client = new Cassandra.Client(protocol);
             socket.open();
-            
-            cluster = client.describe_cluster_name();
 
             if (username != null)
             {
@@ -142,13 +216,8 @@ class CassandraConnection extends AbstractConnection implements Connection
             {
                 client.set_cql_version(version);
             }
-            
-            decoder = new ColumnDecoder(client.describe_keyspaces());
                     
             if (currentKeyspace != null) client.set_keyspace(currentKeyspace);
-
-            Object[] args = {host, port,currentKeyspace,cluster,version, defaultConsistencyLevel.name()};
-            logger.debug("Connected to {}:{} in Cluster '{}' using Keyspace '{}', CQL version '{}' and Consistency level {}",args);                       
         }
         catch (InvalidRequestException e)
         {
@@ -167,6 +236,82 @@ class CassandraConnection extends AbstractConnection implements Connection
             throw new SQLInvalidAuthorizationSpecException(e);
         }
     }
+
+    /**
+     * Reopen the transport if a call was interrupted by a timeout, a cancel or a network error.
+     */
+    void checkTransport() throws SQLException
+    {
+        checkNotClosed();
+        if (!recycle) return;
+
+        transport.close();
+        connect();
+        preparedStatementCache.clear();
+        generation++;
+        recycle = false;
+        logger.debug("Reopened the transport to {}:{}", host, port);
+    }
+
+    // the socket timeout of the next call: the tighter of the call's own timeout and the network timeout
+    private int effectiveTimeout(int timeout)
+    {
+        if (timeout <= 0) return networkTimeout;
+        if (networkTimeout <= 0) return timeout;
+        return Math.min(timeout, networkTimeout);
+    }
+
+    private void beginCall(int timeout) throws SQLException
+    {
+        checkTransport();
+        cancelled = false;
+        socket.setTimeout(effectiveTimeout(timeout));
+        inCall = true;
+    }
+
+    // the server answered, with a result or with an exception, so the connection works
+    private void endCall()
+    {
+        if (!inCall) return;
+        inCall = false;
+        timeOfLastSuccess = System.currentTimeMillis();
+    }
+
+    // account for a failed call, reporting a timeout or a cancel as such
+    private TException callFailed(TException error, int timeout) throws SQLException
+    {
+        inCall = false;
+        numFailures++;
+        timeOfLastFailure = System.currentTimeMillis();
+
+        // an application exception is a complete response, anything else may leave part of one on the wire
+        if (!(error instanceof TApplicationException)) recycle = true;
+
+        if (cancelled) throw new SQLTransientException(WAS_CANCELLED, error);
+        if (isTimeout(error)) throw new SQLTimeoutException(String.format(CALL_TIMED_OUT, effectiveTimeout(timeout)), error);
+        return error;
+    }
+
+    private static boolean isTimeout(Throwable error)
+    {
+        for (Throwable cause = error; cause != null; cause = cause.getCause())
+        {
+            if (cause instanceof SocketTimeoutException) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Interrupt the call in progress, if any. The caller gets a SQLTransientException and the
+     * transport is reopened before the next call.
+     */
+    void cancel()
+    {
+        if (!inCall) return;
+        cancelled = true;
+        recycle = true;
+        socket.close();
+    }
     
     // get the Major portion of a string like : Major.minor.patch where 2 is the default
     private final int getMajor(String version)
@@ -184,6 +329,34 @@ class CassandraConnection extends AbstractConnection implements Connection
         return major;
     }
     
+    // instantiate the retry policy named in the connection properties (or the default one)
+    private final RetryPolicy createRetryPolicy(String className) throws SQLException
+    {
+        if (className == null) return DefaultRetryPolicy.INSTANCE;
+        try
+        {
+            return (RetryPolicy) Class.forName(className).newInstance();
+        }
+        catch (Exception e)
+        {
+            throw new SQLNonTransientConnectionException(String.format(BAD_RETRY_POLICY, className), e);
+        }
+    }
+
+    private final ObjectSerializer createObjectSerializer(String name) throws SQLException
+    {
+        if (name == null || name.equals("java")) return JavaObjectSerializer.INSTANCE;
+        if (name.equals("compact")) return CompactObjectSerializer.INSTANCE;
+        try
+        {
+            return (ObjectSerializer) Class.forName(name).newInstance();
+        }
+        catch (Exception e)
+        {
+            throw new SQLNonTransientConnectionException(String.format(BAD_OBJECT_SERIALIZER, name), e);
+        }
+    }
+    
     private final void checkNotClosed() throws SQLException
     {
         if (isClosed()) throw new SQLNonTransientConnectionException(WAS_CLOSED_CON);
@@ -201,10 +374,23 @@ class CassandraConnection extends AbstractConnection implements Connection
      */
     public synchronized void close() throws SQLException
     {
+        closed = true;
+
         // close all statements associated with this connection upon close
         for (Statement statement : statements)
             statement.close();
         statements.clear();
+
+        if (asyncExecutor != null)
+        {
+            asyncExecutor.close();
+            asyncExecutor = null;
+        }
+
+        if (preparedStatementCache != null)
+        {
+            logger.debug("Prepared statement cache of {}:{}: {} hits, {} misses", new Object[]{host, port, preparedStatementCache.getHits(), preparedStatementCache.getMisses()});
+        }
         
         if (isConnected())
         {
@@ -310,10 +496,46 @@ class CassandraConnection extends AbstractConnection implements Connection
         return null;
     }
 
-    public synchronized boolean isClosed() throws SQLException
+    public boolean isClosed() throws SQLException
+    {
+        return closed;
+    }
+
+    public void abort(Executor executor) throws SQLException
     {
+        if (executor == null) throw new SQLNonTransientException(NULL_EXECUTOR);
+        if (closed) return;
 
-        return !isConnected();
+        // fail the call in progress right away, the rest of the clean up may wait for it
+        closed = true;
+        socket.close();
+        executor.execute(new Runnable()
+        {
+            public void run()
+            {
+                try
+                {
+                    close();
+                }
+                catch (SQLException e)
+                {
+                    logger.warn("Error while closing an aborted connection", e);
+                }
+            }
+        });
+    }
+
+    public void setNetworkTimeout(Executor executor, int milliseconds) throws SQLException
+    {
+        checkNotClosed();
+        if (milliseconds < 0) throw new SQLNonTransientException(BAD_TIMEOUT);
+        networkTimeout = milliseconds;
+    }
+
+    public int getNetworkTimeout() throws SQLException
+    {
+        checkNotClosed();
+        return networkTimeout;
     }
 
     public boolean isReadOnly() throws SQLException
@@ -322,41 +544,49 @@ class CassandraConnection extends AbstractConnection implements Connection
         return false;
     }
 
+    /**
+     * Checks the connection with a describe_version call, which the server answers without reading
+     * any table. The check is skipped if the connection received a response within the validation
+     * window and has not failed since.
+     */
     public boolean isValid(int timeout) throws SQLTimeoutException
     {
         if (timeout < 0) throw new SQLTimeoutException(BAD_TIMEOUT);
+        if (closed) return false;
 
-        // set timeout
-        socket.setTimeout(timeout * 1000);
+        long lastSuccess = timeOfLastSuccess;
+        if (!recycle && lastSuccess > timeOfLastFailure && System.currentTimeMillis() - lastSuccess < validationWindow) return true;
 
         try
         {
-        	if (isClosed()) {
-        		return false;
-        	}
-        	
-            if (isAlive == null)
+            beginCall(timeout * 1000);
+            try
+            {
+                client.describe_version();
+            }
+            catch (TException error)
+            {
+                throw callFailed(error, timeout * 1000);
+            }
+            finally
             {
-                isAlive = prepareStatement(currentCqlVersion == "2.0.0" ? IS_VALID_CQLQUERY_2_0_0 : IS_VALID_CQLQUERY_3_0_0);
+                endCall();
             }
-            // the result is not important
-            isAlive.executeQuery().close();
         }
-        catch (SQLException e)
+        catch (TException e)
         {
-        	return false;
+            return false;
         }
-        finally {
-            // reset timeout
-            socket.setTimeout(0);
+        catch (SQLException e)
+        {
+            return false;
         }
-
         return true;
     }
 
-    public boolean isWrapperFor(Class<?> arg0) throws SQLException
+    public boolean isWrapperFor(Class<?> iface) throws SQLException
     {
-        return false;
+        return iface.isInstance(this);
     }
 
     public String nativeSQL(String sql) throws SQLException
@@ -443,6 +673,7 @@ class CassandraConnection extends AbstractConnection implements Connection
 
     public <T> T unwrap(Class<T> iface) throws SQLException
     {
+        if (iface.isInstance(this)) return iface.cast(this);
         throw new SQLFeatureNotSupportedException(String.format(NO_INTERFACE, iface.getSimpleName()));
     }
 
@@ -452,17 +683,22 @@ class CassandraConnection extends AbstractConnection implements Connection
      * @param queryStr    a CQL query string
      * @param ConsistencyLevel	the CQL query consistency level
      * @param compression query compression to use
+     * @param timeout the time to wait for the response in milliseconds, or 0 to wait for as long as the network timeout allows
      * @return the query results encoded as a CqlResult structure
      * @throws InvalidRequestException     on poorly constructed or illegal requests
      * @throws UnavailableException        when not all required replicas could be created/read
      * @throws TimedOutException           when a cluster operation timed out
      * @throws SchemaDisagreementException when the client side and server side are at different versions of schema (Thrift)
      * @throws TException                  when there is a error in Thrift processing
+     * @throws SQLTimeoutException         when the response did not arrive in time
+     * @throws SQLTransientException       when the call was cancelled
      */
-    protected CqlResult execute(String queryStr, Compression compression, ConsistencyLevel consistencyLevel) throws InvalidRequestException, UnavailableException, TimedOutException, SchemaDisagreementException, TException
+    protected CqlResult execute(String queryStr, Compression compression, ConsistencyLevel consistencyLevel, int timeout)
+              throws InvalidRequestException, UnavailableException, TimedOutException, SchemaDisagreementException, TException, SQLException
     {
         currentKeyspace = determineCurrentKeyspace(queryStr, currentKeyspace);
 
+        beginCall(timeout);
         try
         {
             if (majorCqlVersion==3) return client.execute_cql3_query(Utils.compressQuery(queryStr, compression), compression, consistencyLevel);
@@ -470,9 +706,11 @@ class CassandraConnection extends AbstractConnection implements Connection
         }
         catch (TException error)
         {
-            numFailures++;
-            timeOfLastFailure = System.currentTimeMillis();
-            throw error;
+            throw callFailed(error, timeout);
+        }
+        finally
+        {
+            endCall();
         }
     }
 
@@ -481,22 +719,32 @@ class CassandraConnection extends AbstractConnection implements Connection
      *
      * @param queryStr a CQL query string
      * @param ConsistencyLevel	the CQL query consistency level
+     * @param timeout the time to wait for the response in milliseconds, or 0 to wait for as long as the network timeout allows
      * @return the query results encoded as a CqlResult structure
      * @throws InvalidRequestException     on poorly constructed or illegal requests
      * @throws UnavailableException        when not all required replicas could be created/read
      * @throws TimedOutException           when a cluster operation timed out
      * @throws SchemaDisagreementException when the client side and server side are at different versions of schema (Thrift)
      * @throws TException                  when there is a error in Thrift processing
+     * @throws SQLTimeoutException         when the response did not arrive in time
+     * @throws SQLTransientException       when the call was cancelled
      */
+    protected CqlResult execute(String queryStr, ConsistencyLevel consistencyLevel, int timeout)
+              throws InvalidRequestException, UnavailableException, TimedOutException, SchemaDisagreementException, TException, SQLException
+    {
+        return execute(queryStr, defaultCompression, consistencyLevel, timeout);
+    }
+
     protected CqlResult execute(String queryStr, ConsistencyLevel consistencyLevel)
-              throws InvalidRequestException, UnavailableException, TimedOutException, SchemaDisagreementException, TException
+              throws InvalidRequestException, UnavailableException, TimedOutException, SchemaDisagreementException, TException, SQLException
     {
-        return execute(queryStr, defaultCompression, consistencyLevel);
+        return execute(queryStr, defaultCompression, consistencyLevel, 0);
     }
 
-    protected CqlResult execute(int itemId, List<ByteBuffer> values, ConsistencyLevel consistencyLevel)
-              throws InvalidRequestException, UnavailableException, TimedOutException, SchemaDisagreementException, TException
+    protected CqlResult execute(int itemId, List<ByteBuffer> values, ConsistencyLevel consistencyLevel, int timeout)
+              throws InvalidRequestException, UnavailableException, TimedOutException, SchemaDisagreementException, TException, SQLException
     {
+        beginCall(timeout);
         try
         {
             if (majorCqlVersion==3) return client.execute_prepared_cql3_query(itemId, values, consistencyLevel);
@@ -504,14 +752,54 @@ class CassandraConnection extends AbstractConnection implements Connection
         }
         catch (TException error)
         {
-            numFailures++;
-            timeOfLastFailure = System.currentTimeMillis();
-            throw error;
+            throw callFailed(error, timeout);
+        }
+        finally
+        {
+            endCall();
+        }
+    }
+    
+    /**
+     * Execute a CQL query, or the prepared statement for it when bound values are given, without
+     * blocking the calling thread.
+     *
+     * @param queryStr a CQL query string
+     * @param values the bound values of a prepared statement, or null to execute the query directly
+     * @param consistencyLevel the CQL query consistency level
+     * @param timeout the time to wait for the response in milliseconds, or 0 to wait for as long as the network timeout allows
+     * @return the future query results, failing with the same exceptions as the blocking methods
+     * @throws SQLFeatureNotSupportedException for a USE statement, which would only move the channel it runs on
+     */
+    protected ListenableFuture<CqlResult> executeAsync(String queryStr, List<ByteBuffer> values, ConsistencyLevel consistencyLevel, int timeout) throws SQLException
+    {
+        // the channels follow the keyspace of the connection, which only a blocking USE changes
+        if (values == null && determineCurrentKeyspace(queryStr, null) != null) throw new SQLFeatureNotSupportedException(NO_ASYNC_USE);
+        return getAsyncExecutor().submit(queryStr, values, consistencyLevel, currentKeyspace, effectiveTimeout(timeout));
+    }
+
+    // the asynchronous channels are only opened once an asynchronous execution is requested
+    private synchronized AsyncExecutor getAsyncExecutor() throws SQLException
+    {
+        checkNotClosed();
+        if (asyncExecutor == null)
+        {
+            String channels = connectionProps.getProperty(TAG_ASYNC_CHANNELS, String.valueOf(AsyncExecutor.DEFAULT_MAX_CHANNELS));
+            asyncExecutor = new AsyncExecutor(connectionProps.getProperty(TAG_SERVER_NAME),
+                                              Integer.parseInt(connectionProps.getProperty(TAG_PORT_NUMBER)),
+                                              username,
+                                              connectionProps.getProperty(TAG_PASSWORD),
+                                              connectionProps.getProperty(TAG_ACTIVE_CQL_VERSION),
+                                              majorCqlVersion,
+                                              defaultCompression,
+                                              Integer.parseInt(channels));
         }
+        return asyncExecutor;
     }
     
-    protected CqlPreparedResult prepare(String queryStr, Compression compression)throws InvalidRequestException, TException
+    protected CqlPreparedResult prepare(String queryStr, Compression compression) throws InvalidRequestException, TException, SQLException
     {
+        beginCall(0);
         try
         {
             if (majorCqlVersion==3) return client.prepare_cql3_query(Utils.compressQuery(queryStr, compression), compression);
@@ -519,24 +807,49 @@ class CassandraConnection extends AbstractConnection implements Connection
         }
         catch (TException error)
         {
-            numFailures++;
-            timeOfLastFailure = System.currentTimeMillis();
-            throw error;
+            throw callFailed(error, 0);
+        }
+        finally
+        {
+            endCall();
         }
     }
     
-    protected CqlPreparedResult prepare(String queryStr) throws InvalidRequestException, TException
+    protected CqlPreparedResult prepare(String queryStr) throws InvalidRequestException, TException, SQLException
     {
-        try
-        {
-            return prepare(queryStr, defaultCompression);
-        }
-        catch (TException error)
+        return prepare(queryStr, defaultCompression);
+    }
+
+    /**
+     * Prepare a statement, unless this connection already prepared the same CQL in the current keyspace.
+     */
+    CqlPreparedResult prepareCached(String queryStr) throws InvalidRequestException, TException, SQLException
+    {
+        String keyspace = currentKeyspace;
+        CqlPreparedResult result = preparedStatementCache.get(keyspace, queryStr);
+        if (result == null)
         {
-            numFailures++;
-            timeOfLastFailure = System.currentTimeMillis();
-            throw error;
+            result = prepare(queryStr);
+            preparedStatementCache.put(keyspace, queryStr, result);
         }
+        return result;
+    }
+
+    PreparedStatementCache getPreparedStatementCache()
+    {
+        return preparedStatementCache;
+    }
+
+    public long getPreparedStatementCacheHits() throws SQLException
+    {
+        checkNotClosed();
+        return preparedStatementCache.getHits();
+    }
+
+    public long getPreparedStatementCacheMisses() throws SQLException
+    {
+        checkNotClosed();
+        return preparedStatementCache.getMisses();
     }
     
     /**
@@ -0,0 +1,110 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.cassandra.cql.jdbc;
+
+import static org.apache.cassandra.cql.jdbc.Utils.NO_INTERFACE;
+import static org.apache.cassandra.cql.jdbc.Utils.NO_PARAMETER_TYPES;
+
+import java.sql.ParameterMetaData;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLRecoverableException;
+
+/**
+ * The parameters of a prepared statement, as the server described them when it was prepared.
+ */
+class CassandraParameterMetaData implements ParameterMetaData
+{
+    private final ParameterBinder[] binders;
+
+    CassandraParameterMetaData(ParameterBinder[] binders)
+    {
+        this.binders = binders;
+    }
+
+    private ParameterBinder binder(int param) throws SQLException
+    {
+        if (param < 1 || param > binders.length) throw new SQLRecoverableException(String.format("the parameter index must be between 1 and %d: %d", binders.length, param));
+        ParameterBinder binder = binders[param - 1];
+        if (binder == null) throw new SQLFeatureNotSupportedException(NO_PARAMETER_TYPES);
+        return binder;
+    }
+
+    public int getParameterCount() throws SQLException
+    {
+        return binders.length;
+    }
+
+    public int isNullable(int param) throws SQLException
+    {
+        binder(param);
+        return parameterNullable;
+    }
+
+    public boolean isSigned(int param) throws SQLException
+    {
+        return binder(param).isSigned();
+    }
+
+    public int getPrecision(int param) throws SQLException
+    {
+        binder(param);
+        return 0;
+    }
+
+    public int getScale(int param) throws SQLException
+    {
+        binder(param);
+        return 0;
+    }
+
+    public int getParameterType(int param) throws SQLException
+    {
+        return binder(param).getJdbcType();
+    }
+
+    public String getParameterTypeName(int param) throws SQLException
+    {
+        return binder(param).getTypeName();
+    }
+
+    public String getParameterClassName(int param) throws SQLException
+    {
+        return binder(param).getClassName();
+    }
+
+    public int getParameterMode(int param) throws SQLException
+    {
+        binder(param);
+        return parameterModeIn;
+    }
+
+    public boolean isWrapperFor(Class<?> iface) throws SQLException
+    {
+        return iface.isAssignableFrom(getClass());
+    }
+
+    public <T> T unwrap(Class<T> iface) throws SQLException
+    {
+        if (iface.isAssignableFrom(getClass())) return iface.cast(this);
+        throw new SQLFeatureNotSupportedException(String.format(NO_INTERFACE, iface.getSimpleName()));
+    }
+}
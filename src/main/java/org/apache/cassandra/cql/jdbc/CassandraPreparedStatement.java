@@ -31,7 +31,6 @@ import java.net.URL;
 import java.nio.ByteBuffer;
 import java.sql.Date;
 import java.sql.ParameterMetaData;
-import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.RowId;
@@ -46,11 +45,12 @@ import java.sql.Time;
 import java.sql.Timestamp;
 import java.sql.Types;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Calendar;
-import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Map;
 
+import org.apache.cassandra.thrift.ConsistencyLevel;
 import org.apache.cassandra.thrift.CqlPreparedResult;
 import org.apache.cassandra.thrift.CqlResult;
 import org.apache.cassandra.thrift.InvalidRequestException;
@@ -62,7 +62,9 @@ import org.apache.thrift.TException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-class CassandraPreparedStatement extends CassandraStatement implements PreparedStatement
+import com.google.common.util.concurrent.ListenableFuture;
+
+class CassandraPreparedStatement extends CassandraStatement implements CassandraPreparedStatementExtras
 {
     private static final Logger LOG = LoggerFactory.getLogger(CassandraPreparedStatement.class);
 
@@ -72,8 +74,20 @@ class CassandraPreparedStatement extends CassandraStatement implements PreparedS
     /** the count of bound variable markers (?) encountered in the parse o the CQL server-side */
     private int count;
 
-    /** a Map of the current bound values encountered in setXXX methods */
-    private Map<Integer, ByteBuffer> bindValues = new LinkedHashMap<Integer, ByteBuffer>();
+    /** the generation of the connection transport the itemId belongs to */
+    private int generation;
+
+    /** the current bound values encountered in setXXX methods, by parameter index - 1 */
+    private ByteBuffer[] bindValues = new ByteBuffer[0];
+
+    /** the reusable buffers of the parameters bound to fixed width values, sent before they are set again */
+    private ByteBuffer[] fixedValues = new ByteBuffer[0];
+
+    /** the parameters that were bound */
+    private final BitSet bound = new BitSet();
+
+    /** the encoders of the parameters, from the types the server reported when the statement was prepared */
+    private ParameterBinder[] binders = new ParameterBinder[0];
 
 
     CassandraPreparedStatement(CassandraConnection con, String cql) throws SQLException
@@ -91,21 +105,35 @@ class CassandraPreparedStatement extends CassandraStatement implements PreparedS
     {
        super(con,cql,rsType,rsConcurrency,rsHoldability);
        if (LOG.isTraceEnabled()) LOG.trace("CQL: " + this.cql);
-       try
-       {
-           CqlPreparedResult result = con.prepare(cql);
-
-           itemId = result.itemId;
-           count = result.count;
-       }
-       catch (InvalidRequestException e)
-       {
-           throw new SQLSyntaxErrorException(e);
-       }
-       catch (TException e)
-       {
-           throw new SQLNonTransientConnectionException(e);
-       }
+       prepare();
+    }
+
+    // prepare the statement on the current transport of the connection
+    private void prepare() throws SQLException
+    {
+        try
+        {
+            CqlPreparedResult result = connection.prepareCached(cql);
+
+            itemId = result.itemId;
+            count = result.count;
+            generation = connection.generation;
+            binders = ParameterBinder.forResult(result);
+            if (bindValues.length != count)
+            {
+                bindValues = new ByteBuffer[count];
+                fixedValues = new ByteBuffer[count];
+                bound.clear();
+            }
+        }
+        catch (InvalidRequestException e)
+        {
+            throw new SQLSyntaxErrorException(e);
+        }
+        catch (TException e)
+        {
+            throw new SQLNonTransientConnectionException(e);
+        }
     }
     
     String getCql()
@@ -121,23 +149,87 @@ class CassandraPreparedStatement extends CassandraStatement implements PreparedS
         if (index < 1) throw new SQLRecoverableException(String.format("the column index must be a positive number : %d", index));
     }
 
-    private List<ByteBuffer> getBindValues() throws SQLException
+    private void checkBound() throws SQLException
     {
-        List<ByteBuffer> values = new ArrayList<ByteBuffer>();
-        if (bindValues.size() != count) throw new SQLRecoverableException(
+        if (bound.cardinality() != count) throw new SQLRecoverableException(
             String.format("the number of bound variables: %d must match the count of bound variable markers in the CQL: %d",
-            bindValues.size(),
+            bound.cardinality(),
             count));
+    }
+
+    /**
+     * The bound values, as a view that is only valid until the next setXXX call: a synchronous
+     * execution has sent them by then.
+     */
+    private List<ByteBuffer> getBindValues() throws SQLException
+    {
+        checkBound();
+        return Arrays.asList(bindValues);
+    }
 
-        for (int i = 1; i <= count; i++)
+    /**
+     * A copy of the bound values, for an execution that may still be sending them after the next
+     * setXXX call.
+     */
+    private List<ByteBuffer> copyBindValues() throws SQLException
+    {
+        checkBound();
+        List<ByteBuffer> values = new ArrayList<ByteBuffer>(count);
+        for (int i = 0; i < count; i++)
         {
-            ByteBuffer value = bindValues.get(i);
-            if (value == null) throw new SQLRecoverableException(String.format("the bound value for index: %d was not set", i));
-            values.add(value);
+            values.add(bindValues[i] == fixedValues[i] ? ByteBufferUtil.clone(bindValues[i]) : bindValues[i]);
         }
         return values;
     }
 
+    private void bind(int parameterIndex, ByteBuffer value)
+    {
+        bindValues[parameterIndex - 1] = value;
+        bound.set(parameterIndex - 1);
+    }
+
+    // true if the parameter has a known type that values of the class must be converted to
+    private boolean converts(int parameterIndex, Class<?> javaClass)
+    {
+        ParameterBinder binder = binders[parameterIndex - 1];
+        return binder != null && binder.isTyped() && !binder.accepts(javaClass);
+    }
+
+    private boolean typed(int parameterIndex)
+    {
+        ParameterBinder binder = binders[parameterIndex - 1];
+        return binder != null && binder.isTyped();
+    }
+
+    private void bindConverted(int parameterIndex, Object value) throws SQLException
+    {
+        bind(parameterIndex, binders[parameterIndex - 1].encode(parameterIndex, value));
+    }
+
+    // binds a value with the registered codec of its class, if any, for a parameter the driver cannot encode itself
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private boolean bindCodec(int parameterIndex, Object value) throws SQLException
+    {
+        if (value == null) return false;
+        ParameterBinder binder = binders[parameterIndex - 1];
+        TypeCodec codec = CodecRegistry.getDefault().encoderFor(value.getClass(), binder == null ? null : binder.getTypeName());
+        if (codec == null) return false;
+        bind(parameterIndex, codec.encode(value));
+        return true;
+    }
+
+    // the buffer of a parameter for a fixed width value, only allocated when its width changes
+    private ByteBuffer fixed(int parameterIndex, int width)
+    {
+        ByteBuffer buffer = fixedValues[parameterIndex - 1];
+        if (buffer == null || buffer.capacity() != width)
+        {
+            buffer = ByteBuffer.allocate(width);
+            fixedValues[parameterIndex - 1] = buffer;
+        }
+        return buffer;
+    }
+
 
     public void close()
     {
@@ -146,13 +238,23 @@ class CassandraPreparedStatement extends CassandraStatement implements PreparedS
         connection = null;
     }
 
+    protected CqlResult sendPrepared(ConsistencyLevel level, int timeout)
+              throws InvalidRequestException, UnavailableException, TimedOutException, SchemaDisagreementException, TException, SQLException
+    {
+        // the statement is gone from the server if the transport was reopened since it was prepared
+        connection.checkTransport();
+        if (generation != connection.generation) prepare();
+
+        return connection.execute(itemId, getBindValues(), level, timeout);
+    }
+
     private void doExecute() throws SQLException
     {
         if (LOG.isTraceEnabled()) LOG.trace("CQL: " + cql);
         try
         {
             resetResults();
-            CqlResult result = connection.execute(itemId, getBindValues(), consistencyLevel);
+            CqlResult result = executeWithRetries(cql, true);
 
             switch (result.getType())
             {
@@ -198,7 +300,7 @@ class CassandraPreparedStatement extends CassandraStatement implements PreparedS
     public void clearParameters() throws SQLException
     {
         checkNotClosed();
-        bindValues.clear();
+        bound.clear();
     }
 
 
@@ -228,6 +330,34 @@ class CassandraPreparedStatement extends CassandraStatement implements PreparedS
     }
 
 
+    public ListenableFuture<ResultSet> executeAsync() throws SQLException
+    {
+        checkNotClosed();
+        return executeAsyncWithRetries(cql, copyBindValues(), ANY_RESULT);
+    }
+
+
+    public ListenableFuture<ResultSet> executeQueryAsync() throws SQLException
+    {
+        checkNotClosed();
+        return executeAsyncWithRetries(cql, copyBindValues(), QUERY_RESULT);
+    }
+
+
+    public ListenableFuture<Integer> executeUpdateAsync() throws SQLException
+    {
+        checkNotClosed();
+        return executeAsyncWithRetries(cql, copyBindValues(), UPDATE_RESULT);
+    }
+
+
+    public Publisher<Row> publish() throws SQLException
+    {
+        checkNotClosed();
+        return new RowPublisher(this, cql, copyBindValues());
+    }
+
+
     public ResultSetMetaData getMetaData() throws SQLException
     {
         throw new SQLFeatureNotSupportedException(NOT_SUPPORTED);
@@ -236,7 +366,8 @@ class CassandraPreparedStatement extends CassandraStatement implements PreparedS
 
     public ParameterMetaData getParameterMetaData() throws SQLException
     {
-        throw new SQLFeatureNotSupportedException(NOT_SUPPORTED);
+        checkNotClosed();
+        return new CassandraParameterMetaData(binders);
     }
 
 
@@ -244,7 +375,8 @@ class CassandraPreparedStatement extends CassandraStatement implements PreparedS
     {
         checkNotClosed();
         checkIndex(parameterIndex);
-        bindValues.put(parameterIndex, decimal == null ? ByteBufferUtil.EMPTY_BYTE_BUFFER : JdbcDecimal.instance.decompose(decimal));
+        if (converts(parameterIndex, BigDecimal.class)) bindConverted(parameterIndex, decimal);
+        else bind(parameterIndex, decimal == null ? ByteBufferUtil.EMPTY_BYTE_BUFFER : JdbcDecimal.instance.decompose(decimal));
     }
 
 
@@ -252,7 +384,8 @@ class CassandraPreparedStatement extends CassandraStatement implements PreparedS
     {
         checkNotClosed();
         checkIndex(parameterIndex);
-        bindValues.put(parameterIndex, JdbcBoolean.instance.decompose(truth));
+        if (converts(parameterIndex, Boolean.class)) bindConverted(parameterIndex, truth);
+        else bind(parameterIndex, fixed(parameterIndex, 1).put(0, truth ? (byte) 1 : (byte) 0));
     }
 
 
@@ -260,7 +393,8 @@ class CassandraPreparedStatement extends CassandraStatement implements PreparedS
     {
         checkNotClosed();
         checkIndex(parameterIndex);
-        bindValues.put(parameterIndex, JdbcInteger.instance.decompose(BigInteger.valueOf(b)));
+        if (converts(parameterIndex, BigInteger.class)) bindConverted(parameterIndex, b);
+        else bind(parameterIndex, JdbcInteger.instance.decompose(BigInteger.valueOf(b)));
     }
 
 
@@ -268,7 +402,8 @@ class CassandraPreparedStatement extends CassandraStatement implements PreparedS
     {
         checkNotClosed();
         checkIndex(parameterIndex);
-        bindValues.put(parameterIndex, bytes == null ? ByteBufferUtil.EMPTY_BYTE_BUFFER : ByteBuffer.wrap(bytes));
+        if (converts(parameterIndex, ByteBuffer.class)) bindConverted(parameterIndex, bytes);
+        else bind(parameterIndex, bytes == null ? ByteBufferUtil.EMPTY_BYTE_BUFFER : ByteBuffer.wrap(bytes));
     }
 
 
@@ -276,8 +411,9 @@ class CassandraPreparedStatement extends CassandraStatement implements PreparedS
     {
         checkNotClosed();
         checkIndex(parameterIndex);
-        // date type data is handled as an 8 byte Long value of milliseconds since the epoch (handled in decompose() )
-        bindValues.put(parameterIndex, value == null ? ByteBufferUtil.EMPTY_BYTE_BUFFER : JdbcDate.instance.decompose(value));
+        // date type data is handled as an 8 byte Long value of milliseconds since the epoch
+        if (converts(parameterIndex, java.util.Date.class)) bindConverted(parameterIndex, value);
+        else bind(parameterIndex, value == null ? ByteBufferUtil.EMPTY_BYTE_BUFFER : fixed(parameterIndex, 8).putLong(0, value.getTime()));
     }
 
 
@@ -292,7 +428,8 @@ class CassandraPreparedStatement extends CassandraStatement implements PreparedS
     {
         checkNotClosed();
         checkIndex(parameterIndex);
-        bindValues.put(parameterIndex, JdbcDouble.instance.decompose(decimal));
+        if (converts(parameterIndex, Double.class)) bindConverted(parameterIndex, decimal);
+        else bind(parameterIndex, fixed(parameterIndex, 8).putDouble(0, decimal));
     }
 
 
@@ -300,7 +437,8 @@ class CassandraPreparedStatement extends CassandraStatement implements PreparedS
     {
         checkNotClosed();
         checkIndex(parameterIndex);
-        bindValues.put(parameterIndex, JdbcFloat.instance.decompose(decimal));
+        if (converts(parameterIndex, Float.class)) bindConverted(parameterIndex, decimal);
+        else bind(parameterIndex, fixed(parameterIndex, 4).putFloat(0, decimal));
     }
 
 
@@ -308,7 +446,8 @@ class CassandraPreparedStatement extends CassandraStatement implements PreparedS
     {
         checkNotClosed();
         checkIndex(parameterIndex);
-        bindValues.put(parameterIndex, JdbcInt32.instance.decompose(integer));
+        if (converts(parameterIndex, Integer.class)) bindConverted(parameterIndex, integer);
+        else bind(parameterIndex, fixed(parameterIndex, 4).putInt(0, integer));
     }
 
 
@@ -316,7 +455,8 @@ class CassandraPreparedStatement extends CassandraStatement implements PreparedS
     {
         checkNotClosed();
         checkIndex(parameterIndex);
-        bindValues.put(parameterIndex, JdbcLong.instance.decompose(bigint));
+        if (converts(parameterIndex, Long.class)) bindConverted(parameterIndex, bigint);
+        else bind(parameterIndex, fixed(parameterIndex, 8).putLong(0, bigint));
     }
 
 
@@ -332,7 +472,7 @@ class CassandraPreparedStatement extends CassandraStatement implements PreparedS
         checkNotClosed();
         checkIndex(parameterIndex);
         // silently ignore type for cassandra... just store an empty String
-        bindValues.put(parameterIndex, ByteBufferUtil.EMPTY_BYTE_BUFFER);
+        bind(parameterIndex, ByteBufferUtil.EMPTY_BYTE_BUFFER);
     }
 
 
@@ -345,8 +485,14 @@ class CassandraPreparedStatement extends CassandraStatement implements PreparedS
 
     public void setObject(int parameterIndex, Object object) throws SQLException
     {
-        // For now all objects are forced to String type
-        setObject(parameterIndex, object, Types.VARCHAR, 0);
+        checkNotClosed();
+        checkIndex(parameterIndex);
+        if (typed(parameterIndex)) bindConverted(parameterIndex, object);
+        else if (!bindCodec(parameterIndex, object))
+        {
+            // without the type of the parameter or a codec, all objects are forced to String type
+            setObject(parameterIndex, object, Types.VARCHAR, 0);
+        }
     }
 
     public void setObject(int parameterIndex, Object object, int targetSqlType) throws SQLException
@@ -359,18 +505,25 @@ class CassandraPreparedStatement extends CassandraStatement implements PreparedS
         checkNotClosed();
         checkIndex(parameterIndex);
 
-        ByteBuffer variable = HandleObjects.makeBytes(object, targetSqlType, scaleOrLength);
+        // the type of the parameter prevails, except for serialized objects
+        if (targetSqlType != Types.JAVA_OBJECT && typed(parameterIndex))
+        {
+            bindConverted(parameterIndex, object);
+            return;
+        }
+
+        ByteBuffer variable = HandleObjects.makeBytes(object, targetSqlType, scaleOrLength, connection.objectSerializer);
 
         if (variable == null) throw new SQLNonTransientException("Problem mapping object to JDBC Type");
 
-        bindValues.put(parameterIndex, variable);
+        bind(parameterIndex, variable);
     }
 
     public void setRowId(int parameterIndex, RowId value) throws SQLException
     {
         checkNotClosed();
         checkIndex(parameterIndex);
-        bindValues.put(parameterIndex, ByteBuffer.wrap(value.getBytes()));
+        bind(parameterIndex, ByteBuffer.wrap(value.getBytes()));
     }
 
 
@@ -378,7 +531,8 @@ class CassandraPreparedStatement extends CassandraStatement implements PreparedS
     {
         checkNotClosed();
         checkIndex(parameterIndex);
-        bindValues.put(parameterIndex, JdbcInteger.instance.decompose(BigInteger.valueOf(smallint)));
+        if (converts(parameterIndex, BigInteger.class)) bindConverted(parameterIndex, smallint);
+        else bind(parameterIndex, JdbcInteger.instance.decompose(BigInteger.valueOf(smallint)));
     }
 
 
@@ -386,7 +540,8 @@ class CassandraPreparedStatement extends CassandraStatement implements PreparedS
     {
         checkNotClosed();
         checkIndex(parameterIndex);
-        bindValues.put(parameterIndex, value == null ? ByteBufferUtil.EMPTY_BYTE_BUFFER : ByteBufferUtil.bytes(value));
+        if (converts(parameterIndex, String.class)) bindConverted(parameterIndex, value);
+        else bind(parameterIndex, value == null ? ByteBufferUtil.EMPTY_BYTE_BUFFER : ByteBufferUtil.bytes(value));
     }
 
 
@@ -395,8 +550,8 @@ class CassandraPreparedStatement extends CassandraStatement implements PreparedS
         checkNotClosed();
         checkIndex(parameterIndex);
         // time type data is handled as an 8 byte Long value of milliseconds since the epoch
-        bindValues.put(parameterIndex,
-            value == null ? ByteBufferUtil.EMPTY_BYTE_BUFFER : JdbcLong.instance.decompose(Long.valueOf(value.getTime())));
+        if (converts(parameterIndex, java.util.Date.class)) bindConverted(parameterIndex, value);
+        else bind(parameterIndex, value == null ? ByteBufferUtil.EMPTY_BYTE_BUFFER : fixed(parameterIndex, 8).putLong(0, value.getTime()));
     }
 
 
@@ -412,8 +567,8 @@ class CassandraPreparedStatement extends CassandraStatement implements PreparedS
         checkNotClosed();
         checkIndex(parameterIndex);
         // timestamp type data is handled as an 8 byte Long value of milliseconds since the epoch. Nanos are not supported and are ignored
-        bindValues.put(parameterIndex,
-            value == null ? ByteBufferUtil.EMPTY_BYTE_BUFFER : JdbcLong.instance.decompose(Long.valueOf(value.getTime())));
+        if (converts(parameterIndex, java.util.Date.class)) bindConverted(parameterIndex, value);
+        else bind(parameterIndex, value == null ? ByteBufferUtil.EMPTY_BYTE_BUFFER : fixed(parameterIndex, 8).putLong(0, value.getTime()));
     }
 
 
@@ -430,6 +585,6 @@ class CassandraPreparedStatement extends CassandraStatement implements PreparedS
         checkIndex(parameterIndex);
         // URl type data is handled as an string
         String url = value.toString();
-        bindValues.put(parameterIndex, value == null ? ByteBufferUtil.EMPTY_BYTE_BUFFER : ByteBufferUtil.bytes(url));
+        bind(parameterIndex, value == null ? ByteBufferUtil.EMPTY_BYTE_BUFFER : ByteBufferUtil.bytes(url));
     }
 }
@@ -0,0 +1,55 @@
+/*
+ * 
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * 
+ */
+package org.apache.cassandra.cql.jdbc;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+public interface CassandraPreparedStatementExtras extends CassandraStatementExtras, PreparedStatement
+{
+    /**
+     * Execute this statement with the values currently bound without blocking the calling thread.
+     * The values are captured on the call, so the statement may be rebound right away.
+     *
+     * @see CassandraStatementExtras#executeAsync(String)
+     */
+    public ListenableFuture<ResultSet> executeAsync() throws SQLException;
+
+    /**
+     * Asynchronous form of {@link #executeQuery()}, see {@link #executeAsync()}.
+     */
+    public ListenableFuture<ResultSet> executeQueryAsync() throws SQLException;
+
+    /**
+     * Asynchronous form of {@link #executeUpdate()}, see {@link #executeAsync()}.
+     */
+    public ListenableFuture<Integer> executeUpdateAsync() throws SQLException;
+
+    /**
+     * Publish the rows of this statement with the values currently bound as the subscriber requests them.
+     *
+     * @see CassandraStatementExtras#publish(String)
+     */
+    public Publisher<Row> publish() throws SQLException;
+}
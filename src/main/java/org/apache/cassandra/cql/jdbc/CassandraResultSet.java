@@ -166,6 +166,8 @@ class CassandraResultSet extends AbstractResultSet implements CassandraResultSet
 
     private CqlMetadata schema;
 
+    private RowDecoder decoder;
+
     /**
      * no argument constructor.
      */
@@ -185,6 +187,7 @@ class CassandraResultSet extends AbstractResultSet implements CassandraResultSet
         this.fetchDirection = statement.getFetchDirection();
         this.fetchSize = statement.getFetchSize();
         this.schema = resultSet.schema;
+        this.decoder = new RowDecoder(schema);
 
         // Initialize meta-data from schema
         populateMetaData();
@@ -792,6 +795,155 @@ class CassandraResultSet extends AbstractResultSet implements CassandraResultSet
         return (Map<?, ?>) value;
     }
 
+    public List<?> getListView(int index) throws SQLException
+    {
+        checkIndex(index);
+        return getListView(values.get(index - 1));
+    }
+
+    public List<?> getListView(String name) throws SQLException
+    {
+        checkName(name);
+        return getListView(indexMap.get(name).intValue());
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<?> getListView(TypedColumn column) throws SQLException
+    {
+        ByteBuffer bytes = collectionBytes(column, CollectionType.LIST, "List");
+        return bytes == null ? null : CollectionViews.list(column.getValueType(), bytes);
+    }
+
+    public Set<?> getSetView(int index) throws SQLException
+    {
+        checkIndex(index);
+        return getSetView(values.get(index - 1));
+    }
+
+    public Set<?> getSetView(String name) throws SQLException
+    {
+        checkName(name);
+        return getSetView(indexMap.get(name).intValue());
+    }
+
+    @SuppressWarnings("unchecked")
+    private Set<?> getSetView(TypedColumn column) throws SQLException
+    {
+        ByteBuffer bytes = collectionBytes(column, CollectionType.SET, "Set");
+        return bytes == null ? null : CollectionViews.set(column.getValueType(), bytes);
+    }
+
+    public Map<?, ?> getMapView(int index) throws SQLException
+    {
+        checkIndex(index);
+        return getMapView(values.get(index - 1));
+    }
+
+    public Map<?, ?> getMapView(String name) throws SQLException
+    {
+        checkName(name);
+        return getMapView(indexMap.get(name).intValue());
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<?, ?> getMapView(TypedColumn column) throws SQLException
+    {
+        ByteBuffer bytes = collectionBytes(column, CollectionType.MAP, "Map");
+        return bytes == null ? null : CollectionViews.map(column.getKeyType(), column.getValueType(), bytes);
+    }
+
+    public int[] getIntList(int index) throws SQLException
+    {
+        checkIndex(index);
+        return getIntList(values.get(index - 1));
+    }
+
+    public int[] getIntList(String name) throws SQLException
+    {
+        checkName(name);
+        return getIntList(indexMap.get(name).intValue());
+    }
+
+    private int[] getIntList(TypedColumn column) throws SQLException
+    {
+        ByteBuffer bytes = collectionBytes(column, CollectionType.LIST, "int[]", JdbcInt32.instance);
+        return bytes == null ? null : CollectionViews.ints(bytes);
+    }
+
+    public long[] getLongList(int index) throws SQLException
+    {
+        checkIndex(index);
+        return getLongList(values.get(index - 1));
+    }
+
+    public long[] getLongList(String name) throws SQLException
+    {
+        checkName(name);
+        return getLongList(indexMap.get(name).intValue());
+    }
+
+    private long[] getLongList(TypedColumn column) throws SQLException
+    {
+        ByteBuffer bytes = collectionBytes(column, CollectionType.LIST, "long[]", JdbcLong.instance);
+        return bytes == null ? null : CollectionViews.longs(bytes);
+    }
+
+    public int[] getIntSet(int index) throws SQLException
+    {
+        checkIndex(index);
+        return getIntSet(values.get(index - 1));
+    }
+
+    public int[] getIntSet(String name) throws SQLException
+    {
+        checkName(name);
+        return getIntSet(indexMap.get(name).intValue());
+    }
+
+    private int[] getIntSet(TypedColumn column) throws SQLException
+    {
+        ByteBuffer bytes = collectionBytes(column, CollectionType.SET, "int[]", JdbcInt32.instance);
+        return bytes == null ? null : CollectionViews.ints(bytes);
+    }
+
+    public long[] getLongSet(int index) throws SQLException
+    {
+        checkIndex(index);
+        return getLongSet(values.get(index - 1));
+    }
+
+    public long[] getLongSet(String name) throws SQLException
+    {
+        checkName(name);
+        return getLongSet(indexMap.get(name).intValue());
+    }
+
+    private long[] getLongSet(TypedColumn column) throws SQLException
+    {
+        ByteBuffer bytes = collectionBytes(column, CollectionType.SET, "long[]", JdbcLong.instance);
+        return bytes == null ? null : CollectionViews.longs(bytes);
+    }
+
+    // the bytes of a collection column of the given kind, null if the column is null
+    private ByteBuffer collectionBytes(TypedColumn column, CollectionType type, String typeName) throws SQLException
+    {
+        return collectionBytes(column, type, typeName, null);
+    }
+
+    // the bytes of a collection column of the given kind, and of the given element type if any
+    private ByteBuffer collectionBytes(TypedColumn column, CollectionType type, String typeName, AbstractJdbcType<?> elementType) throws SQLException
+    {
+        checkNotClosed();
+        if (column.getCollectionType() != type || (elementType != null && column.getValueType() != elementType))
+        {
+            String actual = column.getValueType() == null ? column.getCollectionType().name() : column.getValueType().getType().getSimpleName();
+            throw new SQLSyntaxErrorException(String.format(NOT_TRANSLATABLE, actual, typeName));
+        }
+        ByteBuffer bytes = column.getRawColumn().value;
+        wasNull = bytes == null || !bytes.hasRemaining();
+        return wasNull ? null : bytes;
+    }
+
     public ResultSetMetaData getMetaData() throws SQLException
     {
         checkNotClosed();
@@ -824,6 +976,51 @@ class CassandraResultSet extends AbstractResultSet implements CassandraResultSet
         return (wasNull) ? null : value;
     }
 
+    public <T> T getObject(int index, Class<T> type) throws SQLException
+    {
+        checkIndex(index);
+        return getObject(values.get(index - 1), type);
+    }
+
+    public <T> T getObject(String name, Class<T> type) throws SQLException
+    {
+        checkName(name);
+        return getObject(indexMap.get(name).intValue(), type);
+    }
+
+    private <T> T getObject(TypedColumn column, Class<T> type) throws SQLException
+    {
+        checkNotClosed();
+        ByteBuffer bytes = column.getRawColumn().value;
+        if (bytes == null || !bytes.hasRemaining())
+        {
+            wasNull = true;
+            return null;
+        }
+
+        if (column.getValueType() != null && (column.getCollectionType() != CollectionType.MAP || column.getKeyType() != null))
+        {
+            String cqlType = ParameterBinder.cqlName(column.getCollectionType(), column.getKeyType(), column.getValueType());
+            TypeCodec<? extends T> codec = CodecRegistry.getDefault().decoderFor(type, cqlType);
+            if (codec != null)
+            {
+                wasNull = false;
+                return codec.decode(bytes.duplicate());
+            }
+        }
+
+        Object value = getObject(column);
+        if (value instanceof ByteBuffer && type == byte[].class) return type.cast(ByteBufferUtil.getArray((ByteBuffer) value));
+        if (value instanceof ByteBuffer && !type.isInstance(value))
+        {
+            // a blob read as another class holds an object bound as JAVA_OBJECT
+            ObjectSerializer serializer = statement == null ? JavaObjectSerializer.INSTANCE : statement.connection.objectSerializer;
+            value = serializer.deserialize(bytes.duplicate(), type);
+        }
+        if (value == null || type.isInstance(value)) return type.cast(value);
+        throw new SQLSyntaxErrorException(String.format(NOT_TRANSLATABLE, value.getClass().getSimpleName(), type.getSimpleName()));
+    }
+
     public int getRow() throws SQLException
     {
         checkNotClosed();
@@ -1141,41 +1338,49 @@ class CassandraResultSet extends AbstractResultSet implements CassandraResultSet
 
     private TypedColumn createColumn(Column column)
     {
-        assert column != null;
-        assert column.name != null;
-
-        AbstractJdbcType<?> keyType = null;
-        CollectionType type = CollectionType.NOT_COLLECTION;
-        String nameType = schema.name_types.get(column.name);
-        if (nameType == null) nameType = "AsciiType";
-        AbstractJdbcType<?> comparator = TypesMap.getTypeForComparator(nameType == null ? schema.default_name_type : nameType);
-        String valueType = schema.value_types.get(column.name);
-        AbstractJdbcType<?> validator = TypesMap.getTypeForComparator(valueType == null ? schema.default_value_type : valueType);
-        if (validator == null)
-        {
-            int index = valueType.indexOf("(");
-            assert index > 0;
+        return decoder.decode(column);
+    }
 
-            String collectionClass = valueType.substring(0, index);
-            if (collectionClass.endsWith("ListType")) type = CollectionType.LIST;
-            else if (collectionClass.endsWith("SetType")) type = CollectionType.SET;
-            else if (collectionClass.endsWith("MapType")) type = CollectionType.MAP;
+    public int forEachRow(RowHandler handler) throws SQLException
+    {
+        checkNotClosed();
+        CassandraRow row = new CassandraRow(decoder);
+        int handled = 0;
+        while (hasMoreRows())
+        {
+            row.reset(rowsIterator.next());
+            rowNumber++;
+            handled++;
+            if (!handler.handle(row)) return handled;
+        }
+        rowNumber = Integer.MAX_VALUE;
+        return handled;
+    }
 
-            String[] split = valueType.substring(index + 1, valueType.length() - 1).split(",");
-            if (split.length > 1)
+    public Iterator<Row> rowIterator() throws SQLException
+    {
+        checkNotClosed();
+        final CassandraRow row = new CassandraRow(decoder);
+        return new Iterator<Row>()
+        {
+            public boolean hasNext()
             {
-                keyType = TypesMap.getTypeForComparator(split[0]);
-                validator = TypesMap.getTypeForComparator(split[1]);
+                return hasMoreRows();
             }
-            else validator = TypesMap.getTypeForComparator(split[0]);
 
-        }
-
-        TypedColumn tc = new TypedColumn(column, comparator, validator, keyType, type);
-
-        if (logger.isTraceEnabled()) logger.trace("tc = " + tc);
+            public Row next()
+            {
+                if (!hasMoreRows()) throw new NoSuchElementException();
+                row.reset(rowsIterator.next());
+                rowNumber++;
+                return row;
+            }
 
-        return tc;
+            public void remove()
+            {
+                throw new UnsupportedOperationException();
+            }
+        };
     }
 
     public boolean previous() throws SQLException
@@ -23,6 +23,7 @@ package org.apache.cassandra.cql.jdbc;
 import java.math.BigInteger;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -48,9 +49,58 @@ public interface CassandraResultSetExtras extends ResultSet
     public Map<?,?> getMap(int index) throws SQLException;
     public Map<?,?> getMap(String name) throws SQLException;
 
+    /**
+     * The views below are read-only and backed by the bytes of the column: creating one costs next to
+     * nothing, and an element is only decoded when it is first read. Looking up an element or a key
+     * scans the view, so copy a collection searched many times.
+     *
+     * @return a view of the list, or null if the column is null
+     */
+    public List<?> getListView(int index) throws SQLException;
+    public List<?> getListView(String name) throws SQLException;
+
+    /** @return a view of the set, or null if the column is null, see {@link #getListView(int)} */
+    public Set<?> getSetView(int index) throws SQLException;
+    public Set<?> getSetView(String name) throws SQLException;
+
+    /** @return a view of the map, or null if the column is null, see {@link #getListView(int)} */
+    public Map<?,?> getMapView(int index) throws SQLException;
+    public Map<?,?> getMapView(String name) throws SQLException;
+
+    /** @return the elements of a list&lt;int&gt; column, or null if the column is null */
+    public int[] getIntList(int index) throws SQLException;
+    public int[] getIntList(String name) throws SQLException;
+
+    /** @return the elements of a list&lt;bigint&gt; column, or null if the column is null */
+    public long[] getLongList(int index) throws SQLException;
+    public long[] getLongList(String name) throws SQLException;
+
+    /** @return the elements of a set&lt;int&gt; column in their order, or null if the column is null */
+    public int[] getIntSet(int index) throws SQLException;
+    public int[] getIntSet(String name) throws SQLException;
+
+    /** @return the elements of a set&lt;bigint&gt; column in their order, or null if the column is null */
+    public long[] getLongSet(int index) throws SQLException;
+    public long[] getLongSet(String name) throws SQLException;
+
 
     /** @return the raw column data for the given column offset */
     public TypedColumn getColumn(int i) throws SQLException;
     /** @return the raw column data for the given column name */
     public TypedColumn getColumn(String name) throws SQLException;
+
+    /**
+     * Pass the rows following the current one to the handler, through a single view that is reset
+     * for every row and only decodes the columns that are read. This moves the cursor past the
+     * rows handled, but does not make them available through the getters of this result set.
+     *
+     * @return the number of rows handled
+     */
+    public int forEachRow(RowHandler handler) throws SQLException;
+
+    /**
+     * @return an iterator over the rows following the current one, returning the same reusable
+     *         view for every row, see {@link #forEachRow(RowHandler)}
+     */
+    public Iterator<Row> rowIterator() throws SQLException;
 }
@@ -0,0 +1,280 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.cassandra.cql.jdbc;
+
+import static org.apache.cassandra.cql.jdbc.Utils.*;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.cassandra.cql.jdbc.TypedColumn.CollectionType;
+import org.apache.cassandra.thrift.Column;
+import org.apache.cassandra.thrift.CqlRow;
+
+/**
+ * Implementation class for {@link Row}, decoding the columns of a Thrift row as they are read.
+ * <p>
+ * An instance can be {@link #reset(CqlRow) reset} to the next row of the same result, so that
+ * iterating over a result only allocates the decoded values.
+ */
+class CassandraRow implements Row
+{
+    private final RowDecoder decoder;
+
+    private CqlRow row;
+
+    private List<Column> columns;
+
+    private TypedColumn[] decoded;
+
+    CassandraRow(RowDecoder decoder)
+    {
+        this.decoder = decoder;
+    }
+
+    CassandraRow(RowDecoder decoder, CqlRow row)
+    {
+        this.decoder = decoder;
+        reset(row);
+    }
+
+    /**
+     * Make this instance a view of the given row of the same result.
+     */
+    void reset(CqlRow row)
+    {
+        this.row = row;
+        this.columns = row.getColumns();
+        if (decoded == null || decoded.length != columns.size()) decoded = new TypedColumn[columns.size()];
+        else Arrays.fill(decoded, null);
+    }
+
+    public Row copy()
+    {
+        CassandraRow copy = new CassandraRow(decoder, row);
+        System.arraycopy(decoded, 0, copy.decoded, 0, decoded.length);
+        return copy;
+    }
+
+    public byte[] getKey()
+    {
+        return row.getKey();
+    }
+
+    public int getColumnCount()
+    {
+        return columns.size();
+    }
+
+    public String getColumnName(int index)
+    {
+        return decoder.nameOf(columns.get(index - 1));
+    }
+
+    public int findColumn(String name)
+    {
+        for (int i = 0; i < columns.size(); i++)
+        {
+            if (name.equals(decoder.nameOf(columns.get(i)))) return i + 1;
+        }
+        throw new IllegalArgumentException(String.format(VALID_LABELS, name));
+    }
+
+    public TypedColumn getColumn(int index)
+    {
+        TypedColumn column = decoded[index - 1];
+        if (column == null)
+        {
+            column = decoder.decode(columns.get(index - 1));
+            decoded[index - 1] = column;
+        }
+        return column;
+    }
+
+    public TypedColumn getColumn(String name)
+    {
+        return getColumn(findColumn(name));
+    }
+
+    public boolean isNull(int index)
+    {
+        return getObject(index) == null;
+    }
+
+    public boolean isNull(String name)
+    {
+        return isNull(findColumn(name));
+    }
+
+    public Object getObject(int index)
+    {
+        return getColumn(index).getValue();
+    }
+
+    public Object getObject(String name)
+    {
+        return getObject(findColumn(name));
+    }
+
+    public String getString(int index)
+    {
+        Object value = getObject(index);
+        return (value == null) ? null : value.toString();
+    }
+
+    public String getString(String name)
+    {
+        return getString(findColumn(name));
+    }
+
+    public boolean getBoolean(int index)
+    {
+        Object value = getObject(index);
+        if (value == null) return false;
+        if (value instanceof Boolean) return (Boolean) value;
+        if (value instanceof Integer || value instanceof Long || value instanceof BigInteger) return ((Number) value).longValue() != 0;
+        if (value instanceof String)
+        {
+            String str = (String) value;
+            if (str.equalsIgnoreCase("true")) return true;
+            if (str.equalsIgnoreCase("false")) return false;
+            throw new ClassCastException(String.format(NOT_BOOLEAN, str));
+        }
+        throw notTranslatable(value, "Boolean");
+    }
+
+    public boolean getBoolean(String name)
+    {
+        return getBoolean(findColumn(name));
+    }
+
+    public int getInt(int index)
+    {
+        Object value = getObject(index);
+        if (value == null) return 0;
+        if (value instanceof Integer || value instanceof Long || value instanceof BigInteger) return ((Number) value).intValue();
+        if (value instanceof String) return Integer.parseInt((String) value);
+        throw notTranslatable(value, "int");
+    }
+
+    public int getInt(String name)
+    {
+        return getInt(findColumn(name));
+    }
+
+    public long getLong(int index)
+    {
+        Object value = getObject(index);
+        if (value == null) return 0L;
+        if (value instanceof Long || value instanceof Integer || value instanceof BigInteger) return ((Number) value).longValue();
+        if (value instanceof String) return Long.parseLong((String) value);
+        throw notTranslatable(value, "Long");
+    }
+
+    public long getLong(String name)
+    {
+        return getLong(findColumn(name));
+    }
+
+    public double getDouble(int index)
+    {
+        Object value = getObject(index);
+        if (value == null) return 0.0;
+        if (value instanceof Double || value instanceof Float || value instanceof Integer || value instanceof Long || value instanceof BigInteger)
+            return ((Number) value).doubleValue();
+        if (value instanceof String) return Double.parseDouble((String) value);
+        throw notTranslatable(value, "Double");
+    }
+
+    public double getDouble(String name)
+    {
+        return getDouble(findColumn(name));
+    }
+
+    public ByteBuffer getBytes(int index)
+    {
+        ByteBuffer value = columns.get(index - 1).value;
+        return (value == null) ? null : value.duplicate();
+    }
+
+    public ByteBuffer getBytes(String name)
+    {
+        return getBytes(findColumn(name));
+    }
+
+    public List<?> getList(int index)
+    {
+        return (List<?>) getCollection(index, CollectionType.LIST, "List");
+    }
+
+    public List<?> getList(String name)
+    {
+        return getList(findColumn(name));
+    }
+
+    public Set<?> getSet(int index)
+    {
+        return (Set<?>) getCollection(index, CollectionType.SET, "Set");
+    }
+
+    public Set<?> getSet(String name)
+    {
+        return getSet(findColumn(name));
+    }
+
+    public Map<?, ?> getMap(int index)
+    {
+        return (Map<?, ?>) getCollection(index, CollectionType.MAP, "Map");
+    }
+
+    public Map<?, ?> getMap(String name)
+    {
+        return getMap(findColumn(name));
+    }
+
+    private Object getCollection(int index, CollectionType type, String typeName)
+    {
+        TypedColumn column = getColumn(index);
+        if (column.getCollectionType() != type)
+            throw new ClassCastException(String.format(NOT_TRANSLATABLE, column.getValueType().getType().getSimpleName(), typeName));
+        return column.getValue();
+    }
+
+    private static ClassCastException notTranslatable(Object value, String typeName)
+    {
+        return new ClassCastException(String.format(NOT_TRANSLATABLE, value.getClass().getSimpleName(), typeName));
+    }
+
+    public String toString()
+    {
+        StringBuilder builder = new StringBuilder("CassandraRow [");
+        for (int i = 1; i <= columns.size(); i++)
+        {
+            if (i > 1) builder.append(", ");
+            builder.append(getColumnName(i)).append("=").append(getObject(i));
+        }
+        return builder.append("]").toString();
+    }
+}
@@ -22,6 +22,7 @@ package org.apache.cassandra.cql.jdbc;
 
 import static org.apache.cassandra.cql.jdbc.Utils.*;
 
+import java.nio.ByteBuffer;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -31,12 +32,16 @@ import java.sql.SQLNonTransientConnectionException;
 import java.sql.SQLNonTransientException;
 import java.sql.SQLRecoverableException;
 import java.sql.SQLSyntaxErrorException;
+import java.sql.SQLTimeoutException;
 import java.sql.SQLTransientConnectionException;
 import java.sql.SQLWarning;
 import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
 
 import org.apache.cassandra.thrift.ConsistencyLevel;
 import org.apache.cassandra.thrift.CqlResult;
+import org.apache.cassandra.thrift.CqlResultType;
 import org.apache.cassandra.thrift.InvalidRequestException;
 import org.apache.cassandra.thrift.SchemaDisagreementException;
 import org.apache.cassandra.thrift.TimedOutException;
@@ -45,6 +50,11 @@ import org.apache.thrift.TException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
 /**
  * Cassandra statement: implementation class for {@link PreparedStatement}.
  */
@@ -84,6 +94,18 @@ class CassandraStatement extends AbstractStatement implements CassandraStatement
     
     protected ConsistencyLevel consistencyLevel;
 
+    protected RetryPolicy retryPolicy;
+
+    protected boolean idempotent = false;
+
+    protected int queryTimeout = 0;
+
+    // set while a blocking execution is waiting for the server, so that cancel() knows what to interrupt
+    private volatile boolean executing = false;
+
+    /** the prepared form the CQL being executed is sent as, if the connection auto-prepares it */
+    private AutoPreparer.Execution autoPrepared;
+
     CassandraStatement(CassandraConnection con) throws SQLException
     {
         this(con, null, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY, ResultSet.HOLD_CURSORS_OVER_COMMIT);
@@ -105,6 +127,7 @@ class CassandraStatement extends AbstractStatement implements CassandraStatement
         this.connection = con;
         this.cql = cql;
         this.consistencyLevel = con.defaultConsistencyLevel;
+        this.retryPolicy = con.defaultRetryPolicy;
 
         if (!(resultSetType == ResultSet.TYPE_FORWARD_ONLY
               || resultSetType == ResultSet.TYPE_SCROLL_INSENSITIVE
@@ -154,6 +177,262 @@ class CassandraStatement extends AbstractStatement implements CassandraStatement
     }
         
 
+    /**
+     * Send a single attempt of the server-side prepared form of this statement.
+     *
+     * @param timeout the time to wait for the response in milliseconds, or 0 for the network timeout
+     */
+    protected CqlResult sendPrepared(ConsistencyLevel level, int timeout)
+              throws InvalidRequestException, UnavailableException, TimedOutException, SchemaDisagreementException, TException, SQLException
+    {
+        if (autoPrepared == null) throw new SQLFeatureNotSupportedException(NOT_SUPPORTED);
+        return autoPrepared.send(connection, level, timeout);
+    }
+
+    /**
+     * Execute the given CQL (or the prepared form of this statement), consulting the retry policy each time
+     * the coordinator reports a timeout or unavailable replicas. Retries are only attempted while the
+     * connection's retry budget allows it.
+     */
+    protected final CqlResult executeWithRetries(String cql, boolean prepared)
+              throws InvalidRequestException, UnavailableException, TimedOutException, SchemaDisagreementException, TException, SQLException
+    {
+        boolean isRead = isReadQuery(cql);
+        ConsistencyLevel level = consistencyLevel;
+        int retries = 0;
+
+        RetryBudget budget = connection.retryBudget;
+        long deadline = deadline();
+
+        budget.deposit();
+        while (true)
+        {
+            RetryDecision decision;
+            try
+            {
+                int timeout = remaining(deadline);
+                executing = true;
+                return prepared ? sendPrepared(level, timeout) : connection.execute(cql, level, timeout);
+            }
+            catch (TimedOutException e)
+            {
+                decision = retryDecision(e, cql, isRead, level, retries, budget);
+                if (decision == null) throw e;
+            }
+            catch (UnavailableException e)
+            {
+                decision = retryDecision(e, cql, isRead, level, retries, budget);
+                if (decision == null) throw e;
+            }
+            finally
+            {
+                executing = false;
+            }
+
+            // the failure is swallowed so report the statement as executed
+            if (decision.getType() == RetryDecision.Type.IGNORE) return new CqlResult(CqlResultType.VOID);
+
+            if (decision.getConsistencyLevel() != null) level = decision.getConsistencyLevel();
+            retries++;
+        }
+    }
+
+    // the time by which the execution must be over, or 0 if there is no query timeout
+    private long deadline()
+    {
+        return (queryTimeout > 0) ? System.currentTimeMillis() + queryTimeout * 1000L : 0;
+    }
+
+    // the milliseconds left for the next attempt, or 0 if there is no deadline
+    private int remaining(long deadline) throws SQLTimeoutException
+    {
+        if (deadline == 0) return 0;
+        long left = deadline - System.currentTimeMillis();
+        if (left <= 0) throw new SQLTimeoutException(String.format(CALL_TIMED_OUT, queryTimeout * 1000L));
+        return (int) Math.min(left, Integer.MAX_VALUE);
+    }
+
+    // the decision to apply after a failed attempt, or null if the failure must be reported
+    private RetryDecision retryDecision(Exception e, String cql, boolean isRead, ConsistencyLevel level, int retries, RetryBudget budget)
+    {
+        RetryDecision decision;
+        if (e instanceof TimedOutException)
+        {
+            TimedOutException timeout = (TimedOutException) e;
+            decision = isRead ? retryPolicy.onReadTimeout(this, level, timeout, retries) : retryPolicy.onWriteTimeout(this, level, timeout, retries);
+        }
+        else if (e instanceof UnavailableException)
+        {
+            decision = retryPolicy.onUnavailable(this, level, (UnavailableException) e, retries);
+        }
+        else return null;
+
+        switch (decision.getType())
+        {
+            case RETRY:
+                if (!budget.tryAcquire()) return null;
+                break;
+            case IGNORE:
+                break;
+            default:
+                return null;
+        }
+
+        if (logger.isDebugEnabled()) logger.debug("attempt {} of '{}' failed, applying {}", new Object[]{retries + 1, cql, decision});
+        return decision;
+    }
+
+    /**
+     * Map a failure of an execution to the exception the blocking methods report for it.
+     */
+    static SQLException toSQLException(Throwable e, String cql)
+    {
+        if (e instanceof SQLException) return (SQLException) e;
+        if (e instanceof TimeoutException) return new SQLTimeoutException(e.getMessage(), e);
+        if (e instanceof InvalidRequestException) return new SQLSyntaxErrorException(((InvalidRequestException) e).getWhy() + "\n'" + cql + "'", e);
+        if (e instanceof UnavailableException) return new SQLNonTransientConnectionException(NO_SERVER, e);
+        if (e instanceof TimedOutException) return new SQLTransientConnectionException(e);
+        if (e instanceof SchemaDisagreementException) return new SQLRecoverableException(SCHEMA_MISMATCH);
+        return new SQLNonTransientConnectionException(e);
+    }
+
+    /**
+     * Turns the result of an asynchronous execution into the value its future yields.
+     */
+    static abstract class AsyncResult<T>
+    {
+        abstract T convert(CassandraStatement statement, CqlResult result) throws SQLException;
+    }
+
+    static final AsyncResult<ResultSet> ANY_RESULT = new AsyncResult<ResultSet>()
+    {
+        ResultSet convert(CassandraStatement statement, CqlResult result) throws SQLException
+        {
+            return (result.getType() == CqlResultType.ROWS) ? new CassandraResultSet(statement, result) : null;
+        }
+    };
+
+    static final AsyncResult<ResultSet> QUERY_RESULT = new AsyncResult<ResultSet>()
+    {
+        ResultSet convert(CassandraStatement statement, CqlResult result) throws SQLException
+        {
+            if (result.getType() != CqlResultType.ROWS) throw new SQLNonTransientException(NO_RESULTSET);
+            return new CassandraResultSet(statement, result);
+        }
+    };
+
+    static final AsyncResult<CqlResult> ROWS_RESULT = new AsyncResult<CqlResult>()
+    {
+        CqlResult convert(CassandraStatement statement, CqlResult result) throws SQLException
+        {
+            if (result.getType() != CqlResultType.ROWS) throw new SQLNonTransientException(NO_RESULTSET);
+            return result;
+        }
+    };
+
+    static final AsyncResult<Integer> UPDATE_RESULT = new AsyncResult<Integer>()
+    {
+        Integer convert(CassandraStatement statement, CqlResult result) throws SQLException
+        {
+            switch (result.getType())
+            {
+                case ROWS:
+                    throw new SQLNonTransientException(NO_UPDATE_COUNT);
+                case INT:
+                    return result.getNum();
+                default:
+                    return 0;
+            }
+        }
+    };
+
+    /**
+     * Execute the given CQL (or the prepared statement for it when values are given) without blocking,
+     * applying the retry policy as {@link #executeWithRetries(String, boolean)} does.
+     */
+    protected final <T> ListenableFuture<T> executeAsyncWithRetries(String cql, List<ByteBuffer> values, AsyncResult<T> converter) throws SQLException
+    {
+        AsyncExecution<T> execution = new AsyncExecution<T>(connection, cql, values, converter);
+        connection.retryBudget.deposit();
+        execution.attempt();
+        return execution.future;
+    }
+
+    /**
+     * The attempts of one asynchronous execution. Callbacks run on the selector thread of the connection.
+     */
+    private class AsyncExecution<T> implements FutureCallback<CqlResult>
+    {
+        private final CassandraConnection con;
+        private final String cql;
+        private final List<ByteBuffer> values;
+        private final AsyncResult<T> converter;
+        private final boolean isRead;
+        private final long deadline = deadline();
+        private final SettableFuture<T> future = SettableFuture.create();
+
+        private ConsistencyLevel level = consistencyLevel;
+        private int retries = 0;
+
+        AsyncExecution(CassandraConnection con, String cql, List<ByteBuffer> values, AsyncResult<T> converter)
+        {
+            this.con = con;
+            this.cql = cql;
+            this.values = values;
+            this.converter = converter;
+            this.isRead = isReadQuery(cql);
+        }
+
+        void attempt() throws SQLException
+        {
+            Futures.addCallback(con.executeAsync(cql, values, level, remaining(deadline)), this);
+        }
+
+        public void onSuccess(CqlResult result)
+        {
+            try
+            {
+                future.set(converter.convert(CassandraStatement.this, result));
+            }
+            catch (SQLException e)
+            {
+                future.setException(e);
+            }
+            catch (RuntimeException e)
+            {
+                future.setException(e);
+            }
+        }
+
+        public void onFailure(Throwable t)
+        {
+            RetryDecision decision = (t instanceof Exception) ? retryDecision((Exception) t, cql, isRead, level, retries, con.retryBudget) : null;
+            if (decision == null)
+            {
+                future.setException(toSQLException(t, cql));
+                return;
+            }
+
+            // the failure is swallowed so report the statement as executed
+            if (decision.getType() == RetryDecision.Type.IGNORE)
+            {
+                onSuccess(new CqlResult(CqlResultType.VOID));
+                return;
+            }
+
+            if (decision.getConsistencyLevel() != null) level = decision.getConsistencyLevel();
+            retries++;
+            try
+            {
+                attempt();
+            }
+            catch (SQLException e)
+            {
+                future.setException(e);
+            }
+        }
+    }
+
     private void doExecute(String cql) throws SQLException
     {
         try
@@ -161,7 +440,8 @@ class CassandraStatement extends AbstractStatement implements CassandraStatement
             if (logger.isTraceEnabled()) logger.trace("CQL: "+ cql);
             
             resetResults();
-            CqlResult rSet = connection.execute(cql, consistencyLevel);
+            autoPrepared = connection.autoPreparer == null ? null : connection.autoPreparer.forQuery(cql);
+            CqlResult rSet = executeWithRetries(cql, autoPrepared != null);
 
             switch (rSet.getType())
             {
@@ -251,6 +531,30 @@ class CassandraStatement extends AbstractStatement implements CassandraStatement
         return executeUpdate(sql);
     }
 
+    public ListenableFuture<ResultSet> executeAsync(String query) throws SQLException
+    {
+        checkNotClosed();
+        return executeAsyncWithRetries(query, null, ANY_RESULT);
+    }
+
+    public ListenableFuture<ResultSet> executeQueryAsync(String query) throws SQLException
+    {
+        checkNotClosed();
+        return executeAsyncWithRetries(query, null, QUERY_RESULT);
+    }
+
+    public ListenableFuture<Integer> executeUpdateAsync(String query) throws SQLException
+    {
+        checkNotClosed();
+        return executeAsyncWithRetries(query, null, UPDATE_RESULT);
+    }
+
+    public Publisher<Row> publish(String query) throws SQLException
+    {
+        checkNotClosed();
+        return new RowPublisher(this, query, null);
+    }
+
     public Connection getConnection() throws SQLException
     {
         checkNotClosed();
@@ -312,8 +616,8 @@ class CassandraStatement extends AbstractStatement implements CassandraStatement
 
     public int getQueryTimeout() throws SQLException
     {
-        // the Cassandra implementation does not support timeouts on queries
-        return 0;
+        checkNotClosed();
+        return queryTimeout;
     }
 
     public ResultSet getResultSet() throws SQLException
@@ -421,10 +725,19 @@ class CassandraStatement extends AbstractStatement implements CassandraStatement
         // silently ignore any attempt to set this away from the current default (false)
     }
 
-    public void setQueryTimeout(int arg0) throws SQLException
+    public void setQueryTimeout(int seconds) throws SQLException
+    {
+        checkNotClosed();
+        if (seconds < 0) throw new SQLSyntaxErrorException(BAD_TIMEOUT);
+        queryTimeout = seconds;
+    }
+
+    public void cancel() throws SQLException
     {
         checkNotClosed();
-        // silently ignore any attempt to set this away from the current default (0)
+        // asynchronous executions are bounded by the query timeout instead
+        CassandraConnection con = connection;
+        if (executing && con != null) con.cancel();
     }
 
     public <T> T unwrap(Class<T> iface) throws SQLException
@@ -444,6 +757,26 @@ class CassandraStatement extends AbstractStatement implements CassandraStatement
         this.consistencyLevel = consistencyLevel;
     }
 
+    public RetryPolicy getRetryPolicy()
+    {
+        return retryPolicy;
+    }
+
+    public void setRetryPolicy(RetryPolicy retryPolicy)
+    {
+        this.retryPolicy = (retryPolicy == null) ? connection.defaultRetryPolicy : retryPolicy;
+    }
+
+    public boolean isIdempotent()
+    {
+        return idempotent;
+    }
+
+    public void setIdempotent(boolean idempotent)
+    {
+        this.idempotent = idempotent;
+    }
+
     public int compareTo(Object target)
     {
         if (this.equals(target)) return 0;
@@ -20,13 +20,58 @@
  */
 package org.apache.cassandra.cql.jdbc;
 
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.sql.Statement;
 
 import org.apache.cassandra.thrift.ConsistencyLevel;
 
+import com.google.common.util.concurrent.ListenableFuture;
+
 public interface CassandraStatementExtras extends Statement
 {
     public void setConsistencyLevel(ConsistencyLevel consistencyLevel);
     
     public ConsistencyLevel getConsistencyLevel();
+
+    /**
+     * Set the policy applied when the coordinator reports a timeout or unavailable replicas.
+     * A null value restores the connection's default policy.
+     */
+    public void setRetryPolicy(RetryPolicy retryPolicy);
+
+    public RetryPolicy getRetryPolicy();
+
+    /**
+     * Flag whether executing this statement more than once has the same effect as executing it once,
+     * which allows retry policies to retry it after a write timeout. Statements are not idempotent by default.
+     */
+    public void setIdempotent(boolean idempotent);
+
+    public boolean isIdempotent();
+
+    /**
+     * Execute the given CQL without blocking the calling thread. The future yields the rows of a query,
+     * or null for any other statement, and fails with the SQLException the blocking method would throw.
+     * <p>
+     * Asynchronous executions do not change the current result set or update count of the statement.
+     * Listeners run on the driver's I/O thread unless an executor is given when registering them.
+     */
+    public ListenableFuture<ResultSet> executeAsync(String cql) throws SQLException;
+
+    /**
+     * Asynchronous form of {@link #executeQuery(String)}, see {@link #executeAsync(String)}.
+     */
+    public ListenableFuture<ResultSet> executeQueryAsync(String cql) throws SQLException;
+
+    /**
+     * Asynchronous form of {@link #executeUpdate(String)}, see {@link #executeAsync(String)}.
+     */
+    public ListenableFuture<Integer> executeUpdateAsync(String cql) throws SQLException;
+
+    /**
+     * Publish the rows of the given query as the subscriber requests them. The query is executed
+     * asynchronously for each subscription, once the subscriber requests its first rows.
+     */
+    public Publisher<Row> publish(String cql) throws SQLException;
 }
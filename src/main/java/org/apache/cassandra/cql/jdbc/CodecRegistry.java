@@ -0,0 +1,172 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.cassandra.cql.jdbc;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The codecs the driver uses for values of types it has no encoding of its own for, or when an
+ * application asks for a value as a given class.
+ * <p>
+ * Looking up a codec for a class and a CQL type walks the registered codecs once, the result is then
+ * cached until another codec is registered. When several codecs apply, the one with the most
+ * specific Java type wins, and among equally specific ones the last registered.
+ */
+public final class CodecRegistry
+{
+    private static final CodecRegistry DEFAULT = new CodecRegistry();
+
+    // cached in place of a codec when a lookup found nothing
+    private static final Object NONE = new Object();
+
+    private final List<TypeCodec<?>> codecs = new CopyOnWriteArrayList<TypeCodec<?>>();
+
+    // replaced rather than cleared on registration, so that a lookup that ran against the previous
+    // codecs can only cache its result in maps nobody reads any more
+    private volatile ConcurrentMap<Key, Object> encoders = new ConcurrentHashMap<Key, Object>();
+
+    private volatile ConcurrentMap<Key, Object> decoders = new ConcurrentHashMap<Key, Object>();
+
+    CodecRegistry()
+    {
+    }
+
+    /**
+     * @return the registry used by every connection
+     */
+    public static CodecRegistry getDefault()
+    {
+        return DEFAULT;
+    }
+
+    public synchronized void register(TypeCodec<?> codec)
+    {
+        if (codec.getJavaType() == null || codec.getCqlType() == null)
+        {
+            throw new IllegalArgumentException("a codec must name its Java and CQL types: " + codec);
+        }
+        codecs.add(codec);
+        invalidate();
+    }
+
+    public synchronized boolean unregister(TypeCodec<?> codec)
+    {
+        boolean removed = codecs.remove(codec);
+        invalidate();
+        return removed;
+    }
+
+    private void invalidate()
+    {
+        encoders = new ConcurrentHashMap<Key, Object>();
+        decoders = new ConcurrentHashMap<Key, Object>();
+    }
+
+    /**
+     * @param valueClass the class of the value to encode
+     * @param cqlType the CQL type to encode it as, or null for any
+     * @return the codec that encodes the values of the class, or null if there is none
+     */
+    @SuppressWarnings("unchecked")
+    <T> TypeCodec<? super T> encoderFor(Class<T> valueClass, String cqlType)
+    {
+        if (codecs.isEmpty()) return null;
+        Key key = new Key(valueClass, cqlType);
+        // the cache is read before the codecs, so it is never older than them
+        ConcurrentMap<Key, Object> cache = encoders;
+        Object codec = cache.get(key);
+        if (codec == null)
+        {
+            codec = lookUp(valueClass, cqlType, true);
+            if (codec == null) codec = NONE;
+            cache.putIfAbsent(key, codec);
+        }
+        return codec == NONE ? null : (TypeCodec<? super T>) codec;
+    }
+
+    /**
+     * @param requested the class the application asked for
+     * @param cqlType the CQL type of the value
+     * @return the codec that decodes the values of the CQL type into the class, or null if there is none
+     */
+    @SuppressWarnings("unchecked")
+    <T> TypeCodec<? extends T> decoderFor(Class<T> requested, String cqlType)
+    {
+        if (codecs.isEmpty()) return null;
+        Key key = new Key(requested, cqlType);
+        ConcurrentMap<Key, Object> cache = decoders;
+        Object codec = cache.get(key);
+        if (codec == null)
+        {
+            codec = lookUp(requested, cqlType, false);
+            if (codec == null) codec = NONE;
+            cache.putIfAbsent(key, codec);
+        }
+        return codec == NONE ? null : (TypeCodec<? extends T>) codec;
+    }
+
+    private TypeCodec<?> lookUp(Class<?> javaClass, String cqlType, boolean encoding)
+    {
+        TypeCodec<?> best = null;
+        for (TypeCodec<?> codec : codecs)
+        {
+            if (cqlType != null && !cqlType.equals(codec.getCqlType())) continue;
+            Class<?> codecClass = codec.getJavaType();
+            boolean applies = encoding ? codecClass.isAssignableFrom(javaClass) : javaClass.isAssignableFrom(codecClass);
+            // the most specific type is the closest to the value when encoding, and to the request when decoding
+            if (applies && (best == null || (encoding ? best.getJavaType().isAssignableFrom(codecClass) : codecClass.isAssignableFrom(best.getJavaType()))))
+            {
+                best = codec;
+            }
+        }
+        return best;
+    }
+
+    private static class Key
+    {
+        final Class<?> javaClass;
+
+        final String cqlType;
+
+        Key(Class<?> javaClass, String cqlType)
+        {
+            this.javaClass = javaClass;
+            this.cqlType = cqlType;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return javaClass.hashCode() * 31 + (cqlType == null ? 0 : cqlType.hashCode());
+        }
+
+        @Override
+        public boolean equals(Object other)
+        {
+            if (!(other instanceof Key)) return false;
+            Key key = (Key) other;
+            return javaClass == key.javaClass && (cqlType == null ? key.cqlType == null : cqlType.equals(key.cqlType));
+        }
+    }
+}
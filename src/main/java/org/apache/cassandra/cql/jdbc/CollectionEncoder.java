@@ -0,0 +1,216 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.cassandra.cql.jdbc;
+
+import static org.apache.cassandra.cql.jdbc.Utils.BAD_ELEMENT;
+
+import java.nio.ByteBuffer;
+import java.sql.SQLException;
+import java.sql.SQLNonTransientException;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Encodes lists, sets and maps in a single pass into one buffer of the exact size.
+ * <p>
+ * The size of the elements of fixed width types and of text is computed without encoding them,
+ * and they are then written straight into the result. The elements of other types are decomposed
+ * into buffers of their own first, which are copied into the result once. Every element is checked
+ * against the Java class of its type while sizing, so nothing is written for a collection that
+ * cannot be encoded.
+ */
+final class CollectionEncoder
+{
+    private CollectionEncoder()
+    {
+    }
+
+    /**
+     * Layout is: {@code <n><s_1><b_1>...<s_n><b_n> }
+     */
+    static ByteBuffer encode(AbstractJdbcType<?> type, Collection<?> elements) throws SQLException
+    {
+        int width = width(type);
+        ByteBuffer[] encoded = width < 0 && !isText(type) ? new ByteBuffer[elements.size()] : null;
+        int size = 2;
+        int i = 0;
+        for (Object element : elements)
+        {
+            size += 2 + size(type, width, element, encoded, i++);
+        }
+
+        ByteBuffer result = ByteBuffer.allocate(size);
+        result.putShort((short) elements.size());
+        i = 0;
+        for (Object element : elements)
+        {
+            write(result, type, element, encoded, i++);
+        }
+        result.flip();
+        return result;
+    }
+
+    /**
+     * Layout is: {@code <n><sk_1><k_1><sv_1><v_1>...<sk_n><k_n><sv_n><v_n> }
+     */
+    static ByteBuffer encode(AbstractJdbcType<?> keys, AbstractJdbcType<?> values, Map<?, ?> map) throws SQLException
+    {
+        int keyWidth = width(keys);
+        int valueWidth = width(values);
+        ByteBuffer[] encodedKeys = keyWidth < 0 && !isText(keys) ? new ByteBuffer[map.size()] : null;
+        ByteBuffer[] encodedValues = valueWidth < 0 && !isText(values) ? new ByteBuffer[map.size()] : null;
+        int size = 2;
+        int i = 0;
+        for (Map.Entry<?, ?> entry : map.entrySet())
+        {
+            size += 4 + size(keys, keyWidth, entry.getKey(), encodedKeys, i) + size(values, valueWidth, entry.getValue(), encodedValues, i);
+            i++;
+        }
+
+        ByteBuffer result = ByteBuffer.allocate(size);
+        result.putShort((short) map.size());
+        i = 0;
+        for (Map.Entry<?, ?> entry : map.entrySet())
+        {
+            write(result, keys, entry.getKey(), encodedKeys, i);
+            write(result, values, entry.getValue(), encodedValues, i);
+            i++;
+        }
+        result.flip();
+        return result;
+    }
+
+    // the size of the elements of a type, -1 if it varies
+    private static int width(AbstractJdbcType<?> type)
+    {
+        if (type == JdbcInt32.instance || type == JdbcFloat.instance) return 4;
+        if (type == JdbcLong.instance || type == JdbcCounterColumn.instance || type == JdbcDouble.instance || type == JdbcDate.instance) return 8;
+        if (type == JdbcUUID.instance || type == JdbcTimeUUID.instance || type == JdbcLexicalUUID.instance) return 16;
+        if (type == JdbcBoolean.instance) return 1;
+        return -1;
+    }
+
+    private static boolean isText(AbstractJdbcType<?> type)
+    {
+        return type == JdbcUTF8.instance;
+    }
+
+    // the size of an element, which is decomposed into its slot when it cannot be written directly
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static int size(AbstractJdbcType<?> type, int width, Object element, ByteBuffer[] encoded, int slot) throws SQLException
+    {
+        if (!type.getType().isInstance(element))
+        {
+            String found = element == null ? "null" : "a " + element.getClass().getName();
+            throw new SQLNonTransientException(String.format(BAD_ELEMENT, slot + 1, found, type.getType().getName()));
+        }
+        if (width >= 0) return width;
+        if (type == JdbcUTF8.instance) return utf8Length((String) element);
+        encoded[slot] = ((AbstractJdbcType) type).decompose(element);
+        return encoded[slot].remaining();
+    }
+
+    private static void write(ByteBuffer result, AbstractJdbcType<?> type, Object element, ByteBuffer[] encoded, int slot)
+    {
+        if (encoded != null)
+        {
+            ByteBuffer bytes = encoded[slot];
+            result.putShort((short) bytes.remaining());
+            result.put(bytes.duplicate());
+        }
+        else if (type == JdbcUTF8.instance)
+        {
+            String string = (String) element;
+            result.putShort((short) utf8Length(string));
+            putUtf8(result, string);
+        }
+        else if (type == JdbcInt32.instance) result.putShort((short) 4).putInt((Integer) element);
+        else if (type == JdbcFloat.instance) result.putShort((short) 4).putFloat((Float) element);
+        else if (type == JdbcLong.instance || type == JdbcCounterColumn.instance) result.putShort((short) 8).putLong((Long) element);
+        else if (type == JdbcDouble.instance) result.putShort((short) 8).putDouble((Double) element);
+        else if (type == JdbcDate.instance) result.putShort((short) 8).putLong(((Date) element).getTime());
+        else if (type == JdbcBoolean.instance) result.putShort((short) 1).put((Boolean) element ? (byte) 1 : (byte) 0);
+        else
+        {
+            UUID uuid = (UUID) element;
+            result.putShort((short) 16).putLong(uuid.getMostSignificantBits()).putLong(uuid.getLeastSignificantBits());
+        }
+    }
+
+    private static int utf8Length(String string)
+    {
+        int length = 0;
+        for (int i = 0; i < string.length(); i++)
+        {
+            char c = string.charAt(i);
+            if (c < 0x80) length++;
+            else if (c < 0x800) length += 2;
+            else if (Character.isHighSurrogate(c) && i + 1 < string.length() && Character.isLowSurrogate(string.charAt(i + 1)))
+            {
+                length += 4;
+                i++;
+            }
+            else if (isSurrogate(c)) length++;
+            else length += 3;
+        }
+        return length;
+    }
+
+    // unpaired surrogates are written as '?', as String.getBytes does
+    private static void putUtf8(ByteBuffer result, String string)
+    {
+        for (int i = 0; i < string.length(); i++)
+        {
+            char c = string.charAt(i);
+            if (c < 0x80) result.put((byte) c);
+            else if (c < 0x800)
+            {
+                result.put((byte) (0xC0 | (c >> 6)));
+                result.put((byte) (0x80 | (c & 0x3F)));
+            }
+            else if (Character.isHighSurrogate(c) && i + 1 < string.length() && Character.isLowSurrogate(string.charAt(i + 1)))
+            {
+                int codePoint = Character.toCodePoint(c, string.charAt(++i));
+                result.put((byte) (0xF0 | (codePoint >> 18)));
+                result.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                result.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                result.put((byte) (0x80 | (codePoint & 0x3F)));
+            }
+            else if (isSurrogate(c))
+            {
+                result.put((byte) '?');
+            }
+            else
+            {
+                result.put((byte) (0xE0 | (c >> 12)));
+                result.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                result.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+    }
+
+    private static boolean isSurrogate(char c)
+    {
+        return c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE;
+    }
+}
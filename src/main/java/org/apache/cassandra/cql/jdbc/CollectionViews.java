@@ -0,0 +1,234 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.cassandra.cql.jdbc;
+
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.Set;
+
+/**
+ * Read-only views of the lists, sets and maps of a column, backed by the bytes of the column.
+ * <p>
+ * Creating a view only walks the lengths of the elements. An element is decoded from a slice of the
+ * column when it is first read, so a large collection costs next to nothing to skip, and only the
+ * elements read to read it partially. Looking up a key or an element scans the view; a collection
+ * searched many times is better copied, e.g. into a {@code HashMap}.
+ */
+final class CollectionViews
+{
+    private CollectionViews()
+    {
+    }
+
+    /**
+     * Layout is: {@code <n><s_1><b_1>...<s_n><b_n> }
+     */
+    static <T> List<T> list(AbstractJdbcType<T> type, ByteBuffer bytes)
+    {
+        return new Elements<T>(type, bytes, offsets(bytes, 1), 0, 1);
+    }
+
+    static <T> Set<T> set(AbstractJdbcType<T> type, ByteBuffer bytes)
+    {
+        final List<T> elements = list(type, bytes);
+        return new AbstractSet<T>()
+        {
+            public Iterator<T> iterator()
+            {
+                return elements.iterator();
+            }
+
+            public int size()
+            {
+                return elements.size();
+            }
+        };
+    }
+
+    /**
+     * Layout is: {@code <n><sk_1><k_1><sv_1><v_1>...<sk_n><k_n><sv_n><v_n> }
+     */
+    static <K, V> Map<K, V> map(AbstractJdbcType<K> keyType, AbstractJdbcType<V> valueType, ByteBuffer bytes)
+    {
+        int[] offsets = offsets(bytes, 2);
+        final List<K> keys = new Elements<K>(keyType, bytes, offsets, 0, 2);
+        final List<V> values = new Elements<V>(valueType, bytes, offsets, 1, 2);
+        final Set<Map.Entry<K, V>> entries = new AbstractSet<Map.Entry<K, V>>()
+        {
+            public Iterator<Map.Entry<K, V>> iterator()
+            {
+                return new Iterator<Map.Entry<K, V>>()
+                {
+                    private int next = 0;
+
+                    public boolean hasNext()
+                    {
+                        return next < keys.size();
+                    }
+
+                    public Map.Entry<K, V> next()
+                    {
+                        if (!hasNext()) throw new NoSuchElementException();
+                        int i = next++;
+                        return new AbstractMap.SimpleImmutableEntry<K, V>(keys.get(i), values.get(i));
+                    }
+
+                    public void remove()
+                    {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+
+            public int size()
+            {
+                return keys.size();
+            }
+        };
+        return new AbstractMap<K, V>()
+        {
+            public Set<Map.Entry<K, V>> entrySet()
+            {
+                return entries;
+            }
+
+            // only the value of the key looked up is decoded
+            public V get(Object key)
+            {
+                int i = keys.indexOf(key);
+                return i < 0 ? null : values.get(i);
+            }
+
+            public boolean containsKey(Object key)
+            {
+                return keys.contains(key);
+            }
+        };
+    }
+
+    /**
+     * @return the elements of a list or a set of int
+     */
+    static int[] ints(ByteBuffer bytes)
+    {
+        int[] ints = new int[bytes.getShort(bytes.position()) & 0xFFFF];
+        int offset = bytes.position() + 2;
+        for (int i = 0; i < ints.length; i++)
+        {
+            ints[i] = bytes.getInt(offset + 2);
+            offset += 2 + (bytes.getShort(offset) & 0xFFFF);
+        }
+        return ints;
+    }
+
+    /**
+     * @return the elements of a list or a set of bigint
+     */
+    static long[] longs(ByteBuffer bytes)
+    {
+        long[] longs = new long[bytes.getShort(bytes.position()) & 0xFFFF];
+        int offset = bytes.position() + 2;
+        for (int i = 0; i < longs.length; i++)
+        {
+            longs[i] = bytes.getLong(offset + 2);
+            offset += 2 + (bytes.getShort(offset) & 0xFFFF);
+        }
+        return longs;
+    }
+
+    /**
+     * @return the next element of a collection as a slice of its bytes, moving the input past it
+     */
+    static ByteBuffer next(ByteBuffer input)
+    {
+        int size = input.getShort() & 0xFFFF;
+        ByteBuffer element = input.slice();
+        element.limit(size);
+        input.position(input.position() + size);
+        return element;
+    }
+
+    // the offsets of the lengths of the elements, with the given number of elements per entry
+    private static int[] offsets(ByteBuffer bytes, int perEntry)
+    {
+        int[] offsets = new int[(bytes.getShort(bytes.position()) & 0xFFFF) * perEntry];
+        int offset = bytes.position() + 2;
+        for (int i = 0; i < offsets.length; i++)
+        {
+            offsets[i] = offset;
+            offset += 2 + (bytes.getShort(offset) & 0xFFFF);
+        }
+        return offsets;
+    }
+
+    /**
+     * Every stride-th element of a collection, from the first-th, decoded on first access.
+     */
+    private static class Elements<T> extends AbstractList<T> implements RandomAccess
+    {
+        private final AbstractJdbcType<T> type;
+
+        private final ByteBuffer bytes;
+
+        private final int[] offsets;
+
+        private final int first, stride;
+
+        // collections hold no null elements, so null stands for not decoded yet
+        private final Object[] decoded;
+
+        Elements(AbstractJdbcType<T> type, ByteBuffer bytes, int[] offsets, int first, int stride)
+        {
+            this.type = type;
+            this.bytes = bytes;
+            this.offsets = offsets;
+            this.first = first;
+            this.stride = stride;
+            this.decoded = new Object[offsets.length / stride];
+        }
+
+        @SuppressWarnings("unchecked")
+        public T get(int index)
+        {
+            Object element = decoded[index];
+            if (element == null)
+            {
+                ByteBuffer input = bytes.duplicate();
+                input.position(offsets[first + index * stride]);
+                element = type.compose(next(input));
+                decoded[index] = element;
+            }
+            return (T) element;
+        }
+
+        public int size()
+        {
+            return decoded.length;
+        }
+    }
+}
@@ -0,0 +1,423 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.cassandra.cql.jdbc;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.lang.reflect.InvocationTargetException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.sql.SQLException;
+import java.sql.SQLNonTransientException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.apache.cassandra.utils.ByteBufferUtil;
+
+/**
+ * Serializes the common JDK types in a compact binary format: a tag byte followed by the value, with
+ * integers and lengths as variable length integers.
+ * <p>
+ * Strings, numbers, booleans, characters, dates, UUIDs, byte arrays, and the array lists, hash sets
+ * and hash maps of those are written without any class descriptor; the sets and maps are read back
+ * as linked ones, which keep the order they were written in. An {@link Externalizable} object is written as its class
+ * name followed by what it writes itself, its nested objects in the same format; it is only read back
+ * as a class of the type asked for, and nested ones as externalizable classes. Any other object
+ * falls back to Java serialization, read back under the restrictions of {@link JavaObjectSerializer}
+ * and with only the common JDK types allowed when nested. Bytes written by Java serialization are read
+ * as such, so that the blobs written before a connection switched to this serializer can still be read.
+ */
+class CompactObjectSerializer implements ObjectSerializer
+{
+    static final CompactObjectSerializer INSTANCE = new CompactObjectSerializer();
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    // the first byte of a stream written by Java serialization
+    private static final byte JAVA_STREAM_MAGIC = (byte) 0xAC;
+
+    private static final byte NULL = 0;
+    private static final byte TRUE = 1;
+    private static final byte FALSE = 2;
+    private static final byte BYTE = 3;
+    private static final byte SHORT = 4;
+    private static final byte CHARACTER = 5;
+    private static final byte INTEGER = 6;
+    private static final byte LONG = 7;
+    private static final byte FLOAT = 8;
+    private static final byte DOUBLE = 9;
+    private static final byte BIG_INTEGER = 10;
+    private static final byte BIG_DECIMAL = 11;
+    private static final byte STRING = 12;
+    private static final byte DATE = 13;
+    private static final byte SQL_DATE = 14;
+    private static final byte SQL_TIME = 15;
+    private static final byte SQL_TIMESTAMP = 16;
+    private static final byte UUID_TAG = 17;
+    private static final byte BYTES = 18;
+    private static final byte LIST = 19;
+    private static final byte SET = 20;
+    private static final byte MAP = 21;
+    private static final byte EXTERNALIZABLE = 22;
+    private static final byte SERIALIZABLE = 23;
+
+    public ByteBuffer serialize(Object object) throws SQLException
+    {
+        Output out = new Output(new ByteArrayOutputStream(64));
+        try
+        {
+            out.writeObject(object);
+        }
+        catch (IOException e)
+        {
+            throw new SQLNonTransientException("Problem serializing the Java object", e);
+        }
+        return out.toByteBuffer();
+    }
+
+    public Object deserialize(ByteBuffer bytes, Class<?> type) throws SQLException
+    {
+        if (bytes.hasRemaining() && bytes.get(bytes.position()) == JAVA_STREAM_MAGIC)
+        {
+            return JavaObjectSerializer.INSTANCE.deserialize(bytes, type);
+        }
+        try
+        {
+            return new Input(ByteBufferUtil.inputStream(bytes), type).readObject();
+        }
+        catch (IOException e)
+        {
+            throw new SQLNonTransientException("Problem deserializing the Java object", e);
+        }
+        catch (ClassNotFoundException e)
+        {
+            throw new SQLNonTransientException("Problem deserializing the Java object", e);
+        }
+    }
+
+    /**
+     * Writes in the compact format, also for the objects nested in an externalizable one.
+     */
+    private static class Output extends DataOutputStream implements ObjectOutput
+    {
+        private final ByteArrayOutputStream bytes;
+
+        Output(ByteArrayOutputStream bytes)
+        {
+            super(bytes);
+            this.bytes = bytes;
+        }
+
+        ByteBuffer toByteBuffer()
+        {
+            return ByteBuffer.wrap(bytes.toByteArray());
+        }
+
+        public void writeObject(Object object) throws IOException
+        {
+            if (object == null) writeByte(NULL);
+            else if (object instanceof String) writeString(STRING, (String) object);
+            else if (object instanceof Boolean) writeByte((Boolean) object ? TRUE : FALSE);
+            else if (object instanceof Integer) writeTagged(INTEGER, zigZag((Integer) object));
+            else if (object instanceof Long) writeTagged(LONG, zigZag((Long) object));
+            else if (object instanceof Short) writeTagged(SHORT, zigZag((Short) object));
+            else if (object instanceof Byte)
+            {
+                writeByte(BYTE);
+                writeByte((Byte) object);
+            }
+            else if (object instanceof Character) writeTagged(CHARACTER, (Character) object);
+            else if (object instanceof Double)
+            {
+                writeByte(DOUBLE);
+                writeDouble((Double) object);
+            }
+            else if (object instanceof Float)
+            {
+                writeByte(FLOAT);
+                writeFloat((Float) object);
+            }
+            else if (object instanceof BigInteger) writeBytes(BIG_INTEGER, ((BigInteger) object).toByteArray());
+            else if (object instanceof BigDecimal)
+            {
+                BigDecimal decimal = (BigDecimal) object;
+                writeTagged(BIG_DECIMAL, zigZag(decimal.scale()));
+                writeBytes(decimal.unscaledValue().toByteArray());
+            }
+            else if (object.getClass() == java.util.Date.class) writeTagged(DATE, zigZag(((java.util.Date) object).getTime()));
+            else if (object.getClass() == java.sql.Date.class) writeTagged(SQL_DATE, zigZag(((java.util.Date) object).getTime()));
+            else if (object.getClass() == java.sql.Time.class) writeTagged(SQL_TIME, zigZag(((java.util.Date) object).getTime()));
+            else if (object.getClass() == java.sql.Timestamp.class)
+            {
+                java.sql.Timestamp timestamp = (java.sql.Timestamp) object;
+                writeTagged(SQL_TIMESTAMP, zigZag(timestamp.getTime()));
+                writeVarint(timestamp.getNanos());
+            }
+            else if (object instanceof UUID)
+            {
+                UUID uuid = (UUID) object;
+                writeByte(UUID_TAG);
+                writeLong(uuid.getMostSignificantBits());
+                writeLong(uuid.getLeastSignificantBits());
+            }
+            else if (object instanceof byte[]) writeBytes(BYTES, (byte[]) object);
+            else if (object instanceof ByteBuffer) writeBytes(BYTES, ByteBufferUtil.getArray((ByteBuffer) object));
+            // other kinds of collections fall back to Java serialization, which keeps their class
+            else if (object instanceof ArrayList || object.getClass() == LinkedHashSet.class || object.getClass() == java.util.HashSet.class)
+            {
+                Collection<?> collection = (Collection<?>) object;
+                writeTagged(object instanceof List ? LIST : SET, collection.size());
+                for (Object element : collection)
+                {
+                    writeObject(element);
+                }
+            }
+            else if (object.getClass() == LinkedHashMap.class || object.getClass() == java.util.HashMap.class)
+            {
+                Map<?, ?> map = (Map<?, ?>) object;
+                writeTagged(MAP, map.size());
+                for (Map.Entry<?, ?> entry : map.entrySet())
+                {
+                    writeObject(entry.getKey());
+                    writeObject(entry.getValue());
+                }
+            }
+            else if (object instanceof Externalizable)
+            {
+                writeString(EXTERNALIZABLE, object.getClass().getName());
+                ((Externalizable) object).writeExternal(this);
+            }
+            else
+            {
+                try
+                {
+                    writeBytes(SERIALIZABLE, ByteBufferUtil.getArray(JavaObjectSerializer.INSTANCE.serialize(object)));
+                }
+                catch (SQLException e)
+                {
+                    throw new IOException(e.getMessage(), e);
+                }
+            }
+        }
+
+        private void writeTagged(byte tag, long value) throws IOException
+        {
+            writeByte(tag);
+            writeVarint(value);
+        }
+
+        private void writeString(byte tag, String string) throws IOException
+        {
+            writeBytes(tag, string.getBytes(UTF_8));
+        }
+
+        private void writeBytes(byte tag, byte[] array) throws IOException
+        {
+            writeByte(tag);
+            writeBytes(array);
+        }
+
+        private void writeBytes(byte[] array) throws IOException
+        {
+            writeVarint(array.length);
+            write(array);
+        }
+
+        // unsigned, 7 bits per byte
+        private void writeVarint(long value) throws IOException
+        {
+            while ((value & ~0x7FL) != 0)
+            {
+                writeByte((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            writeByte((int) value);
+        }
+
+        // small negative numbers as small unsigned ones
+        private static long zigZag(long value)
+        {
+            return (value << 1) ^ (value >> 63);
+        }
+    }
+
+    /**
+     * Reads the compact format, also for the objects nested in an externalizable one.
+     */
+    private static class Input extends DataInputStream implements ObjectInput
+    {
+        // the type asked for of the next object read, only the outermost one has one
+        private Class<?> expected;
+
+        Input(InputStream in, Class<?> expected)
+        {
+            super(in);
+            this.expected = expected;
+        }
+
+        public Object readObject() throws ClassNotFoundException, IOException
+        {
+            Class<?> type = expected;
+            expected = null;
+            byte tag = readByte();
+            switch (tag)
+            {
+                case NULL: return null;
+                case TRUE: return Boolean.TRUE;
+                case FALSE: return Boolean.FALSE;
+                case BYTE: return readByte();
+                case SHORT: return (short) unZigZag(readVarint());
+                case CHARACTER: return (char) readVarint();
+                case INTEGER: return (int) unZigZag(readVarint());
+                case LONG: return unZigZag(readVarint());
+                case FLOAT: return readFloat();
+                case DOUBLE: return readDouble();
+                case BIG_INTEGER: return new BigInteger(readBytes());
+                case BIG_DECIMAL:
+                    int scale = (int) unZigZag(readVarint());
+                    return new BigDecimal(new BigInteger(readBytes()), scale);
+                case STRING: return readString();
+                case DATE: return new java.util.Date(unZigZag(readVarint()));
+                case SQL_DATE: return new java.sql.Date(unZigZag(readVarint()));
+                case SQL_TIME: return new java.sql.Time(unZigZag(readVarint()));
+                case SQL_TIMESTAMP:
+                    java.sql.Timestamp timestamp = new java.sql.Timestamp(unZigZag(readVarint()));
+                    timestamp.setNanos((int) readVarint());
+                    return timestamp;
+                case UUID_TAG: return new UUID(readLong(), readLong());
+                case BYTES: return readBytes();
+                case LIST:
+                    return readElements(new ArrayList<Object>());
+                case SET:
+                    return readElements(new LinkedHashSet<Object>());
+                case MAP:
+                    int size = (int) readVarint();
+                    Map<Object, Object> map = new LinkedHashMap<Object, Object>();
+                    for (int i = 0; i < size; i++)
+                    {
+                        map.put(readObject(), readObject());
+                    }
+                    return map;
+                case EXTERNALIZABLE:
+                    return readExternalizable(readString(), type);
+                case SERIALIZABLE:
+                    try
+                    {
+                        return JavaObjectSerializer.read(ByteBuffer.wrap(readBytes()), type);
+                    }
+                    catch (SQLException e)
+                    {
+                        throw new IOException(e.getMessage(), e);
+                    }
+                default:
+                    throw new IOException("unknown tag " + tag + " in a serialized object");
+            }
+        }
+
+        private <C extends Collection<Object>> C readElements(C elements) throws ClassNotFoundException, IOException
+        {
+            int size = (int) readVarint();
+            for (int i = 0; i < size; i++)
+            {
+                elements.add(readObject());
+            }
+            return elements;
+        }
+
+        private Object readExternalizable(String className, Class<?> type) throws ClassNotFoundException, IOException
+        {
+            ClassLoader loader = Thread.currentThread().getContextClassLoader();
+            // not initialized until it is known to be a class the caller may get
+            Class<?> objectClass = Class.forName(className, false, loader == null ? CompactObjectSerializer.class.getClassLoader() : loader);
+            if (!Externalizable.class.isAssignableFrom(objectClass) || (type != null && !type.isAssignableFrom(objectClass)))
+            {
+                throw new IOException(className + " is not an externalizable " + (type == null ? "class" : type.getName()));
+            }
+            try
+            {
+                Externalizable object = (Externalizable) objectClass.getDeclaredConstructor().newInstance();
+                object.readExternal(this);
+                return object;
+            }
+            catch (InvocationTargetException e)
+            {
+                throw new IOException("the constructor of " + className + " failed", e.getCause());
+            }
+            catch (NoSuchMethodException e)
+            {
+                throw new IOException(className + " has no public no-argument constructor", e);
+            }
+            catch (InstantiationException e)
+            {
+                throw new IOException(className + " has no public no-argument constructor", e);
+            }
+            catch (IllegalAccessException e)
+            {
+                throw new IOException(className + " has no public no-argument constructor", e);
+            }
+        }
+
+        private String readString() throws IOException
+        {
+            return new String(readBytes(), UTF_8);
+        }
+
+        private byte[] readBytes() throws IOException
+        {
+            // the length comes from the bytes, so it is checked before anything is allocated for it
+            long length = readVarint();
+            if (length < 0 || length > available()) throw new IOException("a length of " + length + " runs past the end of a serialized object");
+            byte[] array = new byte[(int) length];
+            readFully(array);
+            return array;
+        }
+
+        private long readVarint() throws IOException
+        {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7)
+            {
+                byte b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) return value;
+            }
+            throw new IOException("malformed variable length integer in a serialized object");
+        }
+
+        private static long unZigZag(long value)
+        {
+            return (value >>> 1) ^ -(value & 1);
+        }
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.cassandra.cql.jdbc;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The physical connections of a pool.
+ * <p>
+ * Borrowing and returning a connection only flips its state with a compare-and-set, so threads never
+ * wait on each other to get hold of an idle connection. A thread first tries the connections it
+ * returned most recently, which are likely still idle, before scanning the connections of the pool.
+ */
+class ConnectionBag
+{
+	static final int STATE_REMOVED = -1;
+
+	static final int STATE_IDLE = 0;
+
+	static final int STATE_IN_USE = 1;
+
+	// held by the pool itself, e.g. while it is being validated
+	static final int STATE_RESERVED = 2;
+
+	// returned after an error, waiting to be validated
+	static final int STATE_QUARANTINED = 3;
+
+	private static final int MAX_RECENT = 8;
+
+	private final CopyOnWriteArrayList<PooledCassandraConnection> connections = new CopyOnWriteArrayList<PooledCassandraConnection>();
+
+	// only a hint, it may be briefly off while a connection changes hands
+	private final AtomicInteger idleCount = new AtomicInteger();
+
+	// weak so that a thread outliving the pool does not keep its connections reachable
+	private final ThreadLocal<List<WeakReference<PooledCassandraConnection>>> recent = new ThreadLocal<List<WeakReference<PooledCassandraConnection>>>()
+	{
+		@Override
+		protected List<WeakReference<PooledCassandraConnection>> initialValue()
+		{
+			return new ArrayList<WeakReference<PooledCassandraConnection>>(MAX_RECENT);
+		}
+	};
+
+	/**
+	 * @return an idle connection now marked in use, or null if there is none
+	 */
+	PooledCassandraConnection borrow()
+	{
+		List<WeakReference<PooledCassandraConnection>> mine = recent.get();
+		for (int i = mine.size() - 1; i >= 0; i--)
+		{
+			PooledCassandraConnection connection = mine.remove(i).get();
+			if (connection != null && connection.state.compareAndSet(STATE_IDLE, STATE_IN_USE))
+			{
+				idleCount.decrementAndGet();
+				return connection;
+			}
+		}
+
+		for (PooledCassandraConnection connection : connections)
+		{
+			if (connection.state.compareAndSet(STATE_IDLE, STATE_IN_USE))
+			{
+				idleCount.decrementAndGet();
+				return connection;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Adds a new connection, in use by the thread that opened it.
+	 */
+	void add(PooledCassandraConnection connection)
+	{
+		connection.state.set(STATE_IN_USE);
+		connections.add(connection);
+	}
+
+	/**
+	 * Makes a connection in use available again.
+	 *
+	 * @return false if the connection was removed from the bag meanwhile
+	 */
+	boolean requite(PooledCassandraConnection connection)
+	{
+		idleCount.incrementAndGet();
+		if (!connection.state.compareAndSet(STATE_IN_USE, STATE_IDLE))
+		{
+			idleCount.decrementAndGet();
+			return false;
+		}
+
+		List<WeakReference<PooledCassandraConnection>> mine = recent.get();
+		if (mine.size() == MAX_RECENT)
+		{
+			mine.remove(0);
+		}
+		mine.add(new WeakReference<PooledCassandraConnection>(connection));
+		return true;
+	}
+
+	/**
+	 * Takes an idle connection out of circulation without borrowing it.
+	 *
+	 * @return false if the connection was not idle
+	 */
+	boolean reserve(PooledCassandraConnection connection)
+	{
+		if (!connection.state.compareAndSet(STATE_IDLE, STATE_RESERVED))
+		{
+			return false;
+		}
+		idleCount.decrementAndGet();
+		return true;
+	}
+
+	/**
+	 * Puts a reserved connection back in circulation.
+	 *
+	 * @return false if the connection was removed from the bag meanwhile
+	 */
+	boolean unreserve(PooledCassandraConnection connection)
+	{
+		idleCount.incrementAndGet();
+		if (!connection.state.compareAndSet(STATE_RESERVED, STATE_IDLE))
+		{
+			idleCount.decrementAndGet();
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Takes a connection in use out of circulation until it is restored.
+	 *
+	 * @return false if the connection was removed from the bag meanwhile
+	 */
+	boolean quarantine(PooledCassandraConnection connection)
+	{
+		return connection.state.compareAndSet(STATE_IN_USE, STATE_QUARANTINED);
+	}
+
+	/**
+	 * Puts a quarantined connection back in circulation.
+	 *
+	 * @return false if the connection was removed from the bag meanwhile
+	 */
+	boolean restore(PooledCassandraConnection connection)
+	{
+		idleCount.incrementAndGet();
+		if (!connection.state.compareAndSet(STATE_QUARANTINED, STATE_IDLE))
+		{
+			idleCount.decrementAndGet();
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Removes a connection whatever its state, leaving it to the caller to close it.
+	 *
+	 * @return the state of the connection before it was removed, STATE_REMOVED if it already was
+	 */
+	int remove(PooledCassandraConnection connection)
+	{
+		int previous = connection.state.getAndSet(STATE_REMOVED);
+		if (previous == STATE_REMOVED)
+		{
+			return previous;
+		}
+		if (previous == STATE_IDLE)
+		{
+			idleCount.decrementAndGet();
+		}
+		connections.remove(connection);
+		return previous;
+	}
+
+	int size()
+	{
+		return connections.size();
+	}
+
+	int idleCount()
+	{
+		return Math.max(0, idleCount.get());
+	}
+
+	/**
+	 * @return a snapshot of the connections, in any state
+	 */
+	List<PooledCassandraConnection> values()
+	{
+		return new ArrayList<PooledCassandraConnection>(connections);
+	}
+}
@@ -0,0 +1,232 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.cassandra.cql.jdbc;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * The template of a CQL statement written with inline literals, in which the literals that can be
+ * bound are replaced by bind markers.
+ * <p>
+ * Only the literals of SELECT, INSERT, UPDATE and DELETE statements are replaced, and only where a
+ * bind marker is sure to be accepted: not in collection literals, function arguments, or after
+ * LIMIT, TTL and TIMESTAMP. Statements with comments or bind markers of their own are left alone.
+ */
+final class CqlTemplate
+{
+    enum Kind
+    {
+        STRING, INTEGER, FLOAT, UUID, BOOLEAN, HEX
+    }
+
+    static final class Literal
+    {
+        final Kind kind;
+
+        // the value as written, without the quotes and escapes of a string
+        final String text;
+
+        Literal(Kind kind, String text)
+        {
+            this.kind = kind;
+            this.text = text;
+        }
+
+        @Override
+        public String toString()
+        {
+            return kind + ":" + text;
+        }
+    }
+
+    private static final Pattern DML = Pattern.compile("^\\s*(SELECT|INSERT|UPDATE|DELETE)\\b.*", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+    private static final Pattern UUID = Pattern.compile("[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}");
+
+    private final String cql;
+
+    private final List<Literal> literals;
+
+    private CqlTemplate(String cql, List<Literal> literals)
+    {
+        this.cql = cql;
+        this.literals = Collections.unmodifiableList(literals);
+    }
+
+    String getCql()
+    {
+        return cql;
+    }
+
+    List<Literal> getLiterals()
+    {
+        return literals;
+    }
+
+    /**
+     * @return the template of the statement, or null if it has no literal to replace
+     */
+    static CqlTemplate parse(String cql)
+    {
+        if (!isDml(cql)) return null;
+
+        StringBuilder template = new StringBuilder(cql.length());
+        List<Literal> literals = new ArrayList<Literal>();
+        // whether bind markers are accepted in each of the enclosing brackets
+        List<Boolean> brackets = new ArrayList<Boolean>();
+        String previousWord = null;
+        char previous = ' ';
+        int length = cql.length();
+        int i = 0;
+        while (i < length)
+        {
+            char c = cql.charAt(i);
+            boolean bindable = (brackets.isEmpty() || brackets.get(brackets.size() - 1))
+                               && !"LIMIT".equals(previousWord) && !"TTL".equals(previousWord) && !"TIMESTAMP".equals(previousWord);
+            int start = i;
+            Literal literal = null;
+
+            if (Character.isWhitespace(c))
+            {
+                template.append(c);
+                i++;
+                continue;
+            }
+            else if (c == '?' || (c == '-' && i + 1 < length && cql.charAt(i + 1) == '-') || (c == '/' && i + 1 < length && (cql.charAt(i + 1) == '/' || cql.charAt(i + 1) == '*')))
+            {
+                return null;
+            }
+            else if (c == '\'' || c == '"')
+            {
+                StringBuilder value = new StringBuilder();
+                i++;
+                while (true)
+                {
+                    if (i >= length) return null;
+                    char q = cql.charAt(i++);
+                    if (q == c)
+                    {
+                        if (i < length && cql.charAt(i) == c) i++;
+                        else break;
+                    }
+                    value.append(q);
+                }
+                if (c == '\'') literal = new Literal(Kind.STRING, value.toString());
+                else previousWord = null;
+            }
+            else if (UUID.matcher(cql).region(i, Math.min(length, i + 36)).matches() && !isWordPart(cql, i + 36))
+            {
+                i += 36;
+                literal = new Literal(Kind.UUID, cql.substring(start, i));
+            }
+            else if (c == '0' && i + 2 < length && (cql.charAt(i + 1) == 'x' || cql.charAt(i + 1) == 'X') && Character.digit(cql.charAt(i + 2), 16) >= 0)
+            {
+                i += 2;
+                while (i < length && Character.digit(cql.charAt(i), 16) >= 0) i++;
+                if (isWordPart(cql, i)) return null;
+                literal = new Literal(Kind.HEX, cql.substring(start + 2, i));
+            }
+            else if (isDigit(c) || (c == '-' && i + 1 < length && isDigit(cql.charAt(i + 1)) && "=<>(,[{:".indexOf(previous) >= 0))
+            {
+                i++;
+                while (i < length && isDigit(cql.charAt(i))) i++;
+                Kind kind = Kind.INTEGER;
+                if (i + 1 < length && cql.charAt(i) == '.' && isDigit(cql.charAt(i + 1)))
+                {
+                    kind = Kind.FLOAT;
+                    i++;
+                    while (i < length && isDigit(cql.charAt(i))) i++;
+                }
+                if (i < length && (cql.charAt(i) == 'e' || cql.charAt(i) == 'E'))
+                {
+                    kind = Kind.FLOAT;
+                    i++;
+                    if (i < length && (cql.charAt(i) == '+' || cql.charAt(i) == '-')) i++;
+                    if (i >= length || !isDigit(cql.charAt(i))) return null;
+                    while (i < length && isDigit(cql.charAt(i))) i++;
+                }
+                if (isWordPart(cql, i)) return null;
+                literal = new Literal(kind, cql.substring(start, i));
+            }
+            else if (Character.isLetter(c) || c == '_')
+            {
+                while (isWordPart(cql, i)) i++;
+                String word = cql.substring(start, i);
+                if (word.equalsIgnoreCase("true") || word.equalsIgnoreCase("false")) literal = new Literal(Kind.BOOLEAN, word);
+                else previousWord = word.toUpperCase();
+            }
+            else
+            {
+                if (c == '(')
+                {
+                    // values and in lists take bind markers, function arguments and column lists are left alone
+                    boolean afterWord = Character.isLetterOrDigit(previous) || previous == '_' || previous == '"';
+                    brackets.add(!afterWord || "VALUES".equals(previousWord) || "IN".equals(previousWord));
+                }
+                else if (c == '[' || c == '{') brackets.add(false);
+                else if (c == ')' || c == ']' || c == '}')
+                {
+                    if (brackets.isEmpty()) return null;
+                    brackets.remove(brackets.size() - 1);
+                }
+                template.append(c);
+                previous = c;
+                previousWord = null;
+                i++;
+                continue;
+            }
+
+            if (literal != null && bindable)
+            {
+                template.append('?');
+                literals.add(literal);
+            }
+            else template.append(cql, start, i);
+            if (literal != null) previousWord = null;
+            previous = cql.charAt(i - 1);
+        }
+        return literals.isEmpty() ? null : new CqlTemplate(template.toString(), literals);
+    }
+
+    /**
+     * @return true for the SELECT, INSERT, UPDATE and DELETE statements, the only ones that leave the
+     *         keyspace and the schema as they are
+     */
+    static boolean isDml(String cql)
+    {
+        return DML.matcher(cql).matches();
+    }
+
+    private static boolean isDigit(char c)
+    {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isWordPart(String cql, int index)
+    {
+        if (index >= cql.length()) return false;
+        char c = cql.charAt(index);
+        return Character.isLetterOrDigit(c) || c == '_';
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.cassandra.cql.jdbc;
+
+import org.apache.cassandra.thrift.ConsistencyLevel;
+import org.apache.cassandra.thrift.TimedOutException;
+import org.apache.cassandra.thrift.UnavailableException;
+
+/**
+ * The policy used when none is configured.
+ * <p>
+ * A timed out read is retried once at the same consistency level. A timed out write is retried once
+ * only if the statement was flagged as idempotent. Unavailable errors are always reported, since the
+ * same coordinator will see the same dead replicas.
+ */
+public class DefaultRetryPolicy implements RetryPolicy
+{
+    public static final DefaultRetryPolicy INSTANCE = new DefaultRetryPolicy();
+
+    public RetryDecision onReadTimeout(CassandraStatementExtras statement, ConsistencyLevel consistencyLevel, TimedOutException exception, int nbRetry)
+    {
+        return (nbRetry == 0) ? RetryDecision.retry(consistencyLevel) : RetryDecision.rethrow();
+    }
+
+    public RetryDecision onWriteTimeout(CassandraStatementExtras statement, ConsistencyLevel consistencyLevel, TimedOutException exception, int nbRetry)
+    {
+        if (nbRetry != 0 || !statement.isIdempotent()) return RetryDecision.rethrow();
+        return RetryDecision.retry(consistencyLevel);
+    }
+
+    public RetryDecision onUnavailable(CassandraStatementExtras statement, ConsistencyLevel consistencyLevel, UnavailableException exception, int nbRetry)
+    {
+        return RetryDecision.rethrow();
+    }
+}
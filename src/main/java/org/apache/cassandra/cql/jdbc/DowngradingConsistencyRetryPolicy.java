@@ -0,0 +1,85 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.cassandra.cql.jdbc;
+
+import org.apache.cassandra.thrift.ConsistencyLevel;
+import org.apache.cassandra.thrift.TimedOutException;
+import org.apache.cassandra.thrift.UnavailableException;
+
+/**
+ * A policy that trades consistency for availability.
+ * <p>
+ * A timed out read is retried once at the level the replicas that answered could satisfy. A timed
+ * out idempotent write is retried the same way, while a non idempotent write that reached at least
+ * one replica is ignored: it has been persisted and hinted handoff will propagate it. An unavailable
+ * error is retried once at ONE.
+ * <p>
+ * Only use this policy if reading stale data or losing the guarantee of a stronger write level is
+ * acceptable to the application.
+ */
+public class DowngradingConsistencyRetryPolicy implements RetryPolicy
+{
+    public static final DowngradingConsistencyRetryPolicy INSTANCE = new DowngradingConsistencyRetryPolicy();
+
+    // the strongest level that the given number of acknowledging replicas can satisfy
+    private static ConsistencyLevel maxLikelyToWork(int acknowledged)
+    {
+        if (acknowledged >= 3) return ConsistencyLevel.THREE;
+        if (acknowledged == 2) return ConsistencyLevel.TWO;
+        if (acknowledged == 1) return ConsistencyLevel.ONE;
+        return null;
+    }
+
+    private static boolean isWeakest(ConsistencyLevel consistencyLevel)
+    {
+        return consistencyLevel == ConsistencyLevel.ONE || consistencyLevel == ConsistencyLevel.ANY;
+    }
+
+    public RetryDecision onReadTimeout(CassandraStatementExtras statement, ConsistencyLevel consistencyLevel, TimedOutException exception, int nbRetry)
+    {
+        if (nbRetry != 0) return RetryDecision.rethrow();
+
+        ConsistencyLevel downgraded = maxLikelyToWork(exception.getAcknowledged_by());
+        return RetryDecision.retry(downgraded == null ? consistencyLevel : downgraded);
+    }
+
+    public RetryDecision onWriteTimeout(CassandraStatementExtras statement, ConsistencyLevel consistencyLevel, TimedOutException exception, int nbRetry)
+    {
+        if (nbRetry != 0) return RetryDecision.rethrow();
+
+        int acknowledged = exception.getAcknowledged_by();
+        if (!statement.isIdempotent())
+        {
+            // the write reached a replica (or the batchlog) so it will eventually be applied everywhere
+            return (acknowledged > 0 || exception.isAcknowledged_by_batchlog()) ? RetryDecision.ignore() : RetryDecision.rethrow();
+        }
+
+        ConsistencyLevel downgraded = maxLikelyToWork(acknowledged);
+        return RetryDecision.retry(downgraded == null ? consistencyLevel : downgraded);
+    }
+
+    public RetryDecision onUnavailable(CassandraStatementExtras statement, ConsistencyLevel consistencyLevel, UnavailableException exception, int nbRetry)
+    {
+        // the Thrift exception does not tell how many replicas are alive so the best we can do is ONE
+        if (nbRetry != 0 || isWeakest(consistencyLevel)) return RetryDecision.rethrow();
+        return RetryDecision.retry(ConsistencyLevel.ONE);
+    }
+}
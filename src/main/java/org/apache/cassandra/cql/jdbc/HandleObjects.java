@@ -22,10 +22,6 @@ package org.apache.cassandra.cql.jdbc;
 
 import static org.apache.cassandra.cql.jdbc.JdbcDate.iso8601Patterns;
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.io.ObjectOutput;
-import java.io.ObjectOutputStream;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.net.Inet4Address;
@@ -124,28 +120,6 @@ public class HandleObjects
         return new SQLNonTransientException(String.format(BAD_MAPPING, badclass, javatype, jdbctype));
     }
 
-    private static final ByteBuffer javaObject(Object object) throws SQLException
-    {
-        byte[] bytes = null;
-        try
-        {
-            // Serialize to a byte array
-            ByteArrayOutputStream bos = new ByteArrayOutputStream();
-            ObjectOutput out = new ObjectOutputStream(bos);
-            out.writeObject(object);
-            out.close();
-
-            // Get the bytes of the serialized object
-            bytes = bos.toByteArray();
-        }
-        catch (IOException e)
-        {
-            throw new SQLNonTransientException("Problem serializing the Java object", e);
-        }
-
-        return ByteBuffer.wrap(bytes);
-    }
-
     private static final Integer objectToINTEGER(Class<? extends Object> objectClass, Object object)
     {
         // Strings should always work
@@ -264,19 +238,19 @@ public class HandleObjects
         return getCollectionElementType(((Map) maybeMap).values());
     }
    
-    private  static final <X> ByteBuffer makeByteBuffer4List(AbstractJdbcType<?> instanceType, List<X> value)
+    private  static final <X> ByteBuffer makeByteBuffer4List(AbstractJdbcType<?> instanceType, List<X> value) throws SQLException
     {
-        return ListMaker.getInstance(instanceType).decompose(value.getClass().cast(value));
+        return CollectionEncoder.encode(instanceType, value);
     }
     
-    private  static final <X> ByteBuffer makeByteBuffer4Set(AbstractJdbcType<?> instanceType, Set<X> value)
+    private  static final <X> ByteBuffer makeByteBuffer4Set(AbstractJdbcType<?> instanceType, Set<X> value) throws SQLException
     {
-        return SetMaker.getInstance(instanceType).decompose(value.getClass().cast(value));
+        return CollectionEncoder.encode(instanceType, value);
     }
     
-    private  static final <K,V> ByteBuffer makeByteBuffer4Map(AbstractJdbcType<?> keyInstanceType, AbstractJdbcType<?> valueInstanceType, Map<K,V> value)
+    private  static final <K,V> ByteBuffer makeByteBuffer4Map(AbstractJdbcType<?> keyInstanceType, AbstractJdbcType<?> valueInstanceType, Map<K,V> value) throws SQLException
     {
-        return MapMaker.getInstance(keyInstanceType,valueInstanceType).decompose(value.getClass().cast(value));
+        return CollectionEncoder.encode(keyInstanceType, valueInstanceType, value);
     }
     
     private static final <X> ByteBuffer handleAsList(Class<? extends Object> objectClass, Object object) throws SQLException
@@ -321,6 +295,14 @@ public class HandleObjects
     }
 
     public static final ByteBuffer makeBytes(Object object, int baseType, int scaleOrLength) throws SQLException
+    {
+        return makeBytes(object, baseType, scaleOrLength, JavaObjectSerializer.INSTANCE);
+    }
+
+    /**
+     * @param serializer serializes the objects bound as JAVA_OBJECT
+     */
+    static final ByteBuffer makeBytes(Object object, int baseType, int scaleOrLength, ObjectSerializer serializer) throws SQLException
     {
         Class<? extends Object> objectClass = object.getClass();
         boolean isCollection = (Collection.class.isAssignableFrom(objectClass));
@@ -499,7 +481,7 @@ public class HandleObjects
                 return JdbcUTF8.instance.decompose(urlAsString);                 
 
             case Types.JAVA_OBJECT:
-                return javaObject(object);
+                return serializer.serialize(object);
                 
             case Types.OTHER:
                 if ( List.class.isAssignableFrom(objectClass))
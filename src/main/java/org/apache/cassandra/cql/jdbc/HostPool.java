@@ -0,0 +1,909 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.cassandra.cql.jdbc;
+
+import static org.apache.cassandra.cql.jdbc.Utils.POOL_CLOSED;
+import static org.apache.cassandra.cql.jdbc.Utils.POOL_EXHAUSTED;
+import static org.apache.cassandra.cql.jdbc.Utils.POOL_INTERRUPTED;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.cassandra.thrift.InvalidRequestException;
+import org.apache.thrift.TException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+/**
+ * The connections of a PooledCassandraDataSource to one host.
+ * <p>
+ * Each host pool is sized on its own and counts the logical connections handed out, which the data
+ * source uses to pick the least loaded host. A pool that is drained takes no more borrowers and
+ * closes each of its connections once it is idle.
+ * <p>
+ * Borrowers in the LOW lane need a permit of the lane on top of a permit of the pool, and the lane
+ * has reserved fewer permits than maxTotal, so that the reserved connections are always left to
+ * the HIGH lane however long the low priority borrowers wait.
+ */
+class HostPool
+{
+	private static final int CONNECTION_IS_VALID_TIMEOUT = 5;
+
+	// connections live between 90% and 100% of maxLifetime so that they are not all replaced at once
+	private static final double MAX_LIFETIME_JITTER = 0.1;
+
+	private static final Random random = new Random();
+
+	private static final Logger logger = LoggerFactory.getLogger(HostPool.class);
+
+	final String host;
+
+	private final PooledCassandraDataSource owner;
+
+	private final CassandraDataSource dataSource;
+
+	private final ConnectionBag connections = new ConnectionBag();
+
+	// one permit per connection that may be in use, handed out first come first served
+	private final Permits permits;
+
+	// one permit per connection the LOW lane may have in use, maxTotal minus the reserved connections
+	private final Permits lowPermits;
+
+	// the open connections plus the ones being opened
+	private final AtomicInteger total = new AtomicInteger();
+
+	// the connections borrowed and not returned yet
+	private final AtomicInteger inFlight = new AtomicInteger();
+
+	private volatile int minIdle;
+
+	private volatile int maxTotal;
+
+	private volatile int reserved;
+
+	private volatile boolean closed = false;
+
+	private final AdaptiveSizer sizer = new AdaptiveSizer();
+
+	// the asynchronous borrowers, served when a permit is free and no blocking borrower is queued for it
+	private final Queue<AsyncBorrow> waiters = new ConcurrentLinkedQueue<AsyncBorrow>();
+
+	// the asynchronous borrowers of the LOW lane, only served when no HIGH one waits
+	private final Queue<AsyncBorrow> lowWaiters = new ConcurrentLinkedQueue<AsyncBorrow>();
+
+	// set while the statements prepared through the data source are prepared on the idle connections
+	private final AtomicBoolean propagating = new AtomicBoolean();
+
+	// when the sizer was last sampled, only used by the maintenance thread
+	private long lastSample = System.nanoTime();
+
+	HostPool(String host, CassandraDataSource dataSource, PooledCassandraDataSource owner, int minIdle, int maxTotal, int reserved)
+	{
+		this.host = host;
+		this.dataSource = dataSource;
+		this.owner = owner;
+		this.minIdle = minIdle;
+		this.maxTotal = maxTotal;
+		this.reserved = reserved;
+		this.permits = new Permits(maxTotal);
+		this.lowPermits = new Permits(lowLimit(maxTotal, reserved));
+	}
+
+	int getMinIdle()
+	{
+		return minIdle;
+	}
+
+	int getMaxTotal()
+	{
+		return maxTotal;
+	}
+
+	void resize(int minIdle, int maxTotal)
+	{
+		if (minIdle < 0 || maxTotal < 1 || minIdle > maxTotal)
+		{
+			throw new IllegalArgumentException(String.format("invalid pool size for %s: minIdle = %d, maxTotal = %d", host, minIdle, maxTotal));
+		}
+		synchronized (this)
+		{
+			permits.adjust(maxTotal - this.maxTotal);
+			lowPermits.adjust(lowLimit(maxTotal, reserved) - lowLimit(this.maxTotal, reserved));
+			this.minIdle = minIdle;
+			this.maxTotal = maxTotal;
+		}
+		// outside of the lock, serving a borrower may need the lock of the data source
+		dispatch();
+	}
+
+	int getReserved()
+	{
+		return reserved;
+	}
+
+	/**
+	 * Sets the number of connections the LOW lane may not use.
+	 */
+	void setReserved(int reserved)
+	{
+		if (reserved < 0)
+		{
+			throw new IllegalArgumentException("the reserved connections cannot be negative: " + reserved);
+		}
+		synchronized (this)
+		{
+			lowPermits.adjust(lowLimit(maxTotal, reserved) - lowLimit(maxTotal, this.reserved));
+			this.reserved = reserved;
+		}
+		dispatch();
+	}
+
+	private static int lowLimit(int maxTotal, int reserved)
+	{
+		return Math.max(0, maxTotal - reserved);
+	}
+
+	int getInFlight()
+	{
+		return inFlight.get();
+	}
+
+	int size()
+	{
+		return total.get();
+	}
+
+	boolean isClosed()
+	{
+		return closed;
+	}
+
+	/**
+	 * @return the size the adaptive sizing aims at, within minIdle and maxTotal
+	 */
+	int getTargetSize()
+	{
+		return Math.max(minIdle, Math.min(maxTotal, sizer.getTarget()));
+	}
+
+	Connection borrow(long timeout, Priority priority) throws SQLException
+	{
+		long start = System.nanoTime();
+		boolean low = priority == Priority.LOW;
+		try
+		{
+			// the lane first, so that a low priority borrower never holds a permit the HIGH lane waits for
+			if (low && !lowPermits.tryAcquire(timeout, TimeUnit.MILLISECONDS))
+			{
+				throw new SQLTransientConnectionException(String.format(POOL_EXHAUSTED, host, timeout, maxTotal));
+			}
+			long remaining = Math.max(0, timeout - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+			if (!permits.tryAcquire(remaining, TimeUnit.MILLISECONDS))
+			{
+				if (low)
+				{
+					releaseLowPermit();
+				}
+				throw new SQLTransientConnectionException(String.format(POOL_EXHAUSTED, host, timeout, maxTotal));
+			}
+		}
+		catch (InterruptedException e)
+		{
+			if (low)
+			{
+				releaseLowPermit();
+			}
+			Thread.currentThread().interrupt();
+			throw new SQLTransientConnectionException(POOL_INTERRUPTED, e);
+		}
+		// the pool may have been closed while the borrower waited for its permits
+		if (closed)
+		{
+			releasePermits(low);
+			throw new SQLTransientConnectionException(String.format(POOL_CLOSED, host));
+		}
+
+		try
+		{
+			PooledCassandraConnection pooledConnection = take();
+			pooledConnection.lowPriority.set(low);
+			pooledConnection.borrowedAt = System.nanoTime();
+			sizer.borrowed(pooledConnection.borrowedAt - start, inFlight.incrementAndGet());
+			return new ManagedConnection(pooledConnection);
+		}
+		catch (SQLException e)
+		{
+			releasePermits(low);
+			throw e;
+		}
+		catch (RuntimeException e)
+		{
+			releasePermits(low);
+			throw e;
+		}
+	}
+
+	/**
+	 * Borrows a connection without blocking the caller: the future completes once a connection is
+	 * free, or fails when none became available within the timeout.
+	 */
+	ListenableFuture<Connection> borrowAsync(final long timeout, Priority priority)
+	{
+		final AsyncBorrow waiter = new AsyncBorrow(priority == Priority.LOW);
+		final Queue<AsyncBorrow> queue = waiter.low ? lowWaiters : waiters;
+		queue.add(waiter);
+		dispatch();
+		if (!waiter.future.isDone())
+		{
+			owner.schedule(new Runnable()
+			{
+				public void run()
+				{
+					if (waiter.future.setException(new SQLTransientConnectionException(String.format(POOL_EXHAUSTED, host, timeout, maxTotal))))
+					{
+						queue.remove(waiter);
+					}
+				}
+			}, timeout);
+		}
+		return waiter.future;
+	}
+
+	// hands the free permits to the asynchronous borrowers, blocking borrowers first in line keep priority
+	private void dispatch()
+	{
+		while (true)
+		{
+			boolean low = waiters.isEmpty();
+			if (low && lowWaiters.isEmpty())
+			{
+				return;
+			}
+			if (closed)
+			{
+				failWaiters();
+				return;
+			}
+			try
+			{
+				// unlike tryAcquire(), a zero timeout honours the fairness of the semaphore
+				if (low && !lowPermits.tryAcquire(0, TimeUnit.MILLISECONDS))
+				{
+					return;
+				}
+				if (!permits.tryAcquire(0, TimeUnit.MILLISECONDS))
+				{
+					if (low)
+					{
+						lowPermits.release();
+					}
+					return;
+				}
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				return;
+			}
+
+			final AsyncBorrow waiter = (low ? lowWaiters : waiters).poll();
+			if (waiter == null || waiter.future.isDone())
+			{
+				permits.release();
+				if (low)
+				{
+					lowPermits.release();
+				}
+				continue;
+			}
+
+			PooledCassandraConnection pooledConnection = connections.borrow();
+			if (pooledConnection != null)
+			{
+				complete(waiter, pooledConnection);
+				continue;
+			}
+
+			// opening a connection blocks, so it is left to another thread
+			boolean submitted = owner.executeAsync(new Runnable()
+			{
+				public void run()
+				{
+					try
+					{
+						complete(waiter, take());
+					}
+					catch (SQLException e)
+					{
+						waiter.future.setException(e);
+						releasePermits(waiter.low);
+					}
+					catch (RuntimeException e)
+					{
+						waiter.future.setException(e);
+						releasePermits(waiter.low);
+					}
+				}
+			});
+			if (!submitted)
+			{
+				waiter.future.setException(new SQLTransientConnectionException(String.format(POOL_CLOSED, host)));
+				permits.release();
+				if (low)
+				{
+					lowPermits.release();
+				}
+			}
+		}
+	}
+
+	// hands a connection to an asynchronous borrower, or returns it if the borrower gave up meanwhile
+	private void complete(AsyncBorrow waiter, PooledCassandraConnection pooledConnection)
+	{
+		pooledConnection.lowPriority.set(waiter.low);
+		pooledConnection.borrowedAt = System.nanoTime();
+		sizer.borrowed(pooledConnection.borrowedAt - waiter.start, inFlight.incrementAndGet());
+		ManagedConnection connection = new ManagedConnection(pooledConnection);
+		if (!waiter.future.set(connection))
+		{
+			try
+			{
+				connection.close();
+			}
+			catch (SQLException e)
+			{
+				logger.error(e.getMessage());
+			}
+		}
+	}
+
+	private void failWaiters()
+	{
+		AsyncBorrow waiter;
+		while ((waiter = waiters.poll()) != null || (waiter = lowWaiters.poll()) != null)
+		{
+			waiter.future.setException(new SQLTransientConnectionException(String.format(POOL_CLOSED, host)));
+		}
+	}
+
+	private void releasePermit()
+	{
+		permits.release();
+		dispatch();
+	}
+
+	private void releaseLowPermit()
+	{
+		lowPermits.release();
+		dispatch();
+	}
+
+	private void releasePermits(boolean low)
+	{
+		if (low)
+		{
+			lowPermits.release();
+		}
+		releasePermit();
+	}
+
+	// gives back the lane permit of a connection borrowed in the LOW lane, once whoever gets there first
+	private void releaseLane(PooledCassandraConnection connection)
+	{
+		if (connection.lowPriority.compareAndSet(true, false))
+		{
+			releaseLowPermit();
+		}
+	}
+
+	// borrows an idle connection or opens a new one, the caller holding a permit
+	private PooledCassandraConnection take() throws SQLException
+	{
+		while (true)
+		{
+			PooledCassandraConnection pooledConnection = connections.borrow();
+			if (pooledConnection != null)
+			{
+				return pooledConnection;
+			}
+			if (reserve())
+			{
+				if (closed)
+				{
+					total.decrementAndGet();
+					throw new SQLTransientConnectionException(String.format(POOL_CLOSED, host));
+				}
+				return open();
+			}
+			// the pool is full, so the permit guarantees a connection is being returned
+			Thread.yield();
+		}
+	}
+
+	private boolean reserve()
+	{
+		while (true)
+		{
+			int current = total.get();
+			if (current >= maxTotal)
+			{
+				return false;
+			}
+			if (total.compareAndSet(current, current + 1))
+			{
+				return true;
+			}
+		}
+	}
+
+	// opens a connection in use by the caller, which has reserved room for it
+	private PooledCassandraConnection open() throws SQLException
+	{
+		PooledCassandraConnection pooledConnection;
+		try
+		{
+			pooledConnection = dataSource.getPooledConnection();
+		}
+		catch (SQLException e)
+		{
+			total.decrementAndGet();
+			throw e;
+		}
+		catch (RuntimeException e)
+		{
+			total.decrementAndGet();
+			throw e;
+		}
+		long lifetime = owner.getMaxLifetime();
+		if (lifetime > 0)
+		{
+			pooledConnection.expiresAt = System.currentTimeMillis() + lifetime - (long) (random.nextDouble() * lifetime * MAX_LIFETIME_JITTER);
+		}
+		pooledConnection.pool = this;
+		pooledConnection.addConnectionEventListener(owner);
+		connections.add(pooledConnection);
+		return pooledConnection;
+	}
+
+	/**
+	 * Opens one connection and prepares the warm up statements on it, unless the pool is already full.
+	 *
+	 * @return true if a connection was opened
+	 */
+	boolean warmUpConnection() throws SQLException
+	{
+		if (closed || !permits.tryAcquire())
+		{
+			return false;
+		}
+		if (!reserve())
+		{
+			releasePermit();
+			return false;
+		}
+
+		PooledCassandraConnection pooledConnection;
+		try
+		{
+			pooledConnection = open();
+		}
+		catch (SQLException e)
+		{
+			releasePermit();
+			throw e;
+		}
+		catch (RuntimeException e)
+		{
+			releasePermit();
+			throw e;
+		}
+
+		// the statements stay prepared in the cache of the connection, which closing returns to the pool
+		inFlight.incrementAndGet();
+		Connection connection = new ManagedConnection(pooledConnection);
+		try
+		{
+			for (String cql : owner.getWarmUpStatements())
+			{
+				connection.prepareStatement(cql).close();
+			}
+			prepare(pooledConnection, owner.getPreparedStatements());
+		}
+		finally
+		{
+			connection.close();
+		}
+		return true;
+	}
+
+	/**
+	 * Closes idle connections that expired, that were idle too long while the pool holds more than
+	 * minIdle, or that are no longer valid, then opens connections until the pool holds minIdle again.
+	 */
+	void maintain()
+	{
+		long now = System.currentTimeMillis();
+		long idleTimeout = owner.getIdleTimeout();
+		long validationInterval = owner.getValidationInterval();
+
+		// the number of connections to keep open, which the adaptive sizing derives from the traffic
+		int keep = minIdle;
+		int evictable = connections.idleCount() - minIdle;
+		if (owner.isAdaptiveSizing())
+		{
+			long sampled = System.nanoTime();
+			keep = sizer.sample(sampled - lastSample, inFlight.get(), minIdle, maxTotal);
+			lastSample = sampled;
+			evictable = Math.min(connections.idleCount(), total.get() - keep);
+		}
+		for (PooledCassandraConnection connection : connections.values())
+		{
+			// a reserved connection holds a permit so that borrowers queue for it instead of spinning,
+			// and a pool without a free permit is busy enough not to need any maintenance
+			if (closed || !permits.tryAcquire())
+			{
+				break;
+			}
+			try
+			{
+				// connections in use are replaced when they are returned
+				if (!connections.reserve(connection))
+				{
+					continue;
+				}
+
+				if (now >= connection.expiresAt)
+				{
+					closePooledConnection(connection);
+				}
+				else if (evictable > 0 && now - connection.lastReturned >= idleTimeout)
+				{
+					evictable--;
+					closePooledConnection(connection);
+				}
+				else if (validationInterval > 0 && now - Math.max(connection.lastReturned, connection.lastValidated) >= validationInterval
+						&& !isValid(connection))
+				{
+					closePooledConnection(connection);
+				}
+				else if (closed)
+				{
+					closePooledConnection(connection);
+				}
+				else
+				{
+					connections.unreserve(connection);
+				}
+			}
+			finally
+			{
+				releasePermit();
+			}
+		}
+
+		while (!closed && total.get() < keep)
+		{
+			try
+			{
+				if (!warmUpConnection())
+				{
+					break;
+				}
+			}
+			catch (SQLException e)
+			{
+				logger.warn("Could not replace a pooled connection to " + host, e);
+				break;
+			}
+		}
+
+		propagate();
+	}
+
+	void statementPrepared(String cql)
+	{
+		owner.statementPrepared(cql);
+	}
+
+	/**
+	 * Prepares the statements prepared through the data source on the idle connections that have not
+	 * prepared them yet, so that their first execution on any connection costs no extra round trip.
+	 */
+	void propagate()
+	{
+		if (!propagating.compareAndSet(false, true))
+		{
+			return;
+		}
+		try
+		{
+			List<String> statements = owner.getPreparedStatements();
+			for (PooledCassandraConnection connection : connections.values())
+			{
+				if (connection.propagated >= statements.size())
+				{
+					continue;
+				}
+				// like the maintenance, a reserved connection holds a permit
+				if (closed || !permits.tryAcquire())
+				{
+					break;
+				}
+				try
+				{
+					if (!connections.reserve(connection))
+					{
+						continue;
+					}
+					prepare(connection, statements);
+					if (closed)
+					{
+						closePooledConnection(connection);
+					}
+					else
+					{
+						connections.unreserve(connection);
+					}
+				}
+				finally
+				{
+					releasePermit();
+				}
+			}
+		}
+		finally
+		{
+			propagating.set(false);
+		}
+	}
+
+	// prepares the statements the connection has not prepared yet, the caller holding the connection
+	private void prepare(PooledCassandraConnection connection, List<String> statements)
+	{
+		int count = statements.size();
+		for (int i = connection.propagated; i < count; i++)
+		{
+			try
+			{
+				connection.getConnection().prepareCached(statements.get(i));
+			}
+			catch (InvalidRequestException e)
+			{
+				// e.g. the statement was prepared in another keyspace, the connection will prepare it when used
+				logger.debug("Could not prepare '{}' on a pooled connection to {}: {}", new Object[]{statements.get(i), host, e.getWhy()});
+			}
+			catch (TException e)
+			{
+				logger.debug("Could not prepare statements on a pooled connection to " + host, e);
+				return;
+			}
+			catch (SQLException e)
+			{
+				logger.debug("Could not prepare statements on a pooled connection to " + host, e);
+				return;
+			}
+		}
+		connection.propagated = count;
+	}
+
+	private boolean isValid(PooledCassandraConnection connection)
+	{
+		connection.lastValidated = System.currentTimeMillis();
+		try
+		{
+			return connection.getConnection().isValid(CONNECTION_IS_VALID_TIMEOUT);
+		}
+		catch (SQLException e)
+		{
+			logger.error(e.getMessage());
+			return false;
+		}
+	}
+
+	void connectionClosed(PooledCassandraConnection connection)
+	{
+		long borrowedAt = connection.borrowedAt;
+		if (borrowedAt != 0)
+		{
+			connection.borrowedAt = 0;
+			sizer.returned(System.nanoTime() - borrowedAt);
+		}
+		releaseLane(connection);
+		connection.lastReturned = System.currentTimeMillis();
+		if (closed || connection.lastReturned >= connection.expiresAt)
+		{
+			closePooledConnection(connection);
+		}
+		else if (connection.suspect)
+		{
+			quarantine(connection);
+		}
+		// the permit went with the connection if it was removed while in use
+		else if (connections.requite(connection))
+		{
+			inFlight.decrementAndGet();
+			releasePermit();
+			if (connection.propagated < owner.getPreparedStatements().size())
+			{
+				owner.propagate(this);
+			}
+		}
+	}
+
+	void connectionErrorOccurred(PooledCassandraConnection connection)
+	{
+		try
+		{
+			// an aborted connection is never returned, so it must leave the pool now
+			if (connection.getConnection().isClosed())
+			{
+				closePooledConnection(connection);
+				return;
+			}
+		}
+		catch (SQLException e)
+		{
+			logger.error(e.getMessage());
+		}
+		// the caller may still use the connection, it is validated once its logical connection is closed
+		connection.suspect = true;
+	}
+
+	// validates a returned connection in the background, keeping its permit until it is settled
+	private void quarantine(final PooledCassandraConnection connection)
+	{
+		if (!connections.quarantine(connection))
+		{
+			return;
+		}
+		inFlight.decrementAndGet();
+		Runnable validation = new Runnable()
+		{
+			public void run()
+			{
+				if (!closed && isValid(connection))
+				{
+					connection.suspect = false;
+					if (connections.restore(connection))
+					{
+						releasePermit();
+					}
+				}
+				else
+				{
+					closePooledConnection(connection);
+				}
+			}
+		};
+		if (!owner.execute(validation))
+		{
+			// the data source was closed
+			closePooledConnection(connection);
+		}
+	}
+
+	/**
+	 * Closes the idle connections and the connections in use as they are returned.
+	 */
+	void close()
+	{
+		closed = true;
+		failWaiters();
+		for (PooledCassandraConnection connection : connections.values())
+		{
+			if (connections.reserve(connection))
+			{
+				closePooledConnection(connection);
+			}
+		}
+	}
+
+	/**
+	 * Closes every connection, even the ones in use.
+	 */
+	void closeAll()
+	{
+		closed = true;
+		failWaiters();
+		for (PooledCassandraConnection connection : connections.values())
+		{
+			closePooledConnection(connection);
+		}
+	}
+
+	private void closePooledConnection(PooledCassandraConnection connection)
+	{
+		int previous = connections.remove(connection);
+		if (previous == ConnectionBag.STATE_REMOVED)
+		{
+			return;
+		}
+		try
+		{
+			connection.close();
+		}
+		catch (SQLException e)
+		{
+			logger.error(e.getMessage());
+		}
+
+		// only make room once the connection is gone, so that no more than maxTotal are ever open
+		total.decrementAndGet();
+		if (previous == ConnectionBag.STATE_IN_USE)
+		{
+			inFlight.decrementAndGet();
+			releaseLane(connection);
+		}
+		if (previous == ConnectionBag.STATE_IN_USE || previous == ConnectionBag.STATE_QUARANTINED)
+		{
+			releasePermit();
+		}
+	}
+
+	private static class AsyncBorrow
+	{
+		final long start = System.nanoTime();
+
+		final SettableFuture<Connection> future = SettableFuture.create();
+
+		final boolean low;
+
+		AsyncBorrow(boolean low)
+		{
+			this.low = low;
+		}
+	}
+
+	// a fair semaphore that can shrink when maxTotal is lowered
+	@SuppressWarnings("serial")
+	private static class Permits extends Semaphore
+	{
+		Permits(int permits)
+		{
+			super(permits, true);
+		}
+
+		void adjust(int delta)
+		{
+			if (delta > 0)
+			{
+				release(delta);
+			}
+			else if (delta < 0)
+			{
+				reducePermits(-delta);
+			}
+		}
+	}
+}
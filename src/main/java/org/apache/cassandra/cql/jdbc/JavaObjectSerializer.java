@@ -0,0 +1,170 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.cassandra.cql.jdbc;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutput;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.sql.SQLException;
+import java.sql.SQLNonTransientException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.UUID;
+
+import org.apache.cassandra.utils.ByteBufferUtil;
+
+/**
+ * Serializes objects with Java serialization, as the driver always did.
+ * <p>
+ * Reading only resolves the classes of the object asked for: the outermost object must be of the
+ * requested type, and the objects nested in it of one of its own classes or of the common JDK value
+ * and collection types. An application that stores graphs of several classes of its own can plug in
+ * a serializer of its own instead.
+ */
+class JavaObjectSerializer implements ObjectSerializer
+{
+    static final JavaObjectSerializer INSTANCE = new JavaObjectSerializer();
+
+    public ByteBuffer serialize(Object object) throws SQLException
+    {
+        byte[] bytes = null;
+        try
+        {
+            // Serialize to a byte array
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            ObjectOutput out = new ObjectOutputStream(bos);
+            out.writeObject(object);
+            out.close();
+
+            // Get the bytes of the serialized object
+            bytes = bos.toByteArray();
+        }
+        catch (IOException e)
+        {
+            throw new SQLNonTransientException("Problem serializing the Java object", e);
+        }
+
+        return ByteBuffer.wrap(bytes);
+    }
+
+    public Object deserialize(ByteBuffer bytes, Class<?> type) throws SQLException
+    {
+        return read(bytes, type);
+    }
+
+    /**
+     * @param type the type of the outermost object, or null if it must be one of the common JDK types
+     */
+    static Object read(ByteBuffer bytes, Class<?> type) throws SQLException
+    {
+        try
+        {
+            ObjectInputStream in = new RestrictedInput(ByteBufferUtil.inputStream(bytes), type);
+            try
+            {
+                return in.readObject();
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+        catch (IOException e)
+        {
+            throw new SQLNonTransientException("Problem deserializing the Java object", e);
+        }
+        catch (ClassNotFoundException e)
+        {
+            throw new SQLNonTransientException("Problem deserializing the Java object", e);
+        }
+    }
+
+    // the classes the objects nested in any other may be of
+    private static final Set<Class<?>> VALUE_CLASSES = new HashSet<Class<?>>(Arrays.<Class<?>>asList(
+        Number.class, Byte.class, Short.class, Integer.class, Long.class, Float.class, Double.class, BigInteger.class, BigDecimal.class,
+        Boolean.class, Character.class, String.class, Enum.class, UUID.class,
+        java.util.Date.class, java.sql.Date.class, java.sql.Time.class, java.sql.Timestamp.class,
+        ArrayList.class, LinkedList.class, HashSet.class, LinkedHashSet.class, TreeSet.class, HashMap.class, LinkedHashMap.class, TreeMap.class));
+
+    /**
+     * Refuses to resolve the classes a caller did not ask for, before any of their code can run.
+     */
+    private static class RestrictedInput extends ObjectInputStream
+    {
+        private final Class<?> type;
+
+        // the class of the outermost object, resolved first
+        private Class<?> outermost;
+
+        RestrictedInput(InputStream in, Class<?> type) throws IOException
+        {
+            super(in);
+            this.type = type;
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass descriptor) throws IOException, ClassNotFoundException
+        {
+            Class<?> resolved = super.resolveClass(descriptor);
+            Class<?> component = resolved;
+            while (component.isArray()) component = component.getComponentType();
+
+            if (outermost == null)
+            {
+                outermost = resolved;
+                if (type == null ? isValue(component) : type.isAssignableFrom(resolved)) return resolved;
+            }
+            // the superclasses of the outermost object come next, then whatever its fields hold
+            else if (isValue(component) || resolved.isAssignableFrom(outermost) || component.isAssignableFrom(outermost))
+            {
+                return resolved;
+            }
+            throw new InvalidClassException(descriptor.getName(), "not of the type asked for: " + (type == null ? "a JDK value" : type.getName()));
+        }
+
+        @Override
+        protected Class<?> resolveProxyClass(String[] interfaces) throws IOException, ClassNotFoundException
+        {
+            throw new InvalidClassException("proxy classes are not deserialized");
+        }
+
+        private static boolean isValue(Class<?> c)
+        {
+            return c.isPrimitive() || c.isEnum() || VALUE_CLASSES.contains(c);
+        }
+    }
+}
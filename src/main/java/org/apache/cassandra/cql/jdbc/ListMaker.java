@@ -18,26 +18,30 @@
 package org.apache.cassandra.cql.jdbc;
 
 import java.nio.ByteBuffer;
+import java.sql.SQLException;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 public class ListMaker<T>
 {
-    // interning instances
-    private static final Map<AbstractJdbcType<?>, ListMaker> instances = new HashMap<AbstractJdbcType<?>, ListMaker>();
+    // interning instances, looked up without locking as every collection decoded needs one
+    private static final ConcurrentMap<AbstractJdbcType<?>, ListMaker> instances = new ConcurrentHashMap<AbstractJdbcType<?>, ListMaker>();
 
     public final AbstractJdbcType<T> elements;
 
 
-    public static synchronized <T> ListMaker<T> getInstance(AbstractJdbcType<T> elements)
+    // the instances are interned under the types they were made for
+    @SuppressWarnings("unchecked")
+    public static <T> ListMaker<T> getInstance(AbstractJdbcType<T> elements)
     {
         ListMaker<T> t = instances.get(elements);
         if (t == null)
         {
             t = new ListMaker<T>(elements);
-            instances.put(elements, t);
+            ListMaker<T> previous = instances.putIfAbsent(elements, t);
+            if (previous != null) t = previous;
         }
         return t;
     }
@@ -50,15 +54,11 @@ public class ListMaker<T>
     public List<T> compose(ByteBuffer bytes)
     {
         ByteBuffer input = bytes.duplicate();
-        int n = input.getShort();
+        int n = input.getShort() & 0xFFFF;
         List<T> l = new ArrayList<T>(n);
         for (int i = 0; i < n; i++)
         {
-            int s = input.getShort();
-            byte[] data = new byte[s];
-            input.get(data);
-            ByteBuffer databb = ByteBuffer.wrap(data);
-            l.add(elements.compose(databb));
+            l.add(elements.compose(CollectionViews.next(input)));
         }
         return l;
     }
@@ -72,14 +72,14 @@ public class ListMaker<T>
      */
     public ByteBuffer decompose(List<T> value)
     {
-        List<ByteBuffer> bbs = new ArrayList<ByteBuffer>(value.size());
-        int size = 0;
-        for (T elt : value)
+        try
         {
-            ByteBuffer bb = elements.decompose(elt);
-            bbs.add(bb);
-            size += 2 + bb.remaining();
+            return CollectionEncoder.encode(elements, value);
+        }
+        catch (SQLException e)
+        {
+            // an element of another class than the type's, which the generic signature cannot rule out
+            throw new IllegalArgumentException(e.getMessage(), e);
         }
-        return Utils.pack(bbs, value.size(), size);
     }
 }
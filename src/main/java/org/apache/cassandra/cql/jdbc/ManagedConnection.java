@@ -36,8 +36,9 @@ import java.sql.Statement;
 import java.util.HashSet;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.Executor;
 
-class ManagedConnection extends AbstractConnection implements Connection
+class ManagedConnection extends AbstractConnection implements CassandraConnectionExtras, Connection
 {
 	private PooledCassandraConnection pooledCassandraConnection;
 
@@ -80,16 +81,78 @@ class ManagedConnection extends AbstractConnection implements Connection
 		physicalConnection = null;
 	}
 
+	@Override
+	public void abort(Executor executor) throws SQLException
+	{
+		if (isClosed())
+		{
+			return;
+		}
+		PooledCassandraConnection pooled = pooledCassandraConnection;
+		CassandraConnection connection = physicalConnection;
+		pooledCassandraConnection = null;
+		physicalConnection = null;
+
+		// the physical connection is unusable once aborted so it must not return to the pool
+		connection.abort(executor);
+		pooled.connectionErrorOccurred(new SQLNonTransientConnectionException(WAS_CLOSED_CON));
+	}
+
+	@Override
+	public void setNetworkTimeout(Executor executor, int milliseconds) throws SQLException
+	{
+		checkNotClosed();
+		try
+		{
+			physicalConnection.setNetworkTimeout(executor, milliseconds);
+		}
+		catch (SQLException sqlException)
+		{
+			pooledCassandraConnection.connectionErrorOccurred(sqlException);
+			throw sqlException;
+		}
+	}
+
+	@Override
+	public int getNetworkTimeout() throws SQLException
+	{
+		checkNotClosed();
+		try
+		{
+			return physicalConnection.getNetworkTimeout();
+		}
+		catch (SQLException sqlException)
+		{
+			pooledCassandraConnection.connectionErrorOccurred(sqlException);
+			throw sqlException;
+		}
+	}
+
 	@Override
 	public <T> T unwrap(Class<T> iface) throws SQLException
 	{
+		if (iface.isInstance(this)) return iface.cast(this);
 		throw new SQLFeatureNotSupportedException(String.format(NO_INTERFACE, iface.getSimpleName()));
 	}
 
 	@Override
 	public boolean isWrapperFor(Class<?> iface) throws SQLException
 	{
-		return false;
+		return iface.isInstance(this);
+	}
+
+	@Override
+	public long getPreparedStatementCacheHits() throws SQLException
+	{
+		checkNotClosed();
+		return physicalConnection.getPreparedStatementCacheHits();
+	}
+
+	@Override
+	public long getPreparedStatementCacheMisses() throws SQLException
+	{
+		checkNotClosed();
+		return physicalConnection.getPreparedStatementCacheMisses();
 	}
 
 	@Override
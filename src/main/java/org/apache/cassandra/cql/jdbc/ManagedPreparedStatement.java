@@ -99,6 +99,21 @@ class ManagedPreparedStatement extends AbstractStatement implements PreparedStat
 		}
 	}
 
+	@Override
+	public void cancel() throws SQLException
+	{
+		checkNotClosed();
+		try
+		{
+			preparedStatement.cancel();
+		}
+		catch (SQLException sqlException)
+		{
+			pooledCassandraConnection.statementErrorOccurred(preparedStatement, sqlException);
+			throw sqlException;
+		}
+	}
+
 	@Override
 	public void clearBatch() throws SQLException
 	{
@@ -18,28 +18,31 @@
 package org.apache.cassandra.cql.jdbc;
 
 import java.nio.ByteBuffer;
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.sql.SQLException;
 import java.util.LinkedHashMap;
-import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 public class MapMaker<K, V>
 {
-    // interning instances
-    private static final Map<Pair<AbstractJdbcType<?>, AbstractJdbcType<?>>, MapMaker> instances = new HashMap<Pair<AbstractJdbcType<?>, AbstractJdbcType<?>>, MapMaker>();
+    // interning instances, looked up without locking as every collection decoded needs one
+    private static final ConcurrentMap<Pair<AbstractJdbcType<?>, AbstractJdbcType<?>>, MapMaker> instances = new ConcurrentHashMap<Pair<AbstractJdbcType<?>, AbstractJdbcType<?>>, MapMaker>();
 
     public final AbstractJdbcType<K> keys;
     public final AbstractJdbcType<V> values;
 
-    public static synchronized <K, V> MapMaker<K, V> getInstance(AbstractJdbcType<K> keys, AbstractJdbcType<V> values)
+    // the instances are interned under the types they were made for
+    @SuppressWarnings("unchecked")
+    public static <K, V> MapMaker<K, V> getInstance(AbstractJdbcType<K> keys, AbstractJdbcType<V> values)
     {
         Pair<AbstractJdbcType<?>, AbstractJdbcType<?>> p = Pair.<AbstractJdbcType<?>, AbstractJdbcType<?>>create(keys, values);
         MapMaker<K, V> t = instances.get(p);
         if (t == null)
         {
             t = new MapMaker<K, V>(keys, values);
-            instances.put(p, t);
+            MapMaker<K, V> previous = instances.putIfAbsent(p, t);
+            if (previous != null) t = previous;
         }
         return t;
     }
@@ -53,21 +56,12 @@ public class MapMaker<K, V>
     public Map<K, V> compose(ByteBuffer bytes)
     {
         ByteBuffer input = bytes.duplicate();
-        int n = input.getShort();
+        int n = input.getShort() & 0xFFFF;
         Map<K, V> m = new LinkedHashMap<K, V>(n);
         for (int i = 0; i < n; i++)
         {
-            int sk = input.getShort();
-            byte[] datak = new byte[sk];
-            input.get(datak);
-            ByteBuffer kbb = ByteBuffer.wrap(datak);
-
-            int sv = input.getShort();
-            byte[] datav = new byte[sv];
-            input.get(datav);
-            ByteBuffer vbb = ByteBuffer.wrap(datav);
-
-            m.put(keys.compose(kbb), values.compose(vbb));
+            K key = keys.compose(CollectionViews.next(input));
+            m.put(key, values.compose(CollectionViews.next(input)));
         }
         return m;
     }
@@ -83,17 +77,15 @@ public class MapMaker<K, V>
      */
     public ByteBuffer decompose(Map<K, V> value)
     {
-        List<ByteBuffer> bbs = new ArrayList<ByteBuffer>(2 * value.size());
-        int size = 0;
-        for (Map.Entry<K, V> entry : value.entrySet())
+        try
+        {
+            return CollectionEncoder.encode(keys, values, value);
+        }
+        catch (SQLException e)
         {
-            ByteBuffer bbk = keys.decompose(entry.getKey());
-            ByteBuffer bbv = values.decompose(entry.getValue());
-            bbs.add(bbk);
-            bbs.add(bbv);
-            size += 4 + bbk.remaining() + bbv.remaining();
+            // an element of another class than the type's, which the generic signature cannot rule out
+            throw new IllegalArgumentException(e.getMessage(), e);
         }
-        return Utils.pack(bbs, value.size(), size);
     }
 
 }
@@ -0,0 +1,44 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.cassandra.cql.jdbc;
+
+import java.nio.ByteBuffer;
+import java.sql.SQLException;
+
+/**
+ * Turns the objects bound as {@code Types.JAVA_OBJECT} into bytes, and the bytes of a blob back into
+ * the object when it is read with {@code ResultSet.getObject(int, Class)}.
+ * <p>
+ * A connection uses the serializer named by its {@code objectSerializer} property: {@code java} for
+ * Java serialization (the default), {@code compact} for a compact binary format of the common JDK
+ * types, or the name of a class implementing this interface with a public no-argument constructor.
+ */
+public interface ObjectSerializer
+{
+    public ByteBuffer serialize(Object object) throws SQLException;
+
+    /**
+     * @param bytes the serialized object, which the serializer may consume
+     * @param type the class the application asked for; a class named in the bytes that is not of this
+     *        type should not be instantiated
+     */
+    public Object deserialize(ByteBuffer bytes, Class<?> type) throws SQLException;
+}
@@ -0,0 +1,391 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.cassandra.cql.jdbc;
+
+import static org.apache.cassandra.cql.jdbc.JdbcDate.iso8601Patterns;
+import static org.apache.cassandra.cql.jdbc.Utils.BAD_BINDING;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.sql.SQLException;
+import java.sql.SQLRecoverableException;
+import java.sql.Types;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import org.apache.cassandra.cql.jdbc.TypedColumn.CollectionType;
+import org.apache.cassandra.thrift.CqlPreparedResult;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.commons.lang.time.DateUtils;
+
+/**
+ * Encodes the values bound to one parameter of a prepared statement as the type the server reported
+ * for it when the statement was prepared.
+ * <p>
+ * A value of the Java class of the type is encoded as is. Other values are converted when the
+ * conversion keeps their meaning, e.g. an Integer for a bigint or a String for a timestamp, and are
+ * rejected otherwise, before anything is sent to the server.
+ */
+class ParameterBinder
+{
+    // the CQL names of the types, by the simple name of their marshal class
+    private static final Map<String, String> CQL_NAMES = new HashMap<String, String>();
+
+    static
+    {
+        CQL_NAMES.put("AsciiType", "ascii");
+        CQL_NAMES.put("BooleanType", "boolean");
+        CQL_NAMES.put("BytesType", "blob");
+        CQL_NAMES.put("CounterColumnType", "counter");
+        CQL_NAMES.put("DateType", "timestamp");
+        CQL_NAMES.put("TimestampType", "timestamp");
+        CQL_NAMES.put("DecimalType", "decimal");
+        CQL_NAMES.put("DoubleType", "double");
+        CQL_NAMES.put("FloatType", "float");
+        CQL_NAMES.put("InetAddressType", "inet");
+        CQL_NAMES.put("Int32Type", "int");
+        CQL_NAMES.put("IntegerType", "varint");
+        CQL_NAMES.put("LexicalUUIDType", "uuid");
+        CQL_NAMES.put("LongType", "bigint");
+        CQL_NAMES.put("TimeUUIDType", "timeuuid");
+        CQL_NAMES.put("UTF8Type", "text");
+        CQL_NAMES.put("UUIDType", "uuid");
+    }
+
+    private final String name;
+
+    private final String typeName;
+
+    private final CollectionType collectionType;
+
+    // the type of the keys of a map
+    private final AbstractJdbcType<?> keyType;
+
+    // the type of the value, or of the elements of a collection, null if it is not known to the driver
+    private final AbstractJdbcType<?> type;
+
+    // the CQL names of the types of the keys and of the values, by which codecs are looked up
+    private final String keyTypeName, valueTypeName;
+
+    /**
+     * @return the binders of the parameters of a prepared statement, which are null when the server
+     *         did not report their types (CQL 2)
+     */
+    static ParameterBinder[] forResult(CqlPreparedResult result)
+    {
+        ParameterBinder[] binders = new ParameterBinder[result.count];
+        if (result.variable_types == null) return binders;
+        for (int i = 0; i < binders.length && i < result.variable_types.size(); i++)
+        {
+            String name = result.variable_names == null ? null : result.variable_names.get(i);
+            binders[i] = new ParameterBinder(name, result.variable_types.get(i));
+        }
+        return binders;
+    }
+
+    ParameterBinder(String name, String validator)
+    {
+        this.name = name;
+        if (validator.indexOf('(') > 0 && validator.substring(0, validator.indexOf('(')).endsWith("ReversedType"))
+        {
+            validator = validator.substring(validator.indexOf('(') + 1, validator.length() - 1);
+        }
+
+        int index = validator.indexOf('(');
+        String collectionClass = index < 0 ? "" : validator.substring(0, index);
+        if (collectionClass.endsWith("ListType") || collectionClass.endsWith("SetType"))
+        {
+            String element = validator.substring(index + 1, validator.length() - 1);
+            collectionType = collectionClass.endsWith("ListType") ? CollectionType.LIST : CollectionType.SET;
+            keyType = null;
+            type = typeOf(element);
+            keyTypeName = null;
+            valueTypeName = cqlName(element);
+            typeName = (collectionType == CollectionType.LIST ? "list<" : "set<") + valueTypeName + ">";
+        }
+        else if (collectionClass.endsWith("MapType"))
+        {
+            String[] split = validator.substring(index + 1, validator.length() - 1).split(",");
+            collectionType = CollectionType.MAP;
+            AbstractJdbcType<?> key = typeOf(split[0]);
+            AbstractJdbcType<?> value = typeOf(split[1]);
+            // the map can only be encoded if both its types are known
+            keyType = value == null ? null : key;
+            type = key == null ? null : value;
+            keyTypeName = cqlName(split[0]);
+            valueTypeName = cqlName(split[1]);
+            typeName = "map<" + keyTypeName + "," + valueTypeName + ">";
+        }
+        else
+        {
+            collectionType = CollectionType.NOT_COLLECTION;
+            keyType = null;
+            type = typeOf(validator);
+            keyTypeName = null;
+            valueTypeName = cqlName(validator);
+            typeName = valueTypeName;
+        }
+    }
+
+    private static AbstractJdbcType<?> typeOf(String validator)
+    {
+        AbstractJdbcType<?> type = TypesMap.getTypeForComparator(validator);
+        // the timestamp type of Cassandra 1.2 is encoded like the date type it replaces
+        if (type == null && validator.endsWith("TimestampType")) return JdbcDate.instance;
+        return type;
+    }
+
+    private static String cqlName(String validator)
+    {
+        String simpleName = validator.substring(validator.lastIndexOf('.') + 1);
+        String cqlName = CQL_NAMES.get(simpleName);
+        return cqlName == null ? validator : cqlName;
+    }
+
+    /**
+     * @return the CQL name of a type known to the driver, as a parameter of that type would report it
+     */
+    static String cqlName(AbstractJdbcType<?> type)
+    {
+        // JdbcDate is reported for both the date and the timestamp types, which share their encoding
+        if (type == JdbcDate.instance) return "timestamp";
+        for (Map.Entry<String, String> entry : CQL_NAMES.entrySet())
+        {
+            if (TypesMap.getTypeForComparator(entry.getKey()) == type) return entry.getValue();
+        }
+        return type.getClass().getName();
+    }
+
+    /**
+     * @return the CQL name of the type of the values of a column
+     */
+    static String cqlName(CollectionType collectionType, AbstractJdbcType<?> keyType, AbstractJdbcType<?> valueType)
+    {
+        switch (collectionType)
+        {
+            case LIST: return "list<" + cqlName(valueType) + ">";
+            case SET: return "set<" + cqlName(valueType) + ">";
+            case MAP: return "map<" + cqlName(keyType) + "," + cqlName(valueType) + ">";
+            default: return cqlName(valueType);
+        }
+    }
+
+    String getName()
+    {
+        return name;
+    }
+
+    String getTypeName()
+    {
+        return typeName;
+    }
+
+    /**
+     * @return true if the driver knows how to encode the values of the parameter
+     */
+    boolean isTyped()
+    {
+        return type != null;
+    }
+
+    /**
+     * @return true if values of the class are encoded without any conversion
+     */
+    boolean accepts(Class<?> javaClass)
+    {
+        return collectionType == CollectionType.NOT_COLLECTION && type != null && type.getType() == javaClass;
+    }
+
+    int getJdbcType()
+    {
+        return collectionType == CollectionType.NOT_COLLECTION && type != null ? type.getJdbcType() : Types.OTHER;
+    }
+
+    String getClassName()
+    {
+        switch (collectionType)
+        {
+            case LIST: return List.class.getName();
+            case SET: return Set.class.getName();
+            case MAP: return Map.class.getName();
+            default: return type == null ? ByteBuffer.class.getName() : type.getType().getName();
+        }
+    }
+
+    boolean isSigned()
+    {
+        return collectionType == CollectionType.NOT_COLLECTION && type != null && type.isSigned();
+    }
+
+    /**
+     * Encodes a value for the parameter, which must be typed.
+     *
+     * @param parameterIndex the index of the parameter, for the error message
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    ByteBuffer encode(int parameterIndex, Object value) throws SQLException
+    {
+        if (value == null) return ByteBufferUtil.EMPTY_BYTE_BUFFER;
+        switch (collectionType)
+        {
+            case LIST:
+                if (!(value instanceof List)) break;
+                return CollectionEncoder.encode(type, convertAll(parameterIndex, type, valueTypeName, (List<?>) value, new ArrayList<Object>()));
+
+            case SET:
+                if (!(value instanceof Set)) break;
+                return CollectionEncoder.encode(type, convertAll(parameterIndex, type, valueTypeName, (Set<?>) value, new LinkedHashSet<Object>()));
+
+            case MAP:
+                if (!(value instanceof Map)) break;
+                Map<Object, Object> map = new LinkedHashMap<Object, Object>();
+                for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet())
+                {
+                    map.put(convert(parameterIndex, keyType, keyTypeName, entry.getKey()), convert(parameterIndex, type, valueTypeName, entry.getValue()));
+                }
+                return CollectionEncoder.encode(keyType, type, map);
+
+            default:
+                if (!type.getType().isInstance(value))
+                {
+                    TypeCodec codec = CodecRegistry.getDefault().encoderFor(value.getClass(), typeName);
+                    if (codec != null) return codec.encode(value);
+                }
+                return ((AbstractJdbcType) type).decompose(convert(parameterIndex, type, typeName, value));
+        }
+        throw mismatch(parameterIndex, value);
+    }
+
+    private <C extends Collection<Object>> C convertAll(int parameterIndex, AbstractJdbcType<?> elementType, String elementTypeName, Collection<?> values, C converted) throws SQLException
+    {
+        for (Object value : values)
+        {
+            converted.add(convert(parameterIndex, elementType, elementTypeName, value));
+        }
+        return converted;
+    }
+
+    // the value as an instance of the Java class of the type
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private Object convert(int parameterIndex, AbstractJdbcType<?> target, String targetName, Object value) throws SQLException
+    {
+        Class<?> targetClass = target.getType();
+        if (targetClass.isInstance(value)) return value;
+
+        if (value != null)
+        {
+            // a registered codec knows better than the conversions below
+            TypeCodec codec = CodecRegistry.getDefault().encoderFor(value.getClass(), targetName);
+            if (codec != null) return target.compose(codec.encode(value));
+        }
+
+        if (value instanceof Number)
+        {
+            Number number = (Number) value;
+            if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte || value instanceof BigInteger)
+            {
+                // integers only go to the narrower types when they fit
+                BigInteger integer = value instanceof BigInteger ? (BigInteger) value : BigInteger.valueOf(number.longValue());
+                if (targetClass == Integer.class && integer.bitLength() <= 31) return integer.intValue();
+                if (targetClass == Long.class && integer.bitLength() <= 63) return integer.longValue();
+                if (targetClass == BigInteger.class) return integer;
+                if (targetClass == BigDecimal.class) return new BigDecimal(integer);
+                if (targetClass == java.util.Date.class && integer.bitLength() <= 63) return new java.util.Date(integer.longValue());
+            }
+            else if (targetClass == BigDecimal.class)
+            {
+                try
+                {
+                    return new BigDecimal(value.toString());
+                }
+                catch (NumberFormatException e)
+                {
+                    // NaN and the infinities have no decimal value
+                    throw mismatch(parameterIndex, value);
+                }
+            }
+            if (targetClass == Double.class) return number.doubleValue();
+            if (targetClass == Float.class) return number.floatValue();
+            if (targetClass == String.class) return value.toString();
+        }
+        else if (value instanceof String)
+        {
+            String string = (String) value;
+            try
+            {
+                if (targetClass == Integer.class) return Integer.valueOf(string);
+                if (targetClass == Long.class) return Long.valueOf(string);
+                if (targetClass == BigInteger.class) return new BigInteger(string);
+                if (targetClass == BigDecimal.class) return new BigDecimal(string);
+                if (targetClass == Double.class) return Double.valueOf(string);
+                if (targetClass == Float.class) return Float.valueOf(string);
+                if (targetClass == Boolean.class) return Boolean.valueOf(string);
+                if (targetClass == UUID.class) return UUID.fromString(string);
+                if (targetClass == java.util.Date.class)
+                {
+                    if (string.matches("^\\d+$")) return new java.util.Date(Long.parseLong(string));
+                    return DateUtils.parseDate(string, iso8601Patterns);
+                }
+            }
+            catch (IllegalArgumentException e)
+            {
+                // NumberFormatException included
+                throw mismatch(parameterIndex, value);
+            }
+            catch (ParseException e)
+            {
+                throw mismatch(parameterIndex, value);
+            }
+        }
+        else if (value instanceof Boolean)
+        {
+            if (targetClass == String.class) return value.toString();
+        }
+        else if (value instanceof UUID)
+        {
+            if (targetClass == String.class) return value.toString();
+        }
+        else if (value instanceof Calendar)
+        {
+            if (targetClass == java.util.Date.class) return ((Calendar) value).getTime();
+        }
+        else if (value instanceof byte[])
+        {
+            if (targetClass == ByteBuffer.class) return ByteBuffer.wrap((byte[]) value);
+        }
+        throw mismatch(parameterIndex, value);
+    }
+
+    private SQLException mismatch(int parameterIndex, Object value)
+    {
+        return new SQLRecoverableException(String.format(BAD_BINDING, value.getClass().getName(), parameterIndex, typeName));
+    }
+}
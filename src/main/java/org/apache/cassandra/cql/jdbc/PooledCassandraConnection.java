@@ -22,10 +22,10 @@ package org.apache.cassandra.cql.jdbc;
 
 import java.sql.SQLException;
 import java.sql.SQLRecoverableException;
-import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.sql.ConnectionEvent;
 import javax.sql.ConnectionEventListener;
@@ -33,22 +33,38 @@ import javax.sql.PooledConnection;
 import javax.sql.StatementEvent;
 import javax.sql.StatementEventListener;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
 class PooledCassandraConnection implements PooledConnection
 {
-	private static final Logger logger = LoggerFactory.getLogger(PooledCassandraConnection.class);
-	
 	private CassandraConnection physicalConnection;
 
-	volatile Set<ConnectionEventListener> connectionEventListeners = new HashSet<ConnectionEventListener>();
+	// the state of the connection in the ConnectionBag of its pool
+	final AtomicInteger state = new AtomicInteger(ConnectionBag.STATE_IDLE);
 
-	volatile Set<StatementEventListener> statementEventListeners = new HashSet<StatementEventListener>();
+	// maintained by the pool, in milliseconds since the epoch
+	volatile long expiresAt = Long.MAX_VALUE;
+
+	volatile long lastReturned = System.currentTimeMillis();
+
+	volatile long lastValidated = lastReturned;
+
+	// set when an error was reported, the connection is validated before it is used again
+	volatile boolean suspect = false;
 
-	private Map<String, Set<CassandraPreparedStatement>> freePreparedStatements = new HashMap<String, Set<CassandraPreparedStatement>>();
+	// the host pool the connection belongs to
+	HostPool pool;
 
-	private Map<String, Set<CassandraPreparedStatement>> usedPreparedStatements = new HashMap<String, Set<CassandraPreparedStatement>>();
+	// when the connection was last handed out by System.nanoTime, 0 when it was opened for the pool itself
+	volatile long borrowedAt = 0;
+
+	// set while the connection is borrowed in the LOW lane, cleared by whoever gives back its lane permit
+	final AtomicBoolean lowPriority = new AtomicBoolean();
+
+	// how many of the statements prepared through the data source were prepared on this connection
+	volatile int propagated = 0;
+
+	volatile Set<ConnectionEventListener> connectionEventListeners = new HashSet<ConnectionEventListener>();
+
+	volatile Set<StatementEventListener> statementEventListeners = new HashSet<StatementEventListener>();
 
 	public PooledCassandraConnection(CassandraConnection physicalConnection)
 	{
@@ -117,23 +133,8 @@ class PooledCassandraConnection implements PooledConnection
 			listener.statementClosed(event);
 		}
 
-		String cql = preparedStatement.getCql();
-		Set<CassandraPreparedStatement> freeStatements = freePreparedStatements.get(cql);
-		Set<CassandraPreparedStatement> usedStatements = usedPreparedStatements.get(cql);
-
-		usedStatements.remove(preparedStatement);
-		
-		preparedStatement.resetResults();
-		try
-		{
-			preparedStatement.clearParameters();
-			freeStatements.add(preparedStatement);
-		}
-		catch (SQLException e)
-		{
-			logger.error(e.getMessage());
-		}
-
+		// the physical connection keeps what the statement prepared on the server, preparing it again is free
+		preparedStatement.close();
 	}
 
 	void statementErrorOccurred(CassandraPreparedStatement preparedStatement, SQLException sqlException)
@@ -143,40 +144,21 @@ class PooledCassandraConnection implements PooledConnection
 		{
 			listener.statementErrorOccurred(event);
 		}
-		
-		String cql = preparedStatement.getCql();
-		Set<CassandraPreparedStatement> usedStatements = usedPreparedStatements.get(cql);
-		
+
 		if (!(event.getSQLException() instanceof SQLRecoverableException))
 		{
 			preparedStatement.close();
-			usedStatements.remove(preparedStatement);
 		}
 	}
 
-	public synchronized ManagedPreparedStatement prepareStatement(ManagedConnection managedConnection, String cql) throws SQLException
+	public ManagedPreparedStatement prepareStatement(ManagedConnection managedConnection, String cql) throws SQLException
 	{
-		if (!freePreparedStatements.containsKey(cql)) {
-			freePreparedStatements.put(cql, new HashSet<CassandraPreparedStatement>());
-			usedPreparedStatements.put(cql, new HashSet<CassandraPreparedStatement>());
-		}
-		
-		Set<CassandraPreparedStatement> freeStatements = freePreparedStatements.get(cql);
-		Set<CassandraPreparedStatement> usedStatements = usedPreparedStatements.get(cql);
-
-		CassandraPreparedStatement managedPreparedStatement;
-		if (freeStatements.isEmpty())
-		{
-			managedPreparedStatement = physicalConnection.prepareStatement(cql);
-		}
-		else
+		CassandraPreparedStatement preparedStatement = physicalConnection.prepareStatement(cql);
+		if (pool != null)
 		{
-			managedPreparedStatement = freeStatements.iterator().next();
-			freeStatements.remove(managedPreparedStatement);
+			pool.statementPrepared(cql);
 		}
-		usedStatements.add(managedPreparedStatement);
-		
-		return new ManagedPreparedStatement(this, managedConnection, managedPreparedStatement);
+		return new ManagedPreparedStatement(this, managedConnection, preparedStatement);
 	}
 
 }
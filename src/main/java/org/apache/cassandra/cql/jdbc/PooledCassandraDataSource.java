@@ -20,26 +20,75 @@
  */
 package org.apache.cassandra.cql.jdbc;
 
+import static org.apache.cassandra.cql.jdbc.Utils.HOST_REQUIRED;
+import static org.apache.cassandra.cql.jdbc.Utils.NO_SERVER;
+import static org.apache.cassandra.cql.jdbc.Utils.POOL_INTERRUPTED;
+import static org.apache.cassandra.cql.jdbc.Utils.WAS_CLOSED_CON;
+
 import java.io.PrintWriter;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.SQLFeatureNotSupportedException;
-import java.util.HashSet;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLTransientConnectionException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import javax.sql.ConnectionEvent;
 import javax.sql.ConnectionEventListener;
 import javax.sql.DataSource;
-import javax.sql.PooledConnection;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * A DataSource pooling connections to one or more hosts.
+ * <p>
+ * Each host has a pool of its own, sized by minIdle and maxTotal. getConnection borrows from the
+ * host with the fewest connections in use relative to its size, and waits at most borrowTimeout for
+ * a connection of that host. A host can be drained, e.g. before a rolling restart, without affecting
+ * the pools of the other hosts.
+ * <p>
+ * Connections are borrowed in the HIGH lane unless asked otherwise. Bulk work borrowing in the LOW
+ * lane can use all but reservedConnections of the connections of each host, so that it cannot
+ * starve the interactive work of connections.
+ */
 public class PooledCassandraDataSource implements DataSource, ConnectionEventListener
 {
-	private static final int CONNECTION_IS_VALID_TIMEOUT = 5;
+	static final int DEFAULT_MIN_IDLE = 4;
+
+	static final int DEFAULT_MAX_TOTAL = 32;
+
+	static final long DEFAULT_BORROW_TIMEOUT = 30000;
+
+	static final long DEFAULT_IDLE_TIMEOUT = 600000;
+
+	static final long DEFAULT_MAX_LIFETIME = 1800000;
+
+	static final long DEFAULT_VALIDATION_INTERVAL = 60000;
+
+	static final long DEFAULT_MAINTENANCE_INTERVAL = 30000;
 
-	private static final int MIN_POOL_SIZE = 4;
+	static final int DEFAULT_MAX_PROPAGATED_STATEMENTS = 256;
+
+	private static final int MAX_WARM_UP_THREADS = 8;
 
 	protected static final String NOT_SUPPORTED = "the Cassandra implementation does not support this method";
 
@@ -47,98 +96,690 @@ public class PooledCassandraDataSource implements DataSource, ConnectionEventLis
 
 	private CassandraDataSource connectionPoolDataSource;
 
-	private volatile Set<PooledCassandraConnection> freeConnections = new HashSet<PooledCassandraConnection>();
+	private final ConcurrentMap<String, HostPool> pools = new ConcurrentHashMap<String, HostPool>();
+
+	private volatile int minIdle = DEFAULT_MIN_IDLE;
+
+	private volatile int maxTotal = DEFAULT_MAX_TOTAL;
+
+	private volatile int reservedConnections = 0;
+
+	private volatile long borrowTimeout = DEFAULT_BORROW_TIMEOUT;
+
+	private volatile List<String> warmUpStatements = Collections.emptyList();
+
+	private volatile boolean ready = false;
+
+	private volatile long idleTimeout = DEFAULT_IDLE_TIMEOUT;
 
-	private volatile Set<PooledCassandraConnection> usedConnections = new HashSet<PooledCassandraConnection>();
+	private volatile long maxLifetime = DEFAULT_MAX_LIFETIME;
+
+	private volatile long validationInterval = DEFAULT_VALIDATION_INTERVAL;
+
+	private volatile long maintenanceInterval = DEFAULT_MAINTENANCE_INTERVAL;
+
+	private volatile ScheduledExecutorService maintenance;
+
+	// fails the asynchronous borrowers that waited too long, never held up by the blocking maintenance
+	private volatile ScheduledExecutorService timer;
+
+	// opens connections for the asynchronous borrowers
+	private ExecutorService asyncExecutor;
+
+	private volatile boolean closed = false;
+
+	private volatile boolean adaptiveSizing = false;
+
+	// the CQL prepared through the pool in the order it was first prepared, only ever appended to
+	private final List<String> preparedStatements = new CopyOnWriteArrayList<String>();
+
+	private final Set<String> preparedStatementSet = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+	private volatile int maxPropagatedStatements = DEFAULT_MAX_PROPAGATED_STATEMENTS;
 
 	public PooledCassandraDataSource(CassandraDataSource connectionPoolDataSource) throws SQLException
 	{
 		this.connectionPoolDataSource = connectionPoolDataSource;
+		String host = connectionPoolDataSource.getServerName();
+		if (host == null)
+		{
+			throw new SQLNonTransientConnectionException(HOST_REQUIRED);
+		}
+		addHost(host, connectionPoolDataSource);
 	}
 
-	@Override
-	public synchronized Connection getConnection() throws SQLException
+	/**
+	 * Adds a host to pool connections to, with the port, keyspace, credentials, CQL version and
+	 * consistency of the data source the pool was created with.
+	 *
+	 * @return false if the host was already pooled
+	 */
+	public boolean addHost(String host) throws SQLException
+	{
+		CassandraDataSource base = connectionPoolDataSource;
+		return addHost(host, new CassandraDataSource(host, base.getPortNumber(), base.getDatabaseName(), base.getUser(),
+				base.getPassword(), base.getVersion(), base.getConsistency()));
+	}
+
+	synchronized boolean addHost(String host, CassandraDataSource dataSource) throws SQLException
 	{
-		PooledCassandraConnection pooledConnection;
-		if (freeConnections.isEmpty())
+		checkNotClosed();
+		return pools.putIfAbsent(host, new HostPool(host, dataSource, this, minIdle, maxTotal, reservedConnections)) == null;
+	}
+
+	/**
+	 * Stops handing out connections to a host. Its idle connections are closed right away and the
+	 * connections in use are closed as they are returned.
+	 *
+	 * @return false if the host was not pooled
+	 */
+	public boolean drainHost(String host)
+	{
+		HostPool pool = pools.remove(host);
+		if (pool == null)
 		{
-			pooledConnection = connectionPoolDataSource.getPooledConnection();
-			pooledConnection.addConnectionEventListener(this);
+			return false;
 		}
-		else
+		pool.close();
+		logger.info("Draining the pooled connections to {}", host);
+		return true;
+	}
+
+	public Set<String> getHosts()
+	{
+		return Collections.unmodifiableSet(pools.keySet());
+	}
+
+	/**
+	 * @return the number of connections to the host that are in use, or -1 if the host is not pooled
+	 */
+	public int getInFlight(String host)
+	{
+		HostPool pool = pools.get(host);
+		return pool == null ? -1 : pool.getInFlight();
+	}
+
+	/**
+	 * Sizes the pool of one host independently of the others.
+	 */
+	public void setHostPoolSize(String host, int minIdle, int maxTotal)
+	{
+		HostPool pool = pools.get(host);
+		if (pool == null)
 		{
-			pooledConnection = freeConnections.iterator().next();
-			freeConnections.remove(pooledConnection);
+			throw new IllegalArgumentException("the host is not pooled: " + host);
 		}
-		usedConnections.add(pooledConnection);
-		return new ManagedConnection(pooledConnection);
+		pool.resize(minIdle, maxTotal);
 	}
 
-	@Override
-	public Connection getConnection(String username, String password) throws SQLException
+	/**
+	 * @return the number of connections the adaptive sizing aims at for the host, or -1 if the host is not pooled
+	 */
+	public int getTargetSize(String host)
 	{
-		throw new SQLFeatureNotSupportedException(NOT_SUPPORTED);
+		HostPool pool = pools.get(host);
+		return pool == null ? -1 : pool.getTargetSize();
 	}
 
-	@Override
-	public synchronized void connectionClosed(ConnectionEvent event)
+	public boolean isAdaptiveSizing()
 	{
-		PooledCassandraConnection connection = (PooledCassandraConnection) event.getSource();
-		usedConnections.remove(connection);
-		int freeConnectionsCount = freeConnections.size();
-		if (freeConnectionsCount < MIN_POOL_SIZE)
+		return adaptiveSizing;
+	}
+
+	/**
+	 * Lets the pool of each host size itself from its traffic, between minIdle and maxTotal. The
+	 * maintenance estimates the connections needed from the borrow rate, the time connections are
+	 * held and the time borrowers wait, then opens connections up to that size in advance and closes
+	 * the idle connections beyond it.
+	 */
+	public void setAdaptiveSizing(boolean adaptiveSizing)
+	{
+		this.adaptiveSizing = adaptiveSizing;
+	}
+
+	public int getMinIdle()
+	{
+		return minIdle;
+	}
+
+	/**
+	 * Sets the number of connections the pool of each host keeps open when it is quiet.
+	 */
+	public synchronized void setMinIdle(int minIdle)
+	{
+		if (minIdle < 0 || minIdle > maxTotal)
+		{
+			throw new IllegalArgumentException("minIdle must be between 0 and maxTotal: " + minIdle);
+		}
+		for (HostPool pool : pools.values())
+		{
+			pool.resize(minIdle, pool.getMaxTotal());
+		}
+		this.minIdle = minIdle;
+	}
+
+	public int getMaxTotal()
+	{
+		return maxTotal;
+	}
+
+	/**
+	 * Sets the maximum number of open connections to each host, idle or in use.
+	 */
+	public synchronized void setMaxTotal(int maxTotal)
+	{
+		if (maxTotal < 1 || maxTotal < minIdle)
+		{
+			throw new IllegalArgumentException("maxTotal must be positive and at least minIdle: " + maxTotal);
+		}
+		for (HostPool pool : pools.values())
+		{
+			pool.resize(Math.min(pool.getMinIdle(), maxTotal), maxTotal);
+		}
+		this.maxTotal = maxTotal;
+	}
+
+	public int getReservedConnections()
+	{
+		return reservedConnections;
+	}
+
+	/**
+	 * Sets the number of connections to each host that only borrowers in the HIGH lane may use. When
+	 * it is maxTotal or more, the LOW lane cannot borrow at all.
+	 */
+	public synchronized void setReservedConnections(int reservedConnections)
+	{
+		if (reservedConnections < 0)
+		{
+			throw new IllegalArgumentException("reservedConnections cannot be negative: " + reservedConnections);
+		}
+		for (HostPool pool : pools.values())
+		{
+			pool.setReserved(reservedConnections);
+		}
+		this.reservedConnections = reservedConnections;
+	}
+
+	public long getBorrowTimeout()
+	{
+		return borrowTimeout;
+	}
+
+	/**
+	 * Sets how long, in milliseconds, getConnection waits for a connection when maxTotal are in use.
+	 */
+	public void setBorrowTimeout(long borrowTimeout)
+	{
+		if (borrowTimeout < 0)
+		{
+			throw new IllegalArgumentException("borrowTimeout may not be negative: " + borrowTimeout);
+		}
+		this.borrowTimeout = borrowTimeout;
+	}
+
+	public long getIdleTimeout()
+	{
+		return idleTimeout;
+	}
+
+	/**
+	 * Sets how long, in milliseconds, a connection beyond minIdle may stay idle before it is closed.
+	 */
+	public void setIdleTimeout(long idleTimeout)
+	{
+		if (idleTimeout < 0)
+		{
+			throw new IllegalArgumentException("idleTimeout may not be negative: " + idleTimeout);
+		}
+		this.idleTimeout = idleTimeout;
+	}
+
+	public long getMaxLifetime()
+	{
+		return maxLifetime;
+	}
+
+	/**
+	 * Sets how long, in milliseconds, a connection is used before it is replaced, or 0 to keep
+	 * connections open for as long as they are valid. Replacing connections spreads the load over
+	 * the coordinators again after nodes restarted.
+	 */
+	public void setMaxLifetime(long maxLifetime)
+	{
+		if (maxLifetime < 0)
+		{
+			throw new IllegalArgumentException("maxLifetime may not be negative: " + maxLifetime);
+		}
+		this.maxLifetime = maxLifetime;
+	}
+
+	public long getValidationInterval()
+	{
+		return validationInterval;
+	}
+
+	/**
+	 * Sets how long, in milliseconds, a connection may stay idle before the pool checks that it is
+	 * still valid, or 0 to never validate idle connections.
+	 */
+	public void setValidationInterval(long validationInterval)
+	{
+		if (validationInterval < 0)
+		{
+			throw new IllegalArgumentException("validationInterval may not be negative: " + validationInterval);
+		}
+		this.validationInterval = validationInterval;
+	}
+
+	public long getMaintenanceInterval()
+	{
+		return maintenanceInterval;
+	}
+
+	/**
+	 * Sets how often, in milliseconds, idle connections are evicted, validated and replaced. Takes
+	 * effect when the pool is first used.
+	 */
+	public void setMaintenanceInterval(long maintenanceInterval)
+	{
+		if (maintenanceInterval <= 0)
+		{
+			throw new IllegalArgumentException("maintenanceInterval must be positive: " + maintenanceInterval);
+		}
+		this.maintenanceInterval = maintenanceInterval;
+	}
+
+	public List<String> getWarmUpStatements()
+	{
+		return warmUpStatements;
+	}
+
+	/**
+	 * Sets the CQL statements that warmUp prepares on each connection it opens, so that the first
+	 * executions of these statements find them in the statement cache of their connection.
+	 */
+	public void setWarmUpStatements(List<String> warmUpStatements)
+	{
+		this.warmUpStatements = Collections.unmodifiableList(new ArrayList<String>(warmUpStatements));
+	}
+
+	public int getMaxPropagatedStatements()
+	{
+		return maxPropagatedStatements;
+	}
+
+	/**
+	 * Sets how many distinct statements prepared through the pool are prepared on every connection
+	 * in the background, so that a statement prepared on one connection costs no prepare round trip
+	 * the first time it runs on another. The first statements prepared are the ones propagated, 0
+	 * turns the propagation off.
+	 */
+	public void setMaxPropagatedStatements(int maxPropagatedStatements)
+	{
+		if (maxPropagatedStatements < 0)
 		{
-			freeConnections.add(connection);
+			throw new IllegalArgumentException("maxPropagatedStatements cannot be negative: " + maxPropagatedStatements);
 		}
-		else
+		this.maxPropagatedStatements = maxPropagatedStatements;
+	}
+
+	List<String> getPreparedStatements()
+	{
+		return preparedStatements;
+	}
+
+	// records a statement prepared on a pooled connection, and prepares it on the idle ones if it is new
+	void statementPrepared(String cql)
+	{
+		if (preparedStatementSet.contains(cql) || preparedStatementSet.size() >= maxPropagatedStatements || !preparedStatementSet.add(cql))
+		{
+			return;
+		}
+		preparedStatements.add(cql);
+		for (HostPool pool : pools.values())
+		{
+			propagate(pool);
+		}
+	}
+
+	void propagate(final HostPool pool)
+	{
+		execute(new Runnable()
 		{
-			try
+			public void run()
 			{
-				connection.close();
+				pool.propagate();
 			}
-			catch (SQLException e)
+		});
+	}
+
+	/**
+	 * Opens connections in parallel until the pool of each host holds its minIdle, preparing the warm
+	 * up statements on each new connection.
+	 *
+	 * @return the number of connections opened
+	 * @throws SQLException if connections were needed and none could be opened
+	 */
+	public int warmUp() throws SQLException
+	{
+		checkNotClosed();
+		startMaintenance();
+		List<Callable<Boolean>> tasks = new ArrayList<Callable<Boolean>>();
+		for (final HostPool pool : pools.values())
+		{
+			for (int i = pool.size(); i < pool.getMinIdle(); i++)
+			{
+				tasks.add(new Callable<Boolean>()
+				{
+					public Boolean call() throws SQLException
+					{
+						return pool.warmUpConnection();
+					}
+				});
+			}
+		}
+		if (tasks.isEmpty())
+		{
+			ready = true;
+			return 0;
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(tasks.size(), MAX_WARM_UP_THREADS), new ThreadFactory()
+		{
+			public Thread newThread(Runnable runnable)
+			{
+				Thread thread = new Thread(runnable, "cassandra-pool-warm-up");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+
+		int opened = 0;
+		SQLException failure = null;
+		try
+		{
+			for (Future<Boolean> result : executor.invokeAll(tasks))
 			{
-				logger.error(e.getMessage());
+				try
+				{
+					if (result.get())
+					{
+						opened++;
+					}
+				}
+				catch (ExecutionException e)
+				{
+					logger.warn("Could not warm up a pooled connection", e.getCause());
+					if (failure == null)
+					{
+						failure = e.getCause() instanceof SQLException ? (SQLException) e.getCause() : new SQLTransientConnectionException(e.getCause());
+					}
+				}
 			}
 		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new SQLTransientConnectionException(POOL_INTERRUPTED, e);
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+
+		if (opened == 0 && failure != null)
+		{
+			throw failure;
+		}
+		ready = true;
+		for (HostPool pool : pools.values())
+		{
+			ready &= pool.size() >= pool.getMinIdle();
+		}
+		return opened;
 	}
 
-	@Override
-	public synchronized void connectionErrorOccurred(ConnectionEvent event)
+	/**
+	 * @return true once warmUp has opened minIdle connections to each host
+	 */
+	public boolean isReady()
 	{
-		PooledCassandraConnection connection = (PooledCassandraConnection) event.getSource();
+		return ready;
+	}
+
+	private void checkNotClosed() throws SQLNonTransientConnectionException
+	{
+		if (closed)
+		{
+			throw new SQLNonTransientConnectionException(WAS_CLOSED_CON);
+		}
+	}
+
+	private synchronized void startMaintenance()
+	{
+		if (maintenance != null || closed)
+		{
+			return;
+		}
+		maintenance = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+		{
+			public Thread newThread(Runnable runnable)
+			{
+				Thread thread = new Thread(runnable, "cassandra-pool-maintenance");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+		{
+			public Thread newThread(Runnable runnable)
+			{
+				Thread thread = new Thread(runnable, "cassandra-pool-timer");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		maintenance.scheduleWithFixedDelay(new Runnable()
+		{
+			public void run()
+			{
+				try
+				{
+					maintain();
+				}
+				catch (RuntimeException e)
+				{
+					// an exception would cancel the task
+					logger.error("Pool maintenance failed", e);
+				}
+			}
+		}, maintenanceInterval, maintenanceInterval, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Runs the maintenance of the pool of each host.
+	 */
+	void maintain()
+	{
+		for (HostPool pool : pools.values())
+		{
+			pool.maintain();
+		}
+	}
+
+	/**
+	 * Runs a task on the maintenance thread.
+	 *
+	 * @return false if the data source is closed
+	 */
+	boolean execute(Runnable task)
+	{
+		ScheduledExecutorService executor = maintenance;
+		if (executor == null)
+		{
+			return false;
+		}
 		try
 		{
-			if (!connection.getConnection().isValid(CONNECTION_IS_VALID_TIMEOUT)) {
-				connection.getConnection().close();
+			executor.execute(task);
+			return true;
+		}
+		catch (RejectedExecutionException e)
+		{
+			return false;
+		}
+	}
+
+	@Override
+	public Connection getConnection() throws SQLException
+	{
+		return getConnection(Priority.HIGH);
+	}
+
+	/**
+	 * Borrows a connection in the given lane, waiting at most borrowTimeout for one.
+	 */
+	public Connection getConnection(Priority priority) throws SQLException
+	{
+		checkNotClosed();
+		startMaintenance();
+		HostPool pool = leastLoaded();
+		if (pool == null)
+		{
+			throw new SQLNonTransientConnectionException(NO_SERVER);
+		}
+		return pool.borrow(borrowTimeout, priority);
+	}
+
+	// the pool with the smallest share of its connections in use
+	private HostPool leastLoaded()
+	{
+		HostPool best = null;
+		for (HostPool pool : pools.values())
+		{
+			if (best == null || (long) pool.getInFlight() * best.getMaxTotal() < (long) best.getInFlight() * pool.getMaxTotal())
+			{
+				best = pool;
 			}
 		}
-		catch (SQLException e)
+		return best;
+	}
+
+	/**
+	 * Borrows a connection without blocking the calling thread. The future completes once a
+	 * connection of the least loaded host is free, or fails with a SQLTransientConnectionException
+	 * when none became available within borrowTimeout.
+	 */
+	public ListenableFuture<Connection> getConnectionAsync()
+	{
+		return getConnectionAsync(Priority.HIGH);
+	}
+
+	/**
+	 * Borrows a connection in the given lane without blocking the calling thread.
+	 */
+	public ListenableFuture<Connection> getConnectionAsync(Priority priority)
+	{
+		if (closed)
+		{
+			return Futures.immediateFailedFuture(new SQLNonTransientConnectionException(WAS_CLOSED_CON));
+		}
+		startMaintenance();
+		HostPool pool = leastLoaded();
+		if (pool == null)
 		{
-			logger.error(e.getMessage());
+			return Futures.immediateFailedFuture(new SQLNonTransientConnectionException(NO_SERVER));
 		}
-		usedConnections.remove(connection);
+		return pool.borrowAsync(borrowTimeout, priority);
 	}
 
-	public synchronized void close()
+	/**
+	 * Runs a short task after a delay on the timer thread, unless the data source is closed.
+	 */
+	void schedule(Runnable task, long delay)
 	{
-		closePooledConnections(usedConnections);
-		closePooledConnections(freeConnections);
+		ScheduledExecutorService executor = timer;
+		if (executor == null)
+		{
+			return;
+		}
+		try
+		{
+			executor.schedule(task, delay, TimeUnit.MILLISECONDS);
+		}
+		catch (RejectedExecutionException e)
+		{
+			// closing the data source fails the pending borrowers
+		}
+	}
+
+	/**
+	 * Runs a task that may block, on behalf of an asynchronous borrower.
+	 *
+	 * @return false if the data source is closed
+	 */
+	synchronized boolean executeAsync(Runnable task)
+	{
+		if (closed)
+		{
+			return false;
+		}
+		if (asyncExecutor == null)
+		{
+			asyncExecutor = Executors.newCachedThreadPool(new ThreadFactory()
+			{
+				public Thread newThread(Runnable runnable)
+				{
+					Thread thread = new Thread(runnable, "cassandra-pool-async");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		asyncExecutor.execute(task);
+		return true;
+	}
+
+	@Override
+	public Connection getConnection(String username, String password) throws SQLException
+	{
+		throw new SQLFeatureNotSupportedException(NOT_SUPPORTED);
+	}
+
+	@Override
+	public void connectionClosed(ConnectionEvent event)
+	{
+		PooledCassandraConnection connection = (PooledCassandraConnection) event.getSource();
+		connection.pool.connectionClosed(connection);
+	}
+
+	@Override
+	public void connectionErrorOccurred(ConnectionEvent event)
+	{
+		PooledCassandraConnection connection = (PooledCassandraConnection) event.getSource();
+		connection.pool.connectionErrorOccurred(connection);
 	}
 
-	private void closePooledConnections(Set<PooledCassandraConnection> usedConnections2)
+	public void close()
 	{
-		for (PooledConnection connection : usedConnections2)
+		synchronized (this)
 		{
-			try
+			closed = true;
+			if (maintenance != null)
 			{
-				connection.close();
+				maintenance.shutdownNow();
+				timer.shutdownNow();
 			}
-			catch (SQLException e)
+			if (asyncExecutor != null)
 			{
-				logger.error(e.getMessage());
+				asyncExecutor.shutdown();
 			}
 		}
+		for (HostPool pool : pools.values())
+		{
+			pool.closeAll();
+		}
 	}
 
 	@Override
@@ -0,0 +1,234 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.cassandra.cql.jdbc;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.cassandra.thrift.CqlPreparedResult;
+
+/**
+ * The statements a connection prepared on the server, so that preparing the same CQL again costs no
+ * round trip.
+ * <p>
+ * The cache is bounded both in entries and in bytes of CQL. When it is full, a statement is only
+ * admitted if it was asked for more often lately than the least recently used statement it would
+ * evict (TinyLFU), so that a stream of one-off statements, e.g. CQL built with literals, cannot push
+ * out the statements an application keeps reusing.
+ */
+class PreparedStatementCache
+{
+    static final int DEFAULT_MAX_ENTRIES = 256;
+
+    static final long DEFAULT_MAX_BYTES = 1024 * 1024;
+
+    private final int maxEntries;
+
+    private final long maxBytes;
+
+    // in access order, the eldest entry is the least recently used
+    private final LinkedHashMap<String, CqlPreparedResult> entries = new LinkedHashMap<String, CqlPreparedResult>(16, 0.75f, true);
+
+    private final FrequencySketch sketch;
+
+    private long bytes = 0;
+
+    private long hits = 0;
+
+    private long misses = 0;
+
+    PreparedStatementCache(int maxEntries, long maxBytes)
+    {
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        this.sketch = new FrequencySketch(Math.max(maxEntries, 1));
+    }
+
+    /**
+     * @return the statement prepared for the CQL in the keyspace, or null if it is not cached
+     */
+    synchronized CqlPreparedResult get(String keyspace, String cql)
+    {
+        String key = key(keyspace, cql);
+        sketch.increment(key);
+        CqlPreparedResult result = entries.get(key);
+        if (result == null) misses++;
+        else hits++;
+        return result;
+    }
+
+    /**
+     * Caches a statement just prepared, unless it is used less than the statements it would evict.
+     *
+     * @return true if the statement was cached
+     */
+    synchronized boolean put(String keyspace, String cql, CqlPreparedResult result)
+    {
+        String key = key(keyspace, cql);
+        long weight = weight(key);
+        if (maxEntries <= 0 || weight > maxBytes) return false;
+
+        CqlPreparedResult previous = entries.remove(key);
+        if (previous != null) bytes -= weight;
+
+        // find the victims first, the candidate is turned away if any of them is used as often
+        int frequency = sketch.frequency(key);
+        int evictions = 0;
+        long freed = 0;
+        Iterator<String> eldest = entries.keySet().iterator();
+        while (entries.size() - evictions >= maxEntries || bytes - freed + weight > maxBytes)
+        {
+            String victim = eldest.next();
+            if (previous == null && sketch.frequency(victim) >= frequency) return false;
+            evictions++;
+            freed += weight(victim);
+        }
+
+        eldest = entries.keySet().iterator();
+        for (int i = 0; i < evictions; i++)
+        {
+            eldest.next();
+            eldest.remove();
+        }
+        bytes -= freed;
+        entries.put(key, result);
+        bytes += weight;
+        return true;
+    }
+
+    /**
+     * Forgets every statement, e.g. once the server has forgotten them.
+     */
+    synchronized void clear()
+    {
+        entries.clear();
+        bytes = 0;
+    }
+
+    synchronized int size()
+    {
+        return entries.size();
+    }
+
+    synchronized long getBytes()
+    {
+        return bytes;
+    }
+
+    synchronized long getHits()
+    {
+        return hits;
+    }
+
+    synchronized long getMisses()
+    {
+        return misses;
+    }
+
+    private static String key(String keyspace, String cql)
+    {
+        // a keyspace name has no spaces, so the key cannot be ambiguous
+        return keyspace == null ? " " + cql : keyspace + " " + cql;
+    }
+
+    private static long weight(String key)
+    {
+        return 2L * key.length();
+    }
+
+    /**
+     * Counts how often keys were asked for lately, in a count-min sketch of 4 bit counters that are
+     * halved once the sketch has seen ten times as many keys as the cache holds, so that old
+     * popularity fades.
+     */
+    private static class FrequencySketch
+    {
+        private static final int MAX_COUNT = 15;
+
+        private static final int[] SEEDS = { 0x97cb3127, 0x7ed55d16, 0xc761c23c, 0x165667b1 };
+
+        private final byte[] counters;
+
+        private final int mask;
+
+        private final int sampleSize;
+
+        private int additions = 0;
+
+        FrequencySketch(int capacity)
+        {
+            int size = Integer.highestOneBit(Math.max(capacity * 4 - 1, 15)) << 1;
+            counters = new byte[size];
+            mask = size - 1;
+            sampleSize = 10 * capacity;
+        }
+
+        void increment(String key)
+        {
+            int hash = spread(key.hashCode());
+            boolean added = false;
+            for (int seed : SEEDS)
+            {
+                int index = index(hash, seed);
+                if (counters[index] < MAX_COUNT)
+                {
+                    counters[index]++;
+                    added = true;
+                }
+            }
+            if (added && ++additions >= sampleSize) reset();
+        }
+
+        int frequency(String key)
+        {
+            int hash = spread(key.hashCode());
+            int frequency = MAX_COUNT;
+            for (int seed : SEEDS)
+            {
+                frequency = Math.min(frequency, counters[index(hash, seed)]);
+            }
+            return frequency;
+        }
+
+        private void reset()
+        {
+            for (int i = 0; i < counters.length; i++)
+            {
+                counters[i] = (byte) (counters[i] >>> 1);
+            }
+            additions /= 2;
+        }
+
+        private int index(int hash, int seed)
+        {
+            int h = (hash ^ seed) * 0x9e3779b9;
+            return (h ^ (h >>> 16)) & mask;
+        }
+
+        private static int spread(int hash)
+        {
+            hash ^= hash >>> 17;
+            hash *= 0xed5ad4bb;
+            return hash ^ (hash >>> 11);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.cassandra.cql.jdbc;
+
+/**
+ * A source of a potentially unbounded number of elements, published according to the demand
+ * received from its subscribers.
+ * <p>
+ * This mirrors the {@code org.reactivestreams.Publisher} contract so it can be adapted to any
+ * reactive streams library without the driver depending on one.
+ */
+public interface Publisher<T>
+{
+    /**
+     * Request the publisher to start streaming data to the given subscriber. Each subscription
+     * is independent: subscribing twice executes the query twice.
+     */
+    public void subscribe(Subscriber<? super T> subscriber);
+}
@@ -0,0 +1,79 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.cassandra.cql.jdbc;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caps retries to a fraction of the requests sent on a connection.
+ * <p>
+ * Every request deposits {@code ratio} of a token and every retry withdraws a whole one, so when the
+ * cluster is struggling the driver stops multiplying its load once the balance is spent. A small
+ * initial reserve lets a quiet connection retry its first failures.
+ */
+class RetryBudget
+{
+    static final double DEFAULT_RATIO = 0.1;
+
+    // tokens are kept in thousandths so fractional deposits can be accumulated atomically
+    private static final long UNIT = 1000;
+
+    private static final long RESERVE = 10 * UNIT;
+
+    private final long deposit;
+
+    private final long maxBalance;
+
+    private final AtomicLong balance = new AtomicLong(RESERVE);
+
+    RetryBudget(double ratio)
+    {
+        if (ratio < 0) throw new IllegalArgumentException("the retry budget ratio may not be negative: " + ratio);
+        this.deposit = (long) (ratio * UNIT);
+        this.maxBalance = RESERVE + 100 * deposit;
+    }
+
+    /**
+     * Credits the budget for a new request.
+     */
+    void deposit()
+    {
+        while (true)
+        {
+            long current = balance.get();
+            if (current >= maxBalance) return;
+            if (balance.compareAndSet(current, Math.min(maxBalance, current + deposit))) return;
+        }
+    }
+
+    /**
+     * @return true if a retry may be attempted, in which case its token has been consumed
+     */
+    boolean tryAcquire()
+    {
+        while (true)
+        {
+            long current = balance.get();
+            if (current < UNIT) return false;
+            if (balance.compareAndSet(current, current - UNIT)) return true;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.cassandra.cql.jdbc;
+
+import org.apache.cassandra.thrift.ConsistencyLevel;
+
+/**
+ * The outcome of a {@link RetryPolicy} consultation.
+ */
+public final class RetryDecision
+{
+    public enum Type {RETRY, RETHROW, IGNORE};
+
+    private static final RetryDecision RETHROW_DECISION = new RetryDecision(Type.RETHROW, null);
+
+    private static final RetryDecision IGNORE_DECISION = new RetryDecision(Type.IGNORE, null);
+
+    private final Type type;
+
+    private final ConsistencyLevel consistencyLevel;
+
+    private RetryDecision(Type type, ConsistencyLevel consistencyLevel)
+    {
+        this.type = type;
+        this.consistencyLevel = consistencyLevel;
+    }
+
+    /**
+     * @param consistencyLevel the consistency level to use for the next attempt, or null to keep the current one
+     * @return a decision to send the request again to the same coordinator
+     */
+    public static RetryDecision retry(ConsistencyLevel consistencyLevel)
+    {
+        return new RetryDecision(Type.RETRY, consistencyLevel);
+    }
+
+    /** @return a decision to report the failure to the caller */
+    public static RetryDecision rethrow()
+    {
+        return RETHROW_DECISION;
+    }
+
+    /** @return a decision to swallow the failure and report the statement as executed */
+    public static RetryDecision ignore()
+    {
+        return IGNORE_DECISION;
+    }
+
+    public Type getType()
+    {
+        return type;
+    }
+
+    public ConsistencyLevel getConsistencyLevel()
+    {
+        return consistencyLevel;
+    }
+
+    public String toString()
+    {
+        return (consistencyLevel == null) ? type.name() : String.format("%s at %s", type, consistencyLevel);
+    }
+}
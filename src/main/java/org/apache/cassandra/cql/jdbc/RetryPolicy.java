@@ -0,0 +1,68 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.cassandra.cql.jdbc;
+
+import org.apache.cassandra.thrift.ConsistencyLevel;
+import org.apache.cassandra.thrift.TimedOutException;
+import org.apache.cassandra.thrift.UnavailableException;
+
+/**
+ * Decides what a statement does when the coordinator reports a timeout or not enough live replicas.
+ * <p>
+ * A policy is consulted once per failed attempt. Retries it asks for are still subject to the
+ * connection's retry budget, so a policy never has to guard against retry storms itself.
+ * Implementations must be thread safe as a single instance is shared by all the statements of a connection.
+ */
+public interface RetryPolicy
+{
+    /**
+     * Called when a read (a SELECT) timed out on the coordinator.
+     *
+     * @param statement the statement being executed
+     * @param consistencyLevel the consistency level of the failed attempt
+     * @param exception the exception returned by the coordinator
+     * @param nbRetry the number of retries already made for this execution
+     * @return the decision to apply
+     */
+    public RetryDecision onReadTimeout(CassandraStatementExtras statement, ConsistencyLevel consistencyLevel, TimedOutException exception, int nbRetry);
+
+    /**
+     * Called when a write (anything that is not a SELECT) timed out on the coordinator.
+     *
+     * @param statement the statement being executed
+     * @param consistencyLevel the consistency level of the failed attempt
+     * @param exception the exception returned by the coordinator
+     * @param nbRetry the number of retries already made for this execution
+     * @return the decision to apply
+     */
+    public RetryDecision onWriteTimeout(CassandraStatementExtras statement, ConsistencyLevel consistencyLevel, TimedOutException exception, int nbRetry);
+
+    /**
+     * Called when the coordinator knew up front that not enough replicas were alive.
+     *
+     * @param statement the statement being executed
+     * @param consistencyLevel the consistency level of the failed attempt
+     * @param exception the exception returned by the coordinator
+     * @param nbRetry the number of retries already made for this execution
+     * @return the decision to apply
+     */
+    public RetryDecision onUnavailable(CassandraStatementExtras statement, ConsistencyLevel consistencyLevel, UnavailableException exception, int nbRetry);
+}
@@ -0,0 +1,92 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.cassandra.cql.jdbc;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A row of a result, read without the cursor of a {@link java.sql.ResultSet}.
+ * <p>
+ * Columns are numbered from 1 as in JDBC and are only decoded when first read. Getters do not throw
+ * SQLException: an index out of range throws IndexOutOfBoundsException, an unknown name throws
+ * IllegalArgumentException and a value that can not be translated to the requested type throws
+ * ClassCastException. Numeric getters return 0 (and getBoolean false) for a null value.
+ */
+public interface Row
+{
+    /** @return the row key */
+    public byte[] getKey();
+
+    public int getColumnCount();
+
+    /** @return the name of the given column */
+    public String getColumnName(int index);
+
+    /** @return the index of the column with the given name */
+    public int findColumn(String name);
+
+    public boolean isNull(int index);
+    public boolean isNull(String name);
+
+    public Object getObject(int index);
+    public Object getObject(String name);
+
+    public String getString(int index);
+    public String getString(String name);
+
+    public boolean getBoolean(int index);
+    public boolean getBoolean(String name);
+
+    public int getInt(int index);
+    public int getInt(String name);
+
+    public long getLong(int index);
+    public long getLong(String name);
+
+    public double getDouble(int index);
+    public double getDouble(String name);
+
+    /** @return the undecoded value of the given column */
+    public ByteBuffer getBytes(int index);
+    public ByteBuffer getBytes(String name);
+
+    public List<?> getList(int index);
+    public List<?> getList(String name);
+
+    public Set<?> getSet(int index);
+    public Set<?> getSet(String name);
+
+    public Map<?, ?> getMap(int index);
+    public Map<?, ?> getMap(String name);
+
+    /** @return the decoded column for the given column offset */
+    public TypedColumn getColumn(int index);
+    /** @return the decoded column for the given column name */
+    public TypedColumn getColumn(String name);
+
+    /**
+     * @return a row holding the same values that stays valid when this one is a view moving on to the next row
+     */
+    public Row copy();
+}
@@ -0,0 +1,127 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.cassandra.cql.jdbc;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.cassandra.cql.jdbc.TypedColumn.CollectionType;
+import org.apache.cassandra.thrift.Column;
+import org.apache.cassandra.thrift.CqlMetadata;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Decodes the columns of the rows of one result into {@link TypedColumn}s.
+ * <p>
+ * The types of a column are resolved from the result's schema the first time its name is seen and
+ * reused for the following rows. The copies of rows handed to other threads share the decoder, so
+ * the types may be resolved from several threads at once.
+ */
+class RowDecoder
+{
+    private static final Logger logger = LoggerFactory.getLogger(RowDecoder.class);
+
+    private final CqlMetadata schema;
+
+    private final ConcurrentMap<ByteBuffer, ColumnSpec> specs = new ConcurrentHashMap<ByteBuffer, ColumnSpec>();
+
+    RowDecoder(CqlMetadata schema)
+    {
+        this.schema = schema;
+    }
+
+    CqlMetadata getSchema()
+    {
+        return schema;
+    }
+
+    TypedColumn decode(Column column)
+    {
+        assert column != null;
+        assert column.name != null;
+
+        ColumnSpec spec = spec(column.name);
+        TypedColumn tc = new TypedColumn(column, spec.comparator, spec.validator, spec.keyType, spec.collectionType);
+
+        if (logger.isTraceEnabled()) logger.trace("tc = " + tc);
+
+        return tc;
+    }
+
+    /**
+     * @return the name of the column, without decoding its value
+     */
+    String nameOf(Column column)
+    {
+        return spec(column.name).name;
+    }
+
+    private ColumnSpec spec(ByteBuffer name)
+    {
+        ColumnSpec spec = specs.get(name);
+        if (spec == null)
+        {
+            spec = new ColumnSpec(name);
+            ColumnSpec previous = specs.putIfAbsent(name, spec);
+            if (previous != null) spec = previous;
+        }
+        return spec;
+    }
+
+    private class ColumnSpec
+    {
+        String name;
+        AbstractJdbcType<?> comparator;
+        AbstractJdbcType<?> validator;
+        AbstractJdbcType<?> keyType = null;
+        CollectionType collectionType = CollectionType.NOT_COLLECTION;
+
+        ColumnSpec(ByteBuffer name)
+        {
+            String nameType = schema.name_types.get(name);
+            if (nameType == null) nameType = "AsciiType";
+            comparator = TypesMap.getTypeForComparator(nameType == null ? schema.default_name_type : nameType);
+            this.name = comparator.getString(name);
+            String valueType = schema.value_types.get(name);
+            validator = TypesMap.getTypeForComparator(valueType == null ? schema.default_value_type : valueType);
+            if (validator == null)
+            {
+                int index = valueType.indexOf("(");
+                assert index > 0;
+
+                String collectionClass = valueType.substring(0, index);
+                if (collectionClass.endsWith("ListType")) collectionType = CollectionType.LIST;
+                else if (collectionClass.endsWith("SetType")) collectionType = CollectionType.SET;
+                else if (collectionClass.endsWith("MapType")) collectionType = CollectionType.MAP;
+
+                String[] split = valueType.substring(index + 1, valueType.length() - 1).split(",");
+                if (split.length > 1)
+                {
+                    keyType = TypesMap.getTypeForComparator(split[0]);
+                    validator = TypesMap.getTypeForComparator(split[1]);
+                }
+                else validator = TypesMap.getTypeForComparator(split[0]);
+            }
+        }
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.cassandra.cql.jdbc;
+
+import java.sql.SQLException;
+
+/**
+ * Callback receiving the rows of a result, see {@link CassandraResultSetExtras#forEachRow(RowHandler)}.
+ */
+public interface RowHandler
+{
+    /**
+     * Handle one row. The row is a view that is only valid until this method returns: use
+     * {@link Row#copy()} to keep it.
+     *
+     * @return true to receive the next row, false to stop the iteration
+     */
+    public boolean handle(Row row) throws SQLException;
+}
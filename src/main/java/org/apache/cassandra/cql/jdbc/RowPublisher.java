@@ -0,0 +1,212 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.cassandra.cql.jdbc;
+
+import java.nio.ByteBuffer;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.cassandra.thrift.CqlResult;
+import org.apache.cassandra.thrift.CqlRow;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+
+/**
+ * Publishes the rows of a query as the subscriber requests them.
+ * <p>
+ * The query is only sent once the subscriber signals its first demand. Rows are decoded one at a
+ * time as they are emitted and the raw row is released as soon as it has been handed over, so a
+ * slow subscriber never holds more than the undelivered part of the response. Signals are emitted
+ * either on the thread calling {@link Subscription#request(long)} or on the I/O thread that
+ * received the response, but never concurrently.
+ */
+class RowPublisher implements Publisher<Row>
+{
+    private final CassandraStatement statement;
+    private final String cql;
+    private final List<ByteBuffer> values;
+
+    /**
+     * @param values the bound values of a prepared statement, or null to execute the query directly
+     */
+    RowPublisher(CassandraStatement statement, String cql, List<ByteBuffer> values)
+    {
+        this.statement = statement;
+        this.cql = cql;
+        this.values = values;
+    }
+
+    public void subscribe(Subscriber<? super Row> subscriber)
+    {
+        if (subscriber == null) throw new NullPointerException("the subscriber may not be null");
+        subscriber.onSubscribe(new RowSubscription(subscriber));
+    }
+
+    private class RowSubscription implements Subscription, FutureCallback<CqlResult>
+    {
+        private final Subscriber<? super Row> subscriber;
+
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicBoolean started = new AtomicBoolean();
+
+        // serializes the emission loop: only the thread that moves it from 0 emits
+        private final AtomicInteger wip = new AtomicInteger();
+
+        private volatile boolean cancelled = false;
+        private volatile Throwable error;
+        private volatile RowDecoder decoder;
+        private volatile List<CqlRow> rows;
+
+        // only used by the emitting thread
+        private int position = 0;
+        private boolean done = false;
+
+        RowSubscription(Subscriber<? super Row> subscriber)
+        {
+            this.subscriber = subscriber;
+        }
+
+        public void request(long n)
+        {
+            if (n <= 0)
+            {
+                error = new IllegalArgumentException("the number of requested rows must be positive: " + n);
+                drain();
+                return;
+            }
+
+            while (true)
+            {
+                long current = demand.get();
+                long updated = current + n;
+                if (updated < 0) updated = Long.MAX_VALUE; // unbounded
+                if (demand.compareAndSet(current, updated)) break;
+            }
+
+            if (started.compareAndSet(false, true))
+            {
+                try
+                {
+                    Futures.addCallback(statement.executeAsyncWithRetries(cql, values, CassandraStatement.ROWS_RESULT), this);
+                }
+                catch (SQLException e)
+                {
+                    onFailure(e);
+                }
+            }
+            drain();
+        }
+
+        public void cancel()
+        {
+            cancelled = true;
+            drain();
+        }
+
+        public void onSuccess(CqlResult result)
+        {
+            decoder = new RowDecoder(result.schema);
+            rows = result.getRows();
+            drain();
+        }
+
+        public void onFailure(Throwable t)
+        {
+            error = CassandraStatement.toSQLException(t, cql);
+            drain();
+        }
+
+        private void drain()
+        {
+            if (wip.getAndIncrement() != 0) return;
+
+            int missed = 1;
+            while (true)
+            {
+                if (!done) emit();
+
+                missed = wip.addAndGet(-missed);
+                if (missed == 0) return;
+            }
+        }
+
+        private void emit()
+        {
+            if (cancelled)
+            {
+                finish();
+                return;
+            }
+            if (error != null)
+            {
+                finish();
+                subscriber.onError(error);
+                return;
+            }
+
+            List<CqlRow> available = rows;
+            if (available == null) return; // still waiting for the response
+
+            long requested = demand.get();
+            long emitted = 0;
+            while (emitted != requested && position < available.size() && !cancelled)
+            {
+                CqlRow row = available.get(position);
+                available.set(position++, null);
+                try
+                {
+                    subscriber.onNext(new CassandraRow(decoder, row));
+                }
+                catch (RuntimeException e)
+                {
+                    // a subscriber may not throw, consider the subscription cancelled
+                    cancelled = true;
+                    finish();
+                    throw e;
+                }
+                emitted++;
+            }
+
+            if (emitted > 0 && requested != Long.MAX_VALUE) demand.addAndGet(-emitted);
+
+            if (cancelled)
+            {
+                finish();
+            }
+            else if (position == available.size())
+            {
+                finish();
+                subscriber.onComplete();
+            }
+        }
+
+        private void finish()
+        {
+            done = true;
+            rows = null;
+            decoder = null;
+        }
+    }
+}
@@ -21,28 +21,30 @@
 package org.apache.cassandra.cql.jdbc;
 
 import java.nio.ByteBuffer;
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.sql.SQLException;
 import java.util.LinkedHashSet;
-import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.Set;
 
 public class SetMaker<T>
 {
-    // interning instances
-    private static final Map<AbstractJdbcType<?>, SetMaker> instances = new HashMap<AbstractJdbcType<?>, SetMaker>();
+    // interning instances, looked up without locking as every collection decoded needs one
+    private static final ConcurrentMap<AbstractJdbcType<?>, SetMaker> instances = new ConcurrentHashMap<AbstractJdbcType<?>, SetMaker>();
 
     public final AbstractJdbcType<T> elements;
 
 
-    public static synchronized <T> SetMaker<T> getInstance(AbstractJdbcType<T> elements)
+    // the instances are interned under the types they were made for
+    @SuppressWarnings("unchecked")
+    public static <T> SetMaker<T> getInstance(AbstractJdbcType<T> elements)
     {
         SetMaker<T> t = instances.get(elements);
         if (t == null)
         {
             t = new SetMaker<T>(elements);
-            instances.put(elements, t);
+            SetMaker<T> previous = instances.putIfAbsent(elements, t);
+            if (previous != null) t = previous;
         }
         return t;
     }
@@ -55,15 +57,11 @@ public class SetMaker<T>
     public Set<T> compose(ByteBuffer bytes)
     {
         ByteBuffer input = bytes.duplicate();
-        int n = input.getShort();
+        int n = input.getShort() & 0xFFFF;
         Set<T> l = new LinkedHashSet<T>(n);
         for (int i = 0; i < n; i++)
         {
-            int s = input.getShort();
-            byte[] data = new byte[s];
-            input.get(data);
-            ByteBuffer databb = ByteBuffer.wrap(data);
-            l.add(elements.compose(databb));
+            l.add(elements.compose(CollectionViews.next(input)));
         }
         return l;
     }
@@ -77,15 +75,15 @@ public class SetMaker<T>
      */
     public ByteBuffer decompose(Set<T> value)
     {
-        List<ByteBuffer> bbs = new ArrayList<ByteBuffer>(value.size());
-        int size = 0;
-        for (T elt : value)
+        try
         {
-            ByteBuffer bb = elements.decompose(elt);
-            bbs.add(bb);
-            size += 2 + bb.remaining();
+            return CollectionEncoder.encode(elements, value);
+        }
+        catch (SQLException e)
+        {
+            // an element of another class than the type's, which the generic signature cannot rule out
+            throw new IllegalArgumentException(e.getMessage(), e);
         }
-        return Utils.pack(bbs, value.size(), size);
     }
 
 }
@@ -0,0 +1,39 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.cassandra.cql.jdbc;
+
+/**
+ * Receives the elements of a {@link Publisher} once it has requested them through its {@link Subscription}.
+ * <p>
+ * This mirrors the {@code org.reactivestreams.Subscriber} contract: the calls are never concurrent,
+ * {@link #onSubscribe(Subscription)} comes first, and either {@link #onComplete()} or
+ * {@link #onError(Throwable)} ends the sequence.
+ */
+public interface Subscriber<T>
+{
+    public void onSubscribe(Subscription subscription);
+
+    public void onNext(T element);
+
+    public void onError(Throwable error);
+
+    public void onComplete();
+}
@@ -0,0 +1,40 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.cassandra.cql.jdbc;
+
+/**
+ * The link between one {@link Subscriber} and the {@link Publisher} it subscribed to.
+ * <p>
+ * This mirrors the {@code org.reactivestreams.Subscription} contract.
+ */
+public interface Subscription
+{
+    /**
+     * Add the given number of elements to the demand of the subscriber. A non-positive number
+     * ends the subscription with an IllegalArgumentException.
+     */
+    public void request(long n);
+
+    /**
+     * Stop the delivery of elements. It may take some time before the delivery actually stops.
+     */
+    public void cancel();
+}
@@ -0,0 +1,52 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.cassandra.cql.jdbc;
+
+import java.nio.ByteBuffer;
+import java.sql.SQLException;
+
+/**
+ * Converts the values of one Java type to and from the bytes of one CQL type.
+ * <p>
+ * Codecs registered with a {@link CodecRegistry} are used by {@code PreparedStatement.setObject}
+ * for the values of their Java type, and by {@code ResultSet.getObject(int, Class)} when their Java
+ * type is asked for.
+ */
+public interface TypeCodec<T>
+{
+    /**
+     * @return the class of the values, a codec also applies to the values of its subclasses
+     */
+    public Class<T> getJavaType();
+
+    /**
+     * @return the name of the CQL type, as in a table definition, e.g. {@code bigint} or
+     *         {@code list<text>}; a custom type is named by its class
+     */
+    public String getCqlType();
+
+    public ByteBuffer encode(T value) throws SQLException;
+
+    /**
+     * @param bytes the bytes of a value that is not null, which the codec may consume
+     */
+    public T decode(ByteBuffer bytes) throws SQLException;
+}
@@ -36,7 +36,11 @@ public class TypedColumn
     // we cache the frequently-accessed forms: java object for value, String for name.
     // Note that {N|V}.toString() isn't always the same as Type.getString
     // (a good example is byte buffers).
-    private final Object value;
+    // Collections are only decoded when their value is first read, as the large ones are costly.
+    // The value is always written before the volatile flag, so a thread that sees the flag set also
+    // sees the value; threads racing to decode the same column just compute equal collections.
+    private Object value;
+    private volatile boolean decoded;
     private final String nameString;
     private final AbstractJdbcType<?> nameType, valueType, keyType;
     private final CollectionType collectionType;
@@ -58,24 +62,32 @@ public class TypedColumn
         if (column.value == null || !column.value.hasRemaining()) 
         {
             this.value = null;
+            this.decoded = true;
         }
-        else switch(collectionType)
+        else if (collectionType == CollectionType.NOT_COLLECTION)
+        {
+            this.value =  valueType.compose(rawColumn.value);
+            this.decoded = true;
+        }
+    }
+
+    private void decode()
+    {
+        switch(collectionType)
         {
-            case NOT_COLLECTION:
-                this.value =  valueType.compose(column.value);
-                break;
             case LIST:
-                value = ListMaker.getInstance(valueType).compose(column.value);
+                value = ListMaker.getInstance(valueType).compose(rawColumn.value);
                 break;
             case SET:
-                value = SetMaker.getInstance(valueType).compose(column.value);
+                value = SetMaker.getInstance(valueType).compose(rawColumn.value);
                 break;
             case MAP:
-                value = MapMaker.getInstance(keyType, valueType).compose(column.value);
+                value = MapMaker.getInstance(keyType, valueType).compose(rawColumn.value);
                 break;
            default:
                 value = null;
         }
+        decoded = true;
     }
 
 
@@ -86,6 +98,7 @@ public class TypedColumn
     
     public Object getValue()
     {
+        if (!decoded) decode();
         return value;
     }
     
@@ -110,6 +123,11 @@ public class TypedColumn
         return valueType;
     }
 
+    public AbstractJdbcType<?> getKeyType()
+    {
+        return keyType;
+    }
+
     public CollectionType getCollectionType()
     {
         return collectionType;
@@ -120,7 +138,7 @@ public class TypedColumn
     {
         return String.format("TypedColumn [rawColumn=%s, value=%s, nameString=%s, nameType=%s, valueType=%s, keyType=%s, collectionType=%s]",
             displayRawColumn(rawColumn),
-            value,
+            getValue(),
             nameString,
             nameType,
             valueType,
@@ -55,6 +55,7 @@ class Utils
     private static final Pattern KEYSPACE_PATTERN = Pattern.compile("USE (\\w+);?", Pattern.CASE_INSENSITIVE | Pattern.MULTILINE);
     private static final Pattern SELECT_PATTERN = Pattern.compile("(?:SELECT|DELETE)\\s+.+\\s+FROM\\s+(\\w+).*", Pattern.CASE_INSENSITIVE | Pattern.MULTILINE);
     private static final Pattern UPDATE_PATTERN = Pattern.compile("UPDATE\\s+(\\w+)\\s+.*", Pattern.CASE_INSENSITIVE);
+    private static final Pattern READ_PATTERN = Pattern.compile("^\\s*SELECT\\s", Pattern.CASE_INSENSITIVE);
 
     public static final String PROTOCOL = "jdbc:cassandra:";
     public static final String DEFAULT_HOST = "localhost";
@@ -77,11 +78,22 @@ class Utils
     public static final String TAG_BUILD_VERSION = "buildVersion";
     public static final String TAG_THRIFT_VERSION = "thriftVersion";
     public static final String TAG_CONSISTENCY_LEVEL = "consistencyLevel";
+    public static final String TAG_RETRY_POLICY = "retryPolicy";
+    public static final String TAG_RETRY_BUDGET = "retryBudget";
+    public static final String TAG_ASYNC_CHANNELS = "asyncChannels";
+    public static final String TAG_VALIDATION_WINDOW = "validationWindow";
+    public static final String TAG_PREPARED_CACHE_SIZE = "preparedCacheSize";
+    public static final String TAG_PREPARED_CACHE_BYTES = "preparedCacheBytes";
+    public static final String TAG_OBJECT_SERIALIZER = "objectSerializer";
+    public static final String TAG_AUTO_PARAMETERIZE = "autoParameterize";
+    public static final String TAG_AUTO_PREPARE = "autoPrepare";
 
     protected static final String WAS_CLOSED_CON = "method was called on a closed Connection";
     protected static final String WAS_CLOSED_STMT = "method was called on a closed Statement";
     protected static final String WAS_CLOSED_RSLT = "method was called on a closed ResultSet";
     protected static final String NO_INTERFACE = "no object was found that matched the provided interface: %s";
+    protected static final String BAD_BINDING = "a value of class %s cannot be bound to parameter %d of type %s";
+    protected static final String NO_PARAMETER_TYPES = "the server did not describe the parameters of this statement";
     protected static final String NO_TRANSACTIONS = "the Cassandra implementation does not support transactions";
     protected static final String NO_SERVER = "no Cassandra server is available";
     protected static final String ALWAYS_AUTOCOMMIT = "the Cassandra implementation is always in auto-commit mode";
@@ -113,6 +125,16 @@ class Utils
     protected static final String URI_IS_SIMPLE = "Connection url may only include host, port, and keyspace, consistency and version option, e.g., jdbc:cassandra://localhost:9170/Keyspace1?version=3.0.0&consistency=ONE";
     protected static final String NOT_OPTION = "Connection url only supports the 'version' and 'consistency' options";
     protected static final String FORWARD_ONLY = "Can not position cursor with a type of TYPE_FORWARD_ONLY";
+    protected static final String BAD_RETRY_POLICY = "could not instantiate the retry policy : %s";
+    protected static final String BAD_ELEMENT = "collection element %d is %s where a %s was expected";
+    protected static final String BAD_OBJECT_SERIALIZER = "could not instantiate the object serializer : %s";
+    protected static final String CALL_TIMED_OUT = "no response was received within %d milliseconds";
+    protected static final String NO_ASYNC_USE = "a USE statement can not be executed asynchronously, execute it on the connection instead";
+    protected static final String WAS_CANCELLED = "the statement was cancelled";
+    protected static final String NULL_EXECUTOR = "an executor is required to abort a Connection";
+    protected static final String POOL_EXHAUSTED = "no pooled connection to %s became available within %d milliseconds (maxTotal = %d)";
+    protected static final String POOL_CLOSED = "the pool of connections to %s was closed";
+    protected static final String POOL_INTERRUPTED = "interrupted while waiting for a pooled connection";
 
     protected static final Logger logger = LoggerFactory.getLogger(Utils.class);
 
@@ -300,6 +322,17 @@ class Utils
         return cf;
     }
     
+    /**
+     * Determine whether a CQL statement only reads data, which makes it safe to retry.
+     *
+     * @param cql A CQL query string
+     * @return true if the statement is a SELECT
+     */
+    public static boolean isReadQuery(String cql)
+    {
+        return READ_PATTERN.matcher(cql).find();
+    }
+
     // Utility method
     /**
      * Utility method to pack bytes into a byte buffer from a list of ByteBuffers 
@@ -0,0 +1,75 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.cassandra.cql.jdbc;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class AdaptiveSizerUnitTest
+{
+	private static final long SECOND = 1000000000L;
+
+	// a second of traffic: the given number of borrows, each holding its connection for holdMillis
+	private static void traffic(AdaptiveSizer sizer, int borrows, long holdMillis, long waitMillis, int inFlight)
+	{
+		for (int i = 0; i < borrows; i++)
+		{
+			sizer.borrowed(waitMillis * 1000000, inFlight);
+			sizer.returned(holdMillis * 1000000);
+		}
+	}
+
+	@Test
+	public void testLittlesLaw() throws Exception
+	{
+		AdaptiveSizer sizer = new AdaptiveSizer();
+		int size = 0;
+		for (int i = 0; i < 30; i++)
+		{
+			traffic(sizer, 100, 50, 0, 5);
+			size = sizer.sample(SECOND, 0, 1, 50);
+		}
+		// 100 borrows a second held 50 ms each keep 5 connections busy, plus the headroom
+		assertEquals(7, size);
+
+		// the bounds win over the estimate
+		traffic(sizer, 100, 50, 0, 5);
+		assertEquals(10, sizer.sample(SECOND, 0, 10, 50));
+		traffic(sizer, 100, 50, 0, 5);
+		assertEquals(4, sizer.sample(SECOND, 0, 1, 4));
+
+		// the pool shrinks back once the traffic is gone
+		for (int i = 0; i < 30; i++)
+		{
+			size = sizer.sample(SECOND, 0, 1, 50);
+		}
+		assertEquals(1, size);
+	}
+
+	@Test
+	public void testWaitingBorrowersGrowThePool() throws Exception
+	{
+		AdaptiveSizer sizer = new AdaptiveSizer();
+		traffic(sizer, 10, 1, 20, 8);
+		assertEquals(10, sizer.sample(SECOND, 8, 1, 50));
+	}
+}
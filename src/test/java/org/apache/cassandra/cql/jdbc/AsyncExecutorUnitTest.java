@@ -0,0 +1,154 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.cassandra.cql.jdbc;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.cassandra.thrift.Cassandra;
+import org.apache.cassandra.thrift.Compression;
+import org.apache.cassandra.thrift.ConsistencyLevel;
+import org.apache.cassandra.thrift.CqlPreparedResult;
+import org.apache.cassandra.thrift.CqlResult;
+import org.apache.thrift.async.AsyncMethodCallback;
+import org.apache.thrift.transport.TNonblockingTransport;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+public class AsyncExecutorUnitTest
+{
+    private static final String QUERY = "SELECT * FROM t WHERE k = ?";
+
+    private static final List<ByteBuffer> VALUES = Collections.singletonList(ByteBuffer.wrap(new byte[]{ 1 }));
+
+    /**
+     * A client that completes every call on the calling thread, preparing each statement under an id
+     * numbered after the keyspace the socket is in and returning that id as the result of executions.
+     */
+    private static class FakeServer
+    {
+        final Cassandra.AsyncClient client = mock(Cassandra.AsyncClient.class);
+        String keyspace;
+        int prepares;
+
+        @SuppressWarnings("unchecked")
+        FakeServer() throws Exception
+        {
+            doAnswer(new Answer<Void>()
+            {
+                public Void answer(InvocationOnMock invocation) throws Throwable
+                {
+                    complete(invocation, 1, mock(Cassandra.AsyncClient.set_cql_version_call.class));
+                    return null;
+                }
+            }).when(client).set_cql_version(anyString(), any(AsyncMethodCallback.class));
+
+            doAnswer(new Answer<Void>()
+            {
+                public Void answer(InvocationOnMock invocation) throws Throwable
+                {
+                    keyspace = (String) invocation.getArguments()[0];
+                    complete(invocation, 1, mock(Cassandra.AsyncClient.set_keyspace_call.class));
+                    return null;
+                }
+            }).when(client).set_keyspace(anyString(), any(AsyncMethodCallback.class));
+
+            doAnswer(new Answer<Void>()
+            {
+                public Void answer(InvocationOnMock invocation) throws Throwable
+                {
+                    prepares++;
+                    Cassandra.AsyncClient.prepare_cql3_query_call call = mock(Cassandra.AsyncClient.prepare_cql3_query_call.class);
+                    when(call.getResult()).thenReturn(new CqlPreparedResult(keyspace.equals("ks1") ? 1 : 2, 1));
+                    complete(invocation, 2, call);
+                    return null;
+                }
+            }).when(client).prepare_cql3_query(any(ByteBuffer.class), any(Compression.class), any(AsyncMethodCallback.class));
+
+            doAnswer(new Answer<Void>()
+            {
+                public Void answer(InvocationOnMock invocation) throws Throwable
+                {
+                    Cassandra.AsyncClient.execute_prepared_cql3_query_call call = mock(Cassandra.AsyncClient.execute_prepared_cql3_query_call.class);
+                    CqlResult result = new CqlResult();
+                    result.setNum((Integer) invocation.getArguments()[0]);
+                    when(call.getResult()).thenReturn(result);
+                    complete(invocation, 3, call);
+                    return null;
+                }
+            }).when(client).execute_prepared_cql3_query(anyInt(), anyListOf(ByteBuffer.class), any(ConsistencyLevel.class), any(AsyncMethodCallback.class));
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <T> void complete(InvocationOnMock invocation, int callback, T call)
+        {
+            ((AsyncMethodCallback<T>) invocation.getArguments()[callback]).onComplete(call);
+        }
+
+        AsyncExecutor executor()
+        {
+            return new AsyncExecutor("localhost", 9160, null, null, "3.0.0", 3, Compression.NONE, 1)
+            {
+                TNonblockingTransport openTransport() throws IOException
+                {
+                    return mock(TNonblockingTransport.class);
+                }
+
+                Cassandra.AsyncClient openClient(TNonblockingTransport transport) throws IOException
+                {
+                    return client;
+                }
+            };
+        }
+    }
+
+    private static int executed(AsyncExecutor executor, String keyspace) throws Exception
+    {
+        return executor.submit(QUERY, VALUES, ConsistencyLevel.ONE, keyspace, 0).get(1, TimeUnit.SECONDS).getNum();
+    }
+
+    @Test
+    public void testPreparedPerKeyspace() throws Exception
+    {
+        FakeServer server = new FakeServer();
+        AsyncExecutor executor = server.executor();
+
+        assertEquals(1, executed(executor, "ks1"));
+        assertEquals(1, server.prepares);
+
+        // the id prepared in ks1 must not be reused once the channel moved to ks2
+        assertEquals(2, executed(executor, "ks2"));
+        assertEquals(2, server.prepares);
+
+        // back in ks1 the first id is still valid on this socket
+        assertEquals(1, executed(executor, "ks1"));
+        assertEquals(2, server.prepares);
+        executor.close();
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.cassandra.cql.jdbc;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.util.Arrays;
+
+import org.apache.cassandra.thrift.CqlPreparedResult;
+import org.apache.cassandra.thrift.InvalidRequestException;
+import org.junit.Test;
+
+public class AutoPreparerUnitTest
+{
+    private static final String MARSHAL = "org.apache.cassandra.db.marshal.";
+
+    private static CqlPreparedResult prepared(int itemId, String... types)
+    {
+        CqlPreparedResult result = new CqlPreparedResult(itemId, types.length);
+        result.setVariable_types(Arrays.asList(types));
+        return result;
+    }
+
+    @Test
+    public void testParameterize() throws Exception
+    {
+        CassandraConnection connection = mock(CassandraConnection.class);
+        when(connection.prepareCached("INSERT INTO t (k, v) VALUES (?, ?)")).thenReturn(prepared(7, MARSHAL + "UTF8Type", MARSHAL + "LongType"));
+        AutoPreparer preparer = new AutoPreparer(connection, true, 0);
+
+        assertNotNull(preparer.forQuery("INSERT INTO t (k, v) VALUES ('a', 1)"));
+        assertNotNull(preparer.forQuery("INSERT INTO t (k, v) VALUES ('b', 2)"));
+        verify(connection, times(2)).prepareCached("INSERT INTO t (k, v) VALUES (?, ?)");
+
+        // a literal the server would not read as the type of its marker
+        assertNull(preparer.forQuery("INSERT INTO t (k, v) VALUES ('a', 1.5)"));
+        assertNull(preparer.forQuery("INSERT INTO t (k, v) VALUES (1, 2)"));
+
+        // statements without literals need a threshold
+        assertNull(preparer.forQuery("SELECT * FROM t"));
+        verify(connection, never()).prepareCached("SELECT * FROM t");
+    }
+
+    @Test
+    public void testThreshold() throws Exception
+    {
+        CassandraConnection connection = mock(CassandraConnection.class);
+        when(connection.prepareCached("SELECT * FROM t")).thenReturn(prepared(3));
+        AutoPreparer preparer = new AutoPreparer(connection, false, 3);
+
+        assertNull(preparer.forQuery("SELECT * FROM t"));
+        assertNull(preparer.forQuery("SELECT * FROM t"));
+        assertNotNull(preparer.forQuery("SELECT * FROM t"));
+        assertNotNull(preparer.forQuery("SELECT * FROM t"));
+        verify(connection, times(2)).prepareCached("SELECT * FROM t");
+    }
+
+    @Test
+    public void testRefused() throws Exception
+    {
+        CassandraConnection connection = mock(CassandraConnection.class);
+        when(connection.prepareCached(anyString())).thenThrow(new InvalidRequestException("no"));
+        AutoPreparer preparer = new AutoPreparer(connection, true, 0);
+
+        assertNull(preparer.forQuery("DELETE FROM t WHERE k = 1"));
+        assertNull(preparer.forQuery("DELETE FROM t WHERE k = 2"));
+        verify(connection, times(1)).prepareCached(anyString());
+    }
+
+    @Test
+    public void testOnlyDml() throws Exception
+    {
+        CassandraConnection connection = mock(CassandraConnection.class);
+        when(connection.prepareCached(anyString())).thenReturn(prepared(5));
+        AutoPreparer preparer = new AutoPreparer(connection, true, 1);
+
+        for (String cql : new String[] { "USE other", "CREATE TABLE t (k int PRIMARY KEY)", "ALTER TABLE t ADD v int", "DROP TABLE t", "TRUNCATE t" })
+        {
+            for (int i = 0; i < 3; i++)
+            {
+                assertNull(cql, preparer.forQuery(cql));
+            }
+        }
+        verify(connection, never()).prepareCached(anyString());
+    }
+}
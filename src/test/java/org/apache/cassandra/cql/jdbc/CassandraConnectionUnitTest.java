@@ -0,0 +1,250 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.cassandra.cql.jdbc;
+
+import static org.apache.cassandra.cql.jdbc.Utils.*;
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTimeoutException;
+import java.sql.SQLTransientException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.cassandra.thrift.Cassandra;
+import org.apache.cassandra.thrift.Compression;
+import org.apache.cassandra.thrift.ConsistencyLevel;
+import org.apache.cassandra.thrift.CqlPreparedResult;
+import org.apache.cassandra.thrift.CqlResult;
+import org.apache.cassandra.thrift.CqlResultType;
+import org.apache.cassandra.thrift.KsDef;
+import org.apache.thrift.protocol.TBinaryProtocol;
+import org.apache.thrift.server.TServer;
+import org.apache.thrift.server.TThreadPoolServer;
+import org.apache.thrift.transport.TFramedTransport;
+import org.apache.thrift.transport.TServerSocket;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * The call paths of a connection, against a Thrift server in the same JVM whose handler is a mock.
+ */
+public class CassandraConnectionUnitTest
+{
+    private static final String QUERY = "SELECT * FROM t";
+
+    private Cassandra.Iface handler;
+    private TServer server;
+    private int port;
+
+    // held by the handler while it answers slowly, released before the server stops
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final CountDownLatch entered = new CountDownLatch(1);
+
+    @Before
+    public void startServer() throws Exception
+    {
+        handler = mock(Cassandra.Iface.class);
+        when(handler.describe_cluster_name()).thenReturn("Test Cluster");
+        when(handler.describe_keyspaces()).thenReturn(new ArrayList<KsDef>());
+        when(handler.execute_cql3_query(any(ByteBuffer.class), any(Compression.class), any(ConsistencyLevel.class))).thenReturn(new CqlResult(CqlResultType.VOID));
+
+        TServerSocket socket = new TServerSocket(new InetSocketAddress("localhost", 0));
+        port = socket.getServerSocket().getLocalPort();
+        TThreadPoolServer.Args args = new TThreadPoolServer.Args(socket);
+        args.processor(new Cassandra.Processor<Cassandra.Iface>(handler));
+        args.transportFactory(new TFramedTransport.Factory());
+        args.protocolFactory(new TBinaryProtocol.Factory());
+        args.stopTimeoutVal = 1;
+        server = new TThreadPoolServer(args);
+        Thread serving = new Thread()
+        {
+            public void run()
+            {
+                server.serve();
+            }
+        };
+        serving.setDaemon(true);
+        serving.start();
+    }
+
+    @After
+    public void stopServer()
+    {
+        release.countDown();
+        server.stop();
+    }
+
+    private CassandraConnection connect() throws Exception
+    {
+        Properties props = new Properties();
+        props.setProperty(TAG_SERVER_NAME, "localhost");
+        props.setProperty(TAG_PORT_NUMBER, String.valueOf(port));
+        props.setProperty(TAG_CQL_VERSION, "3.0.0");
+        return new CassandraConnection(props);
+    }
+
+    // the next query hangs until the test releases it
+    private void hangNextQuery() throws Exception
+    {
+        when(handler.execute_cql3_query(any(ByteBuffer.class), any(Compression.class), any(ConsistencyLevel.class))).thenAnswer(new Answer<CqlResult>()
+        {
+            public CqlResult answer(InvocationOnMock invocation) throws Exception
+            {
+                entered.countDown();
+                release.await(5, TimeUnit.SECONDS);
+                return new CqlResult(CqlResultType.VOID);
+            }
+        }).thenReturn(new CqlResult(CqlResultType.VOID));
+    }
+
+    @Test
+    public void testTimeout() throws Exception
+    {
+        CassandraConnection connection = connect();
+        connection.setNetworkTimeout(null, 200);
+        hangNextQuery();
+        Statement statement = connection.createStatement();
+        try
+        {
+            statement.execute(QUERY);
+            fail("the query should have timed out");
+        }
+        catch (SQLTimeoutException e)
+        {
+            // expected
+        }
+
+        // the next call runs on a new transport
+        assertFalse(statement.execute(QUERY));
+        assertEquals(1, connection.generation);
+        connection.close();
+    }
+
+    @Test
+    public void testCancel() throws Exception
+    {
+        CassandraConnection connection = connect();
+        hangNextQuery();
+        final Statement statement = connection.createStatement();
+        final AtomicReference<Exception> error = new AtomicReference<Exception>();
+        Thread executing = new Thread()
+        {
+            public void run()
+            {
+                try
+                {
+                    statement.execute(QUERY);
+                }
+                catch (Exception e)
+                {
+                    error.set(e);
+                }
+            }
+        };
+        executing.start();
+        assertTrue(entered.await(5, TimeUnit.SECONDS));
+        statement.cancel();
+        executing.join(5000);
+        assertTrue(String.valueOf(error.get()), error.get() instanceof SQLTransientException);
+
+        assertFalse(statement.execute(QUERY));
+        assertEquals(1, connection.generation);
+        connection.close();
+    }
+
+    @Test
+    public void testAsyncUseRefused() throws Exception
+    {
+        CassandraConnection connection = connect();
+        CassandraStatement statement = (CassandraStatement) connection.createStatement();
+        try
+        {
+            statement.executeAsync("USE other");
+            fail("an asynchronous USE should be refused");
+        }
+        catch (SQLFeatureNotSupportedException e)
+        {
+            // expected
+        }
+        // the connection still reports the keyspace its blocking calls run in
+        assertNull(connection.currentKeyspace);
+        connection.close();
+    }
+
+    @Test
+    public void testPreparedStatementCacheCounters() throws Exception
+    {
+        when(handler.prepare_cql3_query(any(ByteBuffer.class), any(Compression.class))).thenReturn(new CqlPreparedResult(1, 0));
+        Connection connection = connect();
+        connection.prepareStatement(QUERY).close();
+        connection.prepareStatement(QUERY).close();
+
+        assertTrue(connection.isWrapperFor(CassandraConnectionExtras.class));
+        CassandraConnectionExtras extras = connection.unwrap(CassandraConnectionExtras.class);
+        assertEquals(1, extras.getPreparedStatementCacheHits());
+        assertEquals(1, extras.getPreparedStatementCacheMisses());
+        verify(handler).prepare_cql3_query(any(ByteBuffer.class), any(Compression.class));
+        connection.close();
+    }
+
+    @Test
+    public void testPreparedAgainAfterReopen() throws Exception
+    {
+        when(handler.prepare_cql3_query(any(ByteBuffer.class), any(Compression.class))).thenReturn(new CqlPreparedResult(1, 0)).thenReturn(new CqlPreparedResult(2, 0));
+        when(handler.execute_prepared_cql3_query(anyInt(), anyListOf(ByteBuffer.class), any(ConsistencyLevel.class))).thenReturn(new CqlResult(CqlResultType.VOID));
+        CassandraConnection connection = connect();
+        PreparedStatement prepared = connection.prepareStatement(QUERY);
+        prepared.execute();
+        verify(handler).execute_prepared_cql3_query(eq(1), anyListOf(ByteBuffer.class), any(ConsistencyLevel.class));
+
+        // a timed out call has the transport reopened, which the server forgets the statement with
+        connection.setNetworkTimeout(null, 200);
+        hangNextQuery();
+        try
+        {
+            connection.createStatement().execute(QUERY);
+            fail("the query should have timed out");
+        }
+        catch (SQLTimeoutException e)
+        {
+            // expected
+        }
+
+        prepared.execute();
+        verify(handler, times(2)).prepare_cql3_query(any(ByteBuffer.class), any(Compression.class));
+        verify(handler).execute_prepared_cql3_query(eq(2), anyListOf(ByteBuffer.class), any(ConsistencyLevel.class));
+        connection.close();
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.cassandra.cql.jdbc;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.junit.Test;
+
+public class CodecRegistryUnitTest
+{
+    private static final String MARSHAL = "org.apache.cassandra.db.marshal.";
+
+    private static class Sku
+    {
+        final String code;
+
+        Sku(String code)
+        {
+            this.code = code;
+        }
+    }
+
+    private static class SkuCodec implements TypeCodec<Sku>
+    {
+        public Class<Sku> getJavaType()
+        {
+            return Sku.class;
+        }
+
+        public String getCqlType()
+        {
+            return "text";
+        }
+
+        public ByteBuffer encode(Sku value)
+        {
+            return ByteBufferUtil.bytes("sku-" + value.code);
+        }
+
+        public Sku decode(ByteBuffer bytes) throws SQLException
+        {
+            return new Sku(JdbcUTF8.instance.compose(bytes).substring(4));
+        }
+    }
+
+    private static class NumberCodec<T extends Number> implements TypeCodec<T>
+    {
+        private final Class<T> javaType;
+
+        NumberCodec(Class<T> javaType)
+        {
+            this.javaType = javaType;
+        }
+
+        public Class<T> getJavaType()
+        {
+            return javaType;
+        }
+
+        public String getCqlType()
+        {
+            return "blob";
+        }
+
+        public ByteBuffer encode(T value)
+        {
+            return ByteBufferUtil.bytes(value.longValue());
+        }
+
+        public T decode(ByteBuffer bytes)
+        {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    @Test
+    public void testLookups() throws Exception
+    {
+        CodecRegistry registry = new CodecRegistry();
+        assertNull(registry.encoderFor(Integer.class, "blob"));
+
+        TypeCodec<?> numbers = new NumberCodec<Number>(Number.class);
+        registry.register(numbers);
+        assertSame(numbers, registry.encoderFor(Integer.class, "blob"));
+        assertSame(numbers, registry.encoderFor(Integer.class, null));
+        assertNull(registry.encoderFor(Integer.class, "text"));
+        assertNull(registry.encoderFor(String.class, "blob"));
+        assertSame(numbers, registry.decoderFor(Object.class, "blob"));
+        assertNull(registry.decoderFor(Integer.class, "blob"));
+
+        // the more specific codec wins from then on, whatever the order of registration
+        TypeCodec<?> integers = new NumberCodec<Integer>(Integer.class);
+        registry.register(integers);
+        assertSame(integers, registry.encoderFor(Integer.class, "blob"));
+        assertSame(numbers, registry.encoderFor(Long.class, "blob"));
+        assertSame(integers, registry.decoderFor(Integer.class, "blob"));
+        assertSame(numbers, registry.decoderFor(Number.class, "blob"));
+
+        assertTrue(registry.unregister(integers));
+        assertSame(numbers, registry.encoderFor(Integer.class, "blob"));
+    }
+
+    @Test
+    public void testRegisteredDuringLookup() throws Exception
+    {
+        final CountDownLatch looking = new CountDownLatch(1);
+        final CountDownLatch registered = new CountDownLatch(1);
+        final AtomicBoolean armed = new AtomicBoolean();
+        final CodecRegistry registry = new CodecRegistry();
+        // a codec that holds the lookup it takes part in until another codec was registered
+        registry.register(new NumberCodec<Long>(Long.class)
+        {
+            public String getCqlType()
+            {
+                if (armed.compareAndSet(true, false))
+                {
+                    looking.countDown();
+                    try
+                    {
+                        registered.await(5, TimeUnit.SECONDS);
+                    }
+                    catch (InterruptedException e)
+                    {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return super.getCqlType();
+            }
+        });
+
+        armed.set(true);
+        Thread lookup = new Thread()
+        {
+            public void run()
+            {
+                registry.encoderFor(Sku.class, "text");
+            }
+        };
+        lookup.start();
+        looking.await(5, TimeUnit.SECONDS);
+        TypeCodec<?> skus = new SkuCodec();
+        registry.register(skus);
+        registered.countDown();
+        lookup.join(5000);
+
+        // the lookup that missed the new codec must not have cached that there is none
+        assertSame(skus, registry.encoderFor(Sku.class, "text"));
+    }
+
+    @Test
+    public void testBinding() throws Exception
+    {
+        TypeCodec<?> skus = new SkuCodec();
+        CodecRegistry.getDefault().register(skus);
+        try
+        {
+            ParameterBinder text = new ParameterBinder("s", MARSHAL + "UTF8Type");
+            assertEquals("sku-a1", JdbcUTF8.instance.compose(text.encode(1, new Sku("a1"))));
+
+            ParameterBinder list = new ParameterBinder("l", MARSHAL + "ListType(" + MARSHAL + "UTF8Type)");
+            List<String> decoded = ListMaker.getInstance(JdbcUTF8.instance).compose(list.encode(1, Arrays.asList(new Sku("a1"), "b2")));
+            assertEquals(Arrays.asList("sku-a1", "b2"), decoded);
+
+            // no codec of the class for the CQL type of the parameter
+            try
+            {
+                new ParameterBinder("b", MARSHAL + "BytesType").encode(1, new Sku("a1"));
+                fail("a sku should not be bound to a blob");
+            }
+            catch (SQLException e)
+            {
+                assertTrue(e.getMessage(), e.getMessage().contains("blob"));
+            }
+        }
+        finally
+        {
+            CodecRegistry.getDefault().unregister(skus);
+        }
+    }
+
+    @Test
+    public void testCqlNames()
+    {
+        assertEquals("bigint", ParameterBinder.cqlName(JdbcLong.instance));
+        assertEquals("timestamp", ParameterBinder.cqlName(JdbcDate.instance));
+        assertEquals("text", ParameterBinder.cqlName(JdbcUTF8.instance));
+        assertEquals("map<uuid,varint>", ParameterBinder.cqlName(TypedColumn.CollectionType.MAP, JdbcUUID.instance, JdbcInteger.instance));
+    }
+}
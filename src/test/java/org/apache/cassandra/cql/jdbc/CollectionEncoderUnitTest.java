@@ -0,0 +1,172 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.cassandra.cql.jdbc;
+
+import static org.junit.Assert.*;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.sql.SQLException;
+import java.sql.SQLNonTransientException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.junit.Test;
+
+public class CollectionEncoderUnitTest
+{
+    @Test
+    public void testElementTypes() throws Exception
+    {
+        check(JdbcInt32.instance, Arrays.asList(0, -1, Integer.MAX_VALUE));
+        check(JdbcLong.instance, Arrays.asList(0L, Long.MIN_VALUE));
+        check(JdbcFloat.instance, Arrays.asList(1.5f, -0.0f));
+        check(JdbcDouble.instance, Arrays.asList(Math.PI));
+        check(JdbcBoolean.instance, Arrays.asList(true, false));
+        check(JdbcDate.instance, Arrays.asList(new Date(1234567890123L)));
+        check(JdbcInteger.instance, Arrays.asList(BigInteger.ONE, new BigInteger("-98765432109876543210")));
+        check(JdbcDecimal.instance, Arrays.asList(new BigDecimal("3.14"), BigDecimal.ZERO));
+        check(JdbcAscii.instance, Arrays.asList("plain", ""));
+        check(JdbcBytes.instance, Arrays.asList(ByteBuffer.wrap(new byte[] { 1, 2, 3 })));
+        check(JdbcInt32.instance, new ArrayList<Integer>());
+    }
+
+    @Test
+    public void testBadElements() throws Exception
+    {
+        try
+        {
+            CollectionEncoder.encode(JdbcInt32.instance, Arrays.asList(1, null));
+            fail("a null element should be rejected");
+        }
+        catch (SQLNonTransientException e)
+        {
+            assertEquals("collection element 2 is null where a java.lang.Integer was expected", e.getMessage());
+        }
+
+        Map<String, Object> counts = new LinkedHashMap<String, Object>();
+        counts.put("a", 1L);
+        counts.put("b", "2");
+        try
+        {
+            CollectionEncoder.encode(JdbcUTF8.instance, JdbcLong.instance, counts);
+            fail("a string should not be encoded as a bigint");
+        }
+        catch (SQLNonTransientException e)
+        {
+            assertEquals("collection element 2 is a java.lang.String where a java.lang.Long was expected", e.getMessage());
+        }
+
+        // the makers keep their unchecked signatures
+        try
+        {
+            ListMaker.getInstance(JdbcInt32.instance).decompose(Arrays.asList(1, null));
+            fail("a null element should be rejected");
+        }
+        catch (IllegalArgumentException e)
+        {
+            assertEquals("collection element 2 is null where a java.lang.Integer was expected", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testUuids() throws Exception
+    {
+        // most then least significant bits, as the server stores them
+        UUID uuid = UUID.fromString("d8f5c6e0-1d1b-11e3-8ffd-0800200c9a66");
+        for (AbstractJdbcType<UUID> type : Arrays.<AbstractJdbcType<UUID>>asList(JdbcUUID.instance, JdbcTimeUUID.instance, JdbcLexicalUUID.instance))
+        {
+            ByteBuffer bytes = CollectionEncoder.encode(type, Arrays.asList(uuid));
+            assertEquals(20, bytes.remaining());
+            assertEquals(1, bytes.getShort());
+            assertEquals(16, bytes.getShort());
+            assertEquals(uuid, new UUID(bytes.getLong(), bytes.getLong()));
+        }
+    }
+
+    @Test
+    public void testText() throws Exception
+    {
+        // one, two, three and four byte characters, and an unpaired surrogate
+        check(JdbcUTF8.instance, Arrays.asList("abc", "", "café", "€10", "😀!", "x\ud800y"));
+        check(JdbcUTF8.instance, new LinkedHashSet<String>(Arrays.asList("b", "a")));
+    }
+
+    @Test
+    public void testMaps() throws Exception
+    {
+        Map<String, Integer> counts = new LinkedHashMap<String, Integer>();
+        for (int i = 0; i < 1000; i++)
+        {
+            counts.put("key-é-" + i, i);
+        }
+        assertEquals(reference(JdbcUTF8.instance, JdbcInt32.instance, counts), CollectionEncoder.encode(JdbcUTF8.instance, JdbcInt32.instance, counts));
+        assertEquals(counts, MapMaker.getInstance(JdbcUTF8.instance, JdbcInt32.instance).compose(CollectionEncoder.encode(JdbcUTF8.instance, JdbcInt32.instance, counts)));
+
+        Map<BigInteger, Date> mixed = new LinkedHashMap<BigInteger, Date>();
+        mixed.put(BigInteger.TEN, new Date(10));
+        mixed.put(BigInteger.ZERO, new Date(0));
+        assertEquals(reference(JdbcInteger.instance, JdbcDate.instance, mixed), CollectionEncoder.encode(JdbcInteger.instance, JdbcDate.instance, mixed));
+    }
+
+    // the encoding as each element decomposed on its own
+    private static <T> void check(AbstractJdbcType<T> type, Collection<T> elements) throws SQLException
+    {
+        List<ByteBuffer> encoded = new ArrayList<ByteBuffer>();
+        for (T element : elements)
+        {
+            encoded.add(type.decompose(element));
+        }
+        ByteBuffer bytes = CollectionEncoder.encode(type, elements);
+        assertEquals(pack(encoded, elements.size()), bytes);
+        assertEquals(0, bytes.position());
+        assertEquals(bytes.capacity(), bytes.limit());
+    }
+
+    private static <K, V> ByteBuffer reference(AbstractJdbcType<K> keys, AbstractJdbcType<V> values, Map<K, V> map)
+    {
+        List<ByteBuffer> encoded = new ArrayList<ByteBuffer>();
+        for (Map.Entry<K, V> entry : map.entrySet())
+        {
+            encoded.add(keys.decompose(entry.getKey()));
+            encoded.add(values.decompose(entry.getValue()));
+        }
+        return pack(encoded, map.size());
+    }
+
+    private static ByteBuffer pack(List<ByteBuffer> buffers, int elements)
+    {
+        int size = 0;
+        for (ByteBuffer buffer : buffers)
+        {
+            size += 2 + buffer.remaining();
+        }
+        return Utils.pack(buffers, elements, size);
+    }
+}
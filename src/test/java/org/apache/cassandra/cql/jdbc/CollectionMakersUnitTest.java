@@ -0,0 +1,80 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.cassandra.cql.jdbc;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class CollectionMakersUnitTest
+{
+    private static final int THREADS = 8;
+
+    @Test
+    public void testConcurrentLookups() throws Exception
+    {
+        final CountDownLatch start = new CountDownLatch(1);
+        final Object[][] found = new Object[THREADS][];
+        Thread[] threads = new Thread[THREADS];
+        for (int i = 0; i < THREADS; i++)
+        {
+            final int thread = i;
+            threads[i] = new Thread()
+            {
+                public void run()
+                {
+                    try
+                    {
+                        start.await(5, TimeUnit.SECONDS);
+                    }
+                    catch (InterruptedException e)
+                    {
+                        return;
+                    }
+                    // the threads are released together, so that they race to create the makers
+                    found[thread] = new Object[] { ListMaker.getInstance(JdbcLexicalUUID.instance),
+                                                   SetMaker.getInstance(JdbcLexicalUUID.instance),
+                                                   MapMaker.getInstance(JdbcLexicalUUID.instance, JdbcCounterColumn.instance) };
+                }
+            };
+            threads[i].start();
+        }
+        start.countDown();
+        for (Thread thread : threads)
+        {
+            thread.join(5000);
+        }
+
+        for (Object[] makers : found)
+        {
+            assertNotNull(makers);
+            assertSame(found[0][0], makers[0]);
+            assertSame(found[0][1], makers[1]);
+            assertSame(found[0][2], makers[2]);
+        }
+        // and later lookups get the same instances
+        assertSame(found[0][0], ListMaker.getInstance(JdbcLexicalUUID.instance));
+        assertSame(found[0][2], MapMaker.getInstance(JdbcLexicalUUID.instance, JdbcCounterColumn.instance));
+    }
+}
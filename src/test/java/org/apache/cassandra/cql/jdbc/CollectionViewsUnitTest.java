@@ -0,0 +1,111 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.cassandra.cql.jdbc;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class CollectionViewsUnitTest
+{
+    @Test
+    public void testListView() throws Exception
+    {
+        List<String> elements = Arrays.asList("a", "bé", "", "d");
+        List<String> view = CollectionViews.list(JdbcUTF8.instance, embed(CollectionEncoder.encode(JdbcUTF8.instance, elements)));
+        assertEquals(4, view.size());
+        assertEquals("d", view.get(3));
+        assertEquals(elements, view);
+        assertEquals(1, view.indexOf("bé"));
+        try
+        {
+            view.add("e");
+            fail("the view should be read-only");
+        }
+        catch (UnsupportedOperationException e)
+        {
+            // expected
+        }
+
+        // the eager decoding reads the same slices
+        assertEquals(elements, ListMaker.getInstance(JdbcUTF8.instance).compose(embed(CollectionEncoder.encode(JdbcUTF8.instance, elements))));
+    }
+
+    @Test
+    public void testSetView() throws Exception
+    {
+        Set<Long> elements = new LinkedHashSet<Long>(Arrays.asList(3L, 1L, 2L));
+        Set<Long> view = CollectionViews.set(JdbcLong.instance, embed(CollectionEncoder.encode(JdbcLong.instance, elements)));
+        assertEquals(elements, view);
+        assertTrue(view.contains(1L));
+        assertFalse(view.contains(4L));
+        assertEquals(Arrays.asList(3L, 1L, 2L), Arrays.asList(view.toArray()));
+    }
+
+    @Test
+    public void testMapView() throws Exception
+    {
+        Map<String, Integer> map = new LinkedHashMap<String, Integer>();
+        for (int i = 0; i < 100; i++)
+        {
+            map.put("key" + i, i * i);
+        }
+        ByteBuffer bytes = embed(CollectionEncoder.encode(JdbcUTF8.instance, JdbcInt32.instance, map));
+        Map<String, Integer> view = CollectionViews.map(JdbcUTF8.instance, JdbcInt32.instance, bytes);
+        assertEquals(100, view.size());
+        assertEquals(Integer.valueOf(81 * 81), view.get("key81"));
+        assertNull(view.get("key100"));
+        assertTrue(view.containsKey("key0"));
+        assertEquals(map, view);
+        assertEquals(map, new HashMap<String, Integer>(view));
+        assertEquals(map, MapMaker.getInstance(JdbcUTF8.instance, JdbcInt32.instance).compose(bytes));
+    }
+
+    @Test
+    public void testPrimitives() throws Exception
+    {
+        ByteBuffer ints = embed(CollectionEncoder.encode(JdbcInt32.instance, Arrays.asList(5, -1, Integer.MIN_VALUE)));
+        assertArrayEquals(new int[] { 5, -1, Integer.MIN_VALUE }, CollectionViews.ints(ints));
+        ByteBuffer longs = embed(CollectionEncoder.encode(JdbcLong.instance, Arrays.asList(Long.MAX_VALUE, 0L)));
+        assertArrayEquals(new long[] { Long.MAX_VALUE, 0L }, CollectionViews.longs(longs));
+        assertEquals(0, CollectionViews.ints(embed(CollectionEncoder.encode(JdbcInt32.instance, Arrays.<Integer>asList()))).length);
+    }
+
+    // the bytes of a collection in the middle of a larger buffer, as in a Thrift response
+    private static ByteBuffer embed(ByteBuffer collection)
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(collection.remaining() + 10);
+        buffer.position(7);
+        buffer.put(collection.duplicate());
+        buffer.position(7);
+        buffer.limit(7 + collection.remaining());
+        return buffer;
+    }
+}
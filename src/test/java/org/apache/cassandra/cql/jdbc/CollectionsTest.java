@@ -32,6 +32,7 @@ import java.util.Set;
 import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.SQLSyntaxErrorException;
 import java.sql.Statement;
 import java.sql.Types;
 import java.util.Map;
@@ -161,6 +162,36 @@ public class CollectionsTest
         assertTrue(3L == myList.get(1));
     }
 
+    @Test
+    public void testReadViews() throws Exception
+    {
+        if (LOG.isDebugEnabled()) LOG.debug("Test: 'testReadViews'\n");
+
+        Statement statement = con.createStatement();
+
+        ResultSet result = statement.executeQuery("SELECT * FROM testcollection WHERE k = 1;");
+        result.next();
+        CassandraResultSetExtras extras = extras(result);
+
+        assertEquals(result.getObject("l"), extras.getListView("l"));
+        assertArrayEquals(new long[] { 1, 3, 12345 }, extras.getLongList("l"));
+        assertEquals(result.getObject("s"), extras.getSetView("s"));
+        Map<?, ?> view = extras.getMapView("m");
+        assertEquals(Boolean.FALSE, view.get(4.0));
+        assertEquals(result.getObject("m"), view);
+
+        try
+        {
+            extras.getIntList("l");
+            fail("a list of bigint should not be read as an int[]");
+        }
+        catch (SQLSyntaxErrorException e)
+        {
+            // expected
+        }
+        statement.close();
+    }
+
     @Test
     public void testUpdateList() throws Exception
     {
@@ -0,0 +1,123 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.cassandra.cql.jdbc;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class ConnectionBagUnitTest
+{
+	private static PooledCassandraConnection newConnection()
+	{
+		return new PooledCassandraConnection(mock(CassandraConnection.class));
+	}
+
+	@Test
+	public void testBorrowAndRequite() throws Exception
+	{
+		ConnectionBag bag = new ConnectionBag();
+		assertNull(bag.borrow());
+
+		PooledCassandraConnection first = newConnection();
+		PooledCassandraConnection second = newConnection();
+		bag.add(first);
+		bag.add(second);
+		assertNull(bag.borrow());
+		assertEquals(2, bag.size());
+
+		assertTrue(bag.requite(first));
+		assertTrue(bag.requite(second));
+		assertEquals(2, bag.idleCount());
+
+		// the connection returned last by this thread comes first
+		assertSame(second, bag.borrow());
+		assertSame(first, bag.borrow());
+		assertNull(bag.borrow());
+		assertEquals(0, bag.idleCount());
+	}
+
+	@Test
+	public void testRemove() throws Exception
+	{
+		ConnectionBag bag = new ConnectionBag();
+		PooledCassandraConnection connection = newConnection();
+		bag.add(connection);
+
+		assertEquals(ConnectionBag.STATE_IN_USE, bag.remove(connection));
+		assertEquals(ConnectionBag.STATE_REMOVED, bag.remove(connection));
+		assertFalse(bag.requite(connection));
+		assertEquals(0, bag.size());
+		assertNull(bag.borrow());
+	}
+
+	@Test
+	public void testConcurrentBorrowers() throws Exception
+	{
+		final ConnectionBag bag = new ConnectionBag();
+		for (int i = 0; i < 4; i++)
+		{
+			PooledCassandraConnection connection = newConnection();
+			bag.add(connection);
+			bag.requite(connection);
+		}
+
+		final AtomicInteger failures = new AtomicInteger();
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int i = 0; i < 8; i++)
+		{
+			Thread thread = new Thread()
+			{
+				@Override
+				public void run()
+				{
+					for (int n = 0; n < 10000; n++)
+					{
+						PooledCassandraConnection connection = bag.borrow();
+						if (connection == null)
+						{
+							continue;
+						}
+						// nobody else may hold the connection while it is borrowed
+						if (connection.state.get() != ConnectionBag.STATE_IN_USE || !bag.requite(connection))
+						{
+							failures.incrementAndGet();
+						}
+					}
+				}
+			};
+			threads.add(thread);
+			thread.start();
+		}
+		for (Thread thread : threads)
+		{
+			thread.join();
+		}
+
+		assertEquals(0, failures.get());
+		assertEquals(4, bag.idleCount());
+	}
+}
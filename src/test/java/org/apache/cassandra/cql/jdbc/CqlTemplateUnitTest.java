@@ -0,0 +1,65 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.cassandra.cql.jdbc;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class CqlTemplateUnitTest
+{
+    @Test
+    public void testLiterals()
+    {
+        CqlTemplate template = CqlTemplate.parse("INSERT INTO t (k, v, w) VALUES ('it''s', -42, 1.5e3);");
+        assertEquals("INSERT INTO t (k, v, w) VALUES (?, ?, ?);", template.getCql());
+        assertEquals("[STRING:it's, INTEGER:-42, FLOAT:1.5e3]", template.getLiterals().toString());
+
+        template = CqlTemplate.parse("update \"T1\" set b = true, id = 550e8400-e29b-41d4-a716-446655440000, x = 0xCAFE where k in (1, 2)");
+        assertEquals("update \"T1\" set b = ?, id = ?, x = ? where k in (?, ?)", template.getCql());
+        assertEquals("[BOOLEAN:true, UUID:550e8400-e29b-41d4-a716-446655440000, HEX:CAFE, INTEGER:1, INTEGER:2]", template.getLiterals().toString());
+
+        // a subtraction is not a negative number
+        assertEquals("UPDATE c SET n = n -? WHERE k = ?", CqlTemplate.parse("UPDATE c SET n = n -1 WHERE k = 'a'").getCql());
+    }
+
+    @Test
+    public void testUnbindablePositions()
+    {
+        assertEquals("SELECT * FROM t WHERE k = ? LIMIT 10", CqlTemplate.parse("SELECT * FROM t WHERE k = 5 LIMIT 10").getCql());
+        assertEquals("INSERT INTO t (k) VALUES (?) USING TTL 60 AND TIMESTAMP 123", CqlTemplate.parse("INSERT INTO t (k) VALUES (7) USING TTL 60 AND TIMESTAMP 123").getCql());
+        assertEquals("UPDATE t SET l = l + [1, 2], m['a'] = ? WHERE k = ?", CqlTemplate.parse("UPDATE t SET l = l + [1, 2], m['a'] = 'b' WHERE k = 3").getCql());
+        assertEquals("SELECT * FROM t WHERE token(k) > token(42) AND c = ?", CqlTemplate.parse("SELECT * FROM t WHERE token(k) > token(42) AND c = 'x'").getCql());
+        assertEquals("SELECT c1 FROM t2 WHERE c3 = ?", CqlTemplate.parse("SELECT c1 FROM t2 WHERE c3 = 4").getCql());
+    }
+
+    @Test
+    public void testLeftAlone()
+    {
+        assertNull(CqlTemplate.parse("CREATE TABLE t (k int PRIMARY KEY) WITH comment = 'x'"));
+        assertNull(CqlTemplate.parse("USE ks"));
+        assertNull(CqlTemplate.parse("SELECT * FROM t"));
+        assertNull(CqlTemplate.parse("SELECT * FROM t WHERE k = ?"));
+        assertNull(CqlTemplate.parse("SELECT * FROM t WHERE k = 1 -- first"));
+        assertNull(CqlTemplate.parse("SELECT * FROM t WHERE k = 'unterminated"));
+        assertNull(CqlTemplate.parse("SELECT * FROM t WHERE k = 12ab"));
+    }
+}
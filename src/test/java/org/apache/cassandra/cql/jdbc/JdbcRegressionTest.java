@@ -29,11 +29,17 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.sql.SQLSyntaxErrorException;
 import java.sql.Statement;
 import java.sql.Types;
 import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.cassandra.cql.ConnectionDetails;
 import org.apache.cassandra.thrift.ConsistencyLevel;
@@ -41,6 +47,8 @@ import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import com.google.common.util.concurrent.ListenableFuture;
+
 public class JdbcRegressionTest
 {
     private static final String HOST = System.getProperty("host", ConnectionDetails.getHost());
@@ -523,10 +531,141 @@ public class JdbcRegressionTest
     }
     
 
+    @Test
+    public void testAsyncExecution() throws Exception
+    {
+        CassandraStatementExtras statement = statementExtras(con.createStatement());
+        CassandraPreparedStatementExtras insert = (CassandraPreparedStatementExtras) con.prepareStatement("INSERT INTO regressiontest (keyname,bValue,iValue) VALUES( ?, true, ?);")
+            .unwrap(Class.forName("org.apache.cassandra.cql.jdbc.CassandraPreparedStatementExtras"));
+
+        List<ListenableFuture<Integer>> inserts = new ArrayList<ListenableFuture<Integer>>();
+        for (int i = 0; i < 50; i++)
+        {
+            insert.setString(1, "async" + i);
+            insert.setInt(2, i);
+            inserts.add(insert.executeUpdateAsync());
+        }
+        for (ListenableFuture<Integer> future : inserts)
+            assertEquals(Integer.valueOf(0), future.get());
+
+        ResultSet result = statement.executeQueryAsync("SELECT iValue FROM regressiontest WHERE keyname='async42';").get();
+        assertTrue(result.next());
+        assertEquals(42, result.getInt(1));
+
+        assertNull(statement.executeAsync("UPDATE regressiontest SET iValue = 0 WHERE keyname='async42';").get());
+
+        try
+        {
+            statement.executeQueryAsync("SELECT * FROM nosuchtable;").get();
+            fail("the query should have failed");
+        }
+        catch (ExecutionException e)
+        {
+            assertTrue(e.getCause() instanceof SQLSyntaxErrorException);
+        }
+        insert.close();
+    }
+
+    @Test
+    public void testRebinding() throws Exception
+    {
+        PreparedStatement insert = con.prepareStatement("INSERT INTO regressiontest (keyname,bValue,iValue) VALUES( ?, ?, ?);");
+        for (int i = 0; i < 20; i++)
+        {
+            insert.setString(1, "rebind" + i);
+            insert.setBoolean(2, i % 2 == 0);
+            insert.setInt(3, i);
+            insert.executeUpdate();
+        }
+        insert.close();
+
+        PreparedStatement select = con.prepareStatement("SELECT bValue, iValue FROM regressiontest WHERE keyname = ?;");
+        for (int i : new int[] { 7, 12 })
+        {
+            select.setString(1, "rebind" + i);
+            ResultSet result = select.executeQuery();
+            assertTrue(result.next());
+            assertEquals(i % 2 == 0, result.getBoolean(1));
+            assertEquals(i, result.getInt(2));
+        }
+        select.close();
+    }
+
+    @Test
+    public void testRowPublisher() throws Exception
+    {
+        Statement statement = con.createStatement();
+        for (int i = 0; i < 10; i++)
+            statement.executeUpdate("INSERT INTO regressiontest (keyname,bValue,iValue) VALUES( 'publish" + i + "', true, " + i + ");");
+
+        final List<Row> received = new ArrayList<Row>();
+        final CountDownLatch completed = new CountDownLatch(1);
+        final Subscription[] subscription = new Subscription[1];
+        statementExtras(statement).publish("SELECT keyname,iValue FROM regressiontest;").subscribe(new Subscriber<Row>()
+        {
+            public void onSubscribe(Subscription s)
+            {
+                subscription[0] = s;
+                s.request(3);
+            }
+
+            public void onNext(Row row)
+            {
+                received.add(row);
+            }
+
+            public void onError(Throwable error)
+            {
+                completed.countDown();
+            }
+
+            public void onComplete()
+            {
+                completed.countDown();
+            }
+        });
+
+        // only the requested rows are delivered
+        assertFalse(completed.await(1, TimeUnit.SECONDS));
+        assertEquals(3, received.size());
+        assertNotNull(received.get(0).getString("keyname"));
+
+        subscription[0].request(Long.MAX_VALUE);
+        assertTrue(completed.await(10, TimeUnit.SECONDS));
+        assertTrue(received.size() >= 10);
+        statement.close();
+    }
+
+    @Test
+    public void testQueryTimeout() throws Exception
+    {
+        PreparedStatement statement = con.prepareStatement("SELECT keyname FROM regressiontest WHERE keyname = ?;");
+        assertEquals(0, statement.getQueryTimeout());
+        statement.setQueryTimeout(5);
+        assertEquals(5, statement.getQueryTimeout());
+        statement.setString(1, "key0");
+        statement.executeQuery().close();
+
+        con.setNetworkTimeout(null, 10000);
+        assertEquals(10000, con.getNetworkTimeout());
+        statement.executeQuery().close();
+        con.setNetworkTimeout(null, 0);
+        statement.close();
+    }
+
+    @Test(expected=SQLSyntaxErrorException.class)
+    public void testNegativeQueryTimeout() throws Exception
+    {
+        con.createStatement().setQueryTimeout(-1);
+    }
+
     @Test
     public void isValid() throws Exception
     {
-//    	assert con.isValid(3);
+        assertTrue(con.isValid(3));
+        // a connection is not trusted any more once it failed
+        ((CassandraConnection) con).timeOfLastFailure = System.currentTimeMillis();
+        assertTrue(con.isValid(3));
     }
     
     @Test(expected=SQLException.class)
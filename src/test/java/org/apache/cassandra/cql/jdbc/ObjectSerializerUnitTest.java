@@ -0,0 +1,233 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.cassandra.cql.jdbc;
+
+import static org.junit.Assert.*;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.UUID;
+
+import org.junit.Test;
+
+public class ObjectSerializerUnitTest
+{
+    public static class Point implements Externalizable
+    {
+        int x, y;
+
+        List<String> labels;
+
+        public Point()
+        {
+        }
+
+        Point(int x, int y, List<String> labels)
+        {
+            this.x = x;
+            this.y = y;
+            this.labels = labels;
+        }
+
+        public void writeExternal(ObjectOutput out) throws IOException
+        {
+            out.writeInt(x);
+            out.writeInt(y);
+            out.writeObject(labels);
+        }
+
+        @SuppressWarnings("unchecked")
+        public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException
+        {
+            x = in.readInt();
+            y = in.readInt();
+            labels = (List<String>) in.readObject();
+        }
+    }
+
+    @Test
+    public void testCompactRoundTrips() throws Exception
+    {
+        Timestamp timestamp = new Timestamp(1234567L);
+        timestamp.setNanos(567000123);
+        Map<String, Object> map = new HashMap<String, Object>();
+        map.put("a", -1L);
+        map.put("b", null);
+        Object[] values = { "text", "", true, false, (byte) -3, (short) 300, 'x', 0, -1, Integer.MIN_VALUE, Long.MAX_VALUE,
+                            1.5f, -2.25, new BigInteger("-123456789012345678901234567890"), new BigDecimal("-3.14159"),
+                            new Date(-42L), new java.sql.Date(86400000L), timestamp, UUID.randomUUID(),
+                            new ArrayList<Object>(Arrays.asList(1, "two", null)), new LinkedHashSet<String>(Arrays.asList("c", "a")), map,
+                            new TreeSet<Integer>(Arrays.asList(3, 1, 2)), null };
+        for (Object value : values)
+        {
+            assertEquals(value, roundTrip(CompactObjectSerializer.INSTANCE, value));
+        }
+
+        // a tag and a single byte for small numbers
+        assertEquals(2, CompactObjectSerializer.INSTANCE.serialize(42L).remaining());
+
+        // a tree set keeps its class through Java serialization
+        assertEquals(TreeSet.class, roundTrip(CompactObjectSerializer.INSTANCE, new TreeSet<Integer>()).getClass());
+        assertArrayEquals(new byte[] { 1, 2 }, (byte[]) roundTrip(CompactObjectSerializer.INSTANCE, new byte[] { 1, 2 }));
+    }
+
+    @Test
+    public void testExternalizable() throws Exception
+    {
+        Point point = (Point) roundTrip(CompactObjectSerializer.INSTANCE, new Point(3, -4, new ArrayList<String>(Arrays.asList("origin"))));
+        assertEquals(3, point.x);
+        assertEquals(-4, point.y);
+        assertEquals(Arrays.asList("origin"), point.labels);
+
+        // far smaller than with Java serialization, which writes the class descriptors
+        Point large = new Point(1, 2, new ArrayList<String>());
+        assertTrue(CompactObjectSerializer.INSTANCE.serialize(large).remaining() < JavaObjectSerializer.INSTANCE.serialize(large).remaining() / 2);
+    }
+
+    private static volatile boolean forbiddenInitialized;
+
+    // a class whose initialization must never run when it is named in a payload
+    public static class Forbidden
+    {
+        static
+        {
+            forbiddenInitialized = true;
+        }
+    }
+
+    @Test
+    public void testExternalizableClassChecked() throws Exception
+    {
+        ByteBuffer point = CompactObjectSerializer.INSTANCE.serialize(new Point(1, 2, null));
+        assertEquals(1, ((Point) CompactObjectSerializer.INSTANCE.deserialize(point.duplicate(), Externalizable.class)).x);
+        try
+        {
+            CompactObjectSerializer.INSTANCE.deserialize(point.duplicate(), String.class);
+            fail("a point should not be read as a string");
+        }
+        catch (SQLException e)
+        {
+            // expected
+        }
+
+        // the tag of an externalizable object naming a class that is not one, its name short enough for a single byte length
+        byte[] forbidden = Forbidden.class.getName().getBytes("UTF-8");
+        ByteBuffer tampered = ByteBuffer.allocate(2 + forbidden.length);
+        tampered.put(point.get(0)).put((byte) forbidden.length).put(forbidden).flip();
+        try
+        {
+            CompactObjectSerializer.INSTANCE.deserialize(tampered, Object.class);
+            fail("a class that is not externalizable should not be instantiated");
+        }
+        catch (SQLException e)
+        {
+            assertFalse(forbiddenInitialized);
+        }
+    }
+
+    public static class Holder implements Serializable
+    {
+        private static final long serialVersionUID = 1L;
+
+        Object payload;
+
+        Holder(Object payload)
+        {
+            this.payload = payload;
+        }
+    }
+
+    public static class Gadget implements Serializable
+    {
+        private static final long serialVersionUID = 1L;
+    }
+
+    @Test
+    public void testJavaClassesChecked() throws Exception
+    {
+        Holder holder = (Holder) JavaObjectSerializer.INSTANCE.deserialize(JavaObjectSerializer.INSTANCE.serialize(new Holder(new ArrayList<Object>(Arrays.asList(1L, "a")))), Holder.class);
+        assertEquals(Arrays.asList(1L, "a"), holder.payload);
+        Timestamp timestamp = new Timestamp(1000L);
+        assertEquals(timestamp, JavaObjectSerializer.INSTANCE.deserialize(JavaObjectSerializer.INSTANCE.serialize(timestamp), Date.class));
+
+        // neither an outermost object of another type nor a nested one of a class of the application
+        ByteBuffer[] refused = { JavaObjectSerializer.INSTANCE.serialize(new Gadget()),
+                                 JavaObjectSerializer.INSTANCE.serialize(new Holder(new Gadget())),
+                                 CompactObjectSerializer.INSTANCE.serialize(new ArrayList<Object>(Arrays.asList(new Gadget()))) };
+        Class<?>[] types = { String.class, Holder.class, List.class };
+        for (int i = 0; i < refused.length; i++)
+        {
+            try
+            {
+                CompactObjectSerializer.INSTANCE.deserialize(refused[i], types[i]);
+                fail("bytes " + i + " should not be read as a " + types[i].getSimpleName());
+            }
+            catch (SQLException e)
+            {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testLengthBeyondInput() throws Exception
+    {
+        ByteBuffer bytes = CompactObjectSerializer.INSTANCE.serialize(new byte[0]);
+        ByteBuffer forged = ByteBuffer.wrap(new byte[] { bytes.get(0), (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07 });
+        try
+        {
+            CompactObjectSerializer.INSTANCE.deserialize(forged, byte[].class);
+            fail("a length past the end of the bytes should be refused");
+        }
+        catch (SQLException e)
+        {
+            assertTrue(e.getCause().getMessage(), e.getCause().getMessage().contains("runs past the end"));
+        }
+    }
+
+    @Test
+    public void testReadsJavaSerialization() throws Exception
+    {
+        ByteBuffer legacy = JavaObjectSerializer.INSTANCE.serialize(new BigDecimal("2.5"));
+        assertEquals(new BigDecimal("2.5"), CompactObjectSerializer.INSTANCE.deserialize(legacy, Number.class));
+    }
+
+    private static Object roundTrip(ObjectSerializer serializer, Object value) throws Exception
+    {
+        return serializer.deserialize(serializer.serialize(value), Object.class);
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.cassandra.cql.jdbc;
+
+import static org.junit.Assert.*;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.sql.ParameterMetaData;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.cassandra.thrift.CqlPreparedResult;
+import org.junit.Test;
+
+public class ParameterBinderUnitTest
+{
+    private static final String MARSHAL = "org.apache.cassandra.db.marshal.";
+
+    @Test
+    public void testConversions() throws Exception
+    {
+        ParameterBinder bigint = new ParameterBinder("k", MARSHAL + "LongType");
+        assertTrue(bigint.accepts(Long.class));
+        assertFalse(bigint.accepts(Integer.class));
+        assertEquals(42L, JdbcLong.instance.compose(bigint.encode(1, 42)).longValue());
+        assertEquals(42L, JdbcLong.instance.compose(bigint.encode(1, "42")).longValue());
+
+        ParameterBinder integer = new ParameterBinder("i", MARSHAL + "Int32Type");
+        assertEquals(7, JdbcInt32.instance.compose(integer.encode(1, (short) 7)).intValue());
+        assertEquals(4, integer.encode(1, BigInteger.valueOf(7)).remaining());
+
+        ParameterBinder timestamp = new ParameterBinder("t", MARSHAL + "TimestampType");
+        assertEquals(1000L, JdbcDate.instance.compose(timestamp.encode(1, 1000L)).getTime());
+        assertEquals(0, new ParameterBinder("v", MARSHAL + "UTF8Type").encode(1, null).remaining());
+    }
+
+    @Test
+    public void testMismatches() throws Exception
+    {
+        ParameterBinder integer = new ParameterBinder("i", MARSHAL + "Int32Type");
+        for (Object value : new Object[] { Long.MAX_VALUE, 1.5, "one", new Object() })
+        {
+            try
+            {
+                integer.encode(2, value);
+                fail(value + " should not be bound to an int");
+            }
+            catch (SQLException e)
+            {
+                assertTrue(e.getMessage(), e.getMessage().contains("parameter 2 of type int"));
+            }
+        }
+    }
+
+    @Test
+    public void testNonFiniteAndBooleans() throws Exception
+    {
+        ParameterBinder decimal = new ParameterBinder("d", MARSHAL + "DecimalType");
+        ParameterBinder bool = new ParameterBinder("b", MARSHAL + "BooleanType");
+        for (Object[] binding : new Object[][] { { decimal, Double.NaN }, { decimal, Float.NEGATIVE_INFINITY }, { bool, 1 }, { bool, 0.0 } })
+        {
+            try
+            {
+                ((ParameterBinder) binding[0]).encode(1, binding[1]);
+                fail(binding[1] + " should not be bound to " + ((ParameterBinder) binding[0]).getTypeName());
+            }
+            catch (SQLException e)
+            {
+                // expected
+            }
+        }
+        assertEquals(1.5, JdbcDecimal.instance.compose(decimal.encode(1, 1.5)).doubleValue(), 0);
+    }
+
+    @Test
+    public void testCollections() throws Exception
+    {
+        ParameterBinder list = new ParameterBinder("l", MARSHAL + "ListType(" + MARSHAL + "LongType)");
+        assertEquals("list<bigint>", list.getTypeName());
+        assertEquals(Types.OTHER, list.getJdbcType());
+
+        // the elements are converted to the element type
+        ByteBuffer encoded = list.encode(1, Arrays.asList(1, 2, 3));
+        List<Long> decoded = ListMaker.getInstance(JdbcLong.instance).compose(encoded);
+        assertEquals(Arrays.asList(1L, 2L, 3L), decoded);
+
+        ParameterBinder map = new ParameterBinder("m", MARSHAL + "MapType(" + MARSHAL + "UTF8Type," + MARSHAL + "Int32Type)");
+        assertEquals("map<text,int>", map.getTypeName());
+        try
+        {
+            map.encode(1, Arrays.asList(1));
+            fail("a list should not be bound to a map");
+        }
+        catch (SQLException e)
+        {
+            // expected
+        }
+    }
+
+    @Test
+    public void testMetaData() throws Exception
+    {
+        CqlPreparedResult result = new CqlPreparedResult(1, 2);
+        result.setVariable_types(Arrays.asList(MARSHAL + "UTF8Type", MARSHAL + "ReversedType(" + MARSHAL + "Int32Type)"));
+        result.setVariable_names(Arrays.asList("k", "v"));
+        ParameterMetaData metaData = new CassandraParameterMetaData(ParameterBinder.forResult(result));
+        assertEquals(2, metaData.getParameterCount());
+        assertEquals(Types.VARCHAR, metaData.getParameterType(1));
+        assertEquals("int", metaData.getParameterTypeName(2));
+        assertEquals(Integer.class.getName(), metaData.getParameterClassName(2));
+        assertTrue(metaData.isSigned(2));
+
+        // CQL 2 does not describe the parameters
+        metaData = new CassandraParameterMetaData(ParameterBinder.forResult(new CqlPreparedResult(1, 1)));
+        assertEquals(1, metaData.getParameterCount());
+        try
+        {
+            metaData.getParameterType(1);
+            fail("the parameter type should be unknown");
+        }
+        catch (SQLFeatureNotSupportedException e)
+        {
+            // expected
+        }
+    }
+}
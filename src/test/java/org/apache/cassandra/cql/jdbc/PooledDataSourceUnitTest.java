@@ -0,0 +1,476 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.cassandra.cql.jdbc;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+public class PooledDataSourceUnitTest
+{
+	private static CassandraDataSource newDataSource() throws Exception
+	{
+		CassandraDataSource dataSource = mock(CassandraDataSource.class);
+		when(dataSource.getServerName()).thenReturn("localhost");
+		when(dataSource.getPooledConnection()).thenAnswer(new Answer<PooledCassandraConnection>()
+		{
+			public PooledCassandraConnection answer(InvocationOnMock invocation)
+			{
+				return new PooledCassandraConnection(mock(CassandraConnection.class));
+			}
+		});
+		return dataSource;
+	}
+
+	@Test
+	public void testBoundedPool() throws Exception
+	{
+		CassandraDataSource dataSource = newDataSource();
+		PooledCassandraDataSource pool = new PooledCassandraDataSource(dataSource);
+		pool.setMinIdle(1);
+		pool.setMaxTotal(2);
+		pool.setBorrowTimeout(50);
+
+		Connection first = pool.getConnection();
+		Connection second = pool.getConnection();
+		try
+		{
+			pool.getConnection();
+			fail("the pool should be exhausted");
+		}
+		catch (SQLTransientConnectionException e)
+		{
+			// expected
+		}
+
+		// a returned connection is reused rather than closed
+		second.close();
+		Connection third = pool.getConnection();
+		verify(dataSource, times(2)).getPooledConnection();
+		third.close();
+		first.close();
+		pool.close();
+	}
+
+	@Test
+	public void testWarmUp() throws Exception
+	{
+		final CassandraConnection physicalConnection = mock(CassandraConnection.class);
+		CassandraPreparedStatement statement = mock(CassandraPreparedStatement.class);
+		when(statement.getCql()).thenReturn("SELECT * FROM t");
+		when(physicalConnection.prepareStatement("SELECT * FROM t")).thenReturn(statement);
+		CassandraDataSource dataSource = mock(CassandraDataSource.class);
+		when(dataSource.getServerName()).thenReturn("localhost");
+		when(dataSource.getPooledConnection()).thenAnswer(new Answer<PooledCassandraConnection>()
+		{
+			public PooledCassandraConnection answer(InvocationOnMock invocation)
+			{
+				return new PooledCassandraConnection(physicalConnection);
+			}
+		});
+
+		PooledCassandraDataSource pool = new PooledCassandraDataSource(dataSource);
+		pool.setMinIdle(3);
+		pool.setWarmUpStatements(Arrays.asList("SELECT * FROM t"));
+		assertFalse(pool.isReady());
+
+		assertEquals(3, pool.warmUp());
+		assertTrue(pool.isReady());
+		verify(physicalConnection, times(3)).prepareStatement("SELECT * FROM t");
+
+		// the pool is warm, borrowing does not open anything
+		assertEquals(0, pool.warmUp());
+		pool.getConnection().close();
+		verify(dataSource, times(3)).getPooledConnection();
+		pool.close();
+	}
+
+	// a data source whose connections count how many of them were closed
+	private static CassandraDataSource newDataSource(final boolean valid, final AtomicInteger closed) throws Exception
+	{
+		CassandraDataSource dataSource = mock(CassandraDataSource.class);
+		when(dataSource.getServerName()).thenReturn("localhost");
+		when(dataSource.getPooledConnection()).thenAnswer(new Answer<PooledCassandraConnection>()
+		{
+			public PooledCassandraConnection answer(InvocationOnMock invocation) throws Exception
+			{
+				CassandraConnection connection = mock(CassandraConnection.class);
+				when(connection.isValid(anyInt())).thenReturn(valid);
+				when(connection.getClientInfo(anyString())).thenThrow(new SQLException("a mocked error"));
+				doAnswer(new Answer<Void>()
+				{
+					public Void answer(InvocationOnMock invocation)
+					{
+						closed.incrementAndGet();
+						return null;
+					}
+				}).when(connection).close();
+				return new PooledCassandraConnection(connection);
+			}
+		});
+		return dataSource;
+	}
+
+	@Test
+	public void testIdleEviction() throws Exception
+	{
+		AtomicInteger closed = new AtomicInteger();
+		CassandraDataSource dataSource = newDataSource(true, closed);
+		PooledCassandraDataSource pool = new PooledCassandraDataSource(dataSource);
+		pool.setMinIdle(1);
+		pool.setIdleTimeout(0);
+
+		Connection first = pool.getConnection();
+		Connection second = pool.getConnection();
+		Connection third = pool.getConnection();
+		first.close();
+		second.close();
+
+		// only the idle connections beyond minIdle go
+		pool.maintain();
+		assertEquals(1, closed.get());
+		third.close();
+		pool.maintain();
+		assertEquals(2, closed.get());
+		verify(dataSource, times(3)).getPooledConnection();
+		pool.close();
+	}
+
+	@Test
+	public void testMaxLifetimeAndValidation() throws Exception
+	{
+		AtomicInteger closed = new AtomicInteger();
+		CassandraDataSource dataSource = newDataSource(false, closed);
+		PooledCassandraDataSource pool = new PooledCassandraDataSource(dataSource);
+		pool.setMinIdle(1);
+		pool.setMaxLifetime(50);
+		pool.setValidationInterval(0);
+
+		Connection connection = pool.getConnection();
+		Thread.sleep(100);
+		// an expired connection is closed when it is returned
+		connection.close();
+		assertEquals(1, closed.get());
+
+		// and the pool is refilled to minIdle
+		pool.maintain();
+		verify(dataSource, times(2)).getPooledConnection();
+		Thread.sleep(100);
+		pool.maintain();
+		assertEquals(2, closed.get());
+		verify(dataSource, times(3)).getPooledConnection();
+
+		pool.close();
+	}
+
+	@Test
+	public void testValidation() throws Exception
+	{
+		AtomicInteger closed = new AtomicInteger();
+		CassandraDataSource dataSource = newDataSource(false, closed);
+		PooledCassandraDataSource pool = new PooledCassandraDataSource(dataSource);
+		pool.setMinIdle(1);
+		pool.setMaxLifetime(0);
+		pool.setValidationInterval(1);
+
+		pool.getConnection().close();
+		Thread.sleep(5);
+
+		// idle connections that are not valid any more are replaced
+		pool.maintain();
+		assertEquals(1, closed.get());
+		verify(dataSource, times(2)).getPooledConnection();
+		pool.close();
+	}
+
+	@Test
+	public void testQuarantine() throws Exception
+	{
+		AtomicInteger closed = new AtomicInteger();
+		CassandraDataSource dataSource = newDataSource(false, closed);
+		PooledCassandraDataSource pool = new PooledCassandraDataSource(dataSource);
+		pool.setMinIdle(0);
+		pool.setMaxTotal(1);
+		pool.setBorrowTimeout(5000);
+
+		Connection connection = pool.getConnection();
+		try
+		{
+			connection.getClientInfo("ApplicationName");
+			fail("the physical connection should fail");
+		}
+		catch (SQLException e)
+		{
+			// the error is only recorded, the connection is validated in the background once returned
+			assertEquals(0, closed.get());
+		}
+		connection.close();
+
+		// the borrower waits for the validation, which closes the invalid connection and makes room
+		pool.getConnection().close();
+		assertEquals(1, closed.get());
+		verify(dataSource, times(2)).getPooledConnection();
+		pool.close();
+	}
+
+	@Test
+	public void testHostPools() throws Exception
+	{
+		AtomicInteger closedFirst = new AtomicInteger();
+		AtomicInteger closedSecond = new AtomicInteger();
+		CassandraDataSource first = newDataSource(true, closedFirst);
+		CassandraDataSource second = newDataSource(true, closedSecond);
+		PooledCassandraDataSource pool = new PooledCassandraDataSource(first);
+		assertTrue(pool.addHost("other", second));
+		assertFalse(pool.addHost("other", second));
+		pool.setHostPoolSize("other", 0, 2);
+
+		// borrowers go to the least loaded host, relative to its size
+		Connection a = pool.getConnection();
+		Connection b = pool.getConnection();
+		assertEquals(1, pool.getInFlight("localhost"));
+		assertEquals(1, pool.getInFlight("other"));
+		Connection c = pool.getConnection();
+		assertEquals(2, pool.getInFlight("localhost"));
+
+		// a drained host takes no more borrowers and closes its connections as they are returned
+		a.close();
+		b.close();
+		assertTrue(pool.drainHost("localhost"));
+		assertEquals(1, closedFirst.get());
+		c.close();
+		assertEquals(2, closedFirst.get());
+		pool.getConnection().close();
+		verify(first, times(2)).getPooledConnection();
+		assertEquals(-1, pool.getInFlight("localhost"));
+		assertEquals(0, closedSecond.get());
+		pool.close();
+		assertEquals(1, closedSecond.get());
+	}
+
+	@Test
+	public void testAsyncBorrowing() throws Exception
+	{
+		CassandraDataSource dataSource = newDataSource(true, new AtomicInteger());
+		PooledCassandraDataSource pool = new PooledCassandraDataSource(dataSource);
+		pool.setMinIdle(0);
+		pool.setMaxTotal(1);
+		pool.setBorrowTimeout(100);
+
+		Connection first = pool.getConnectionAsync().get(5, TimeUnit.SECONDS);
+
+		// the second borrower is served once the connection is returned
+		ListenableFuture<Connection> second = pool.getConnectionAsync();
+		assertFalse(second.isDone());
+		first.close();
+		Connection connection = second.get(5, TimeUnit.SECONDS);
+		verify(dataSource, times(1)).getPooledConnection();
+
+		// and a borrower that waits too long is told so
+		try
+		{
+			pool.getConnectionAsync().get(5, TimeUnit.SECONDS);
+			fail("the pool should be exhausted");
+		}
+		catch (ExecutionException e)
+		{
+			assertTrue(e.getCause() instanceof SQLTransientConnectionException);
+		}
+		connection.close();
+		pool.close();
+	}
+
+	@Test
+	public void testClosedWhileWaiting() throws Exception
+	{
+		CassandraDataSource dataSource = newDataSource(true, new AtomicInteger());
+		final PooledCassandraDataSource pool = new PooledCassandraDataSource(dataSource);
+		pool.setMinIdle(0);
+		pool.setMaxTotal(1);
+		pool.setBorrowTimeout(5000);
+
+		Connection first = pool.getConnection();
+		final AtomicReference<Exception> error = new AtomicReference<Exception>();
+		Thread waiter = new Thread()
+		{
+			public void run()
+			{
+				try
+				{
+					pool.getConnection().close();
+				}
+				catch (Exception e)
+				{
+					error.set(e);
+				}
+			}
+		};
+		waiter.start();
+		Thread.sleep(100);
+
+		// the waiter gets the permit of the returned connection but must not open a new one
+		pool.close();
+		first.close();
+		waiter.join(5000);
+		assertTrue(error.get() instanceof SQLTransientConnectionException);
+		verify(dataSource, times(1)).getPooledConnection();
+	}
+
+	@Test
+	public void testAsyncTimeoutWhileMaintaining() throws Exception
+	{
+		PooledCassandraDataSource pool = new PooledCassandraDataSource(newDataSource(true, new AtomicInteger()));
+		pool.setMinIdle(0);
+		pool.setMaxTotal(1);
+		pool.setBorrowTimeout(100);
+		Connection first = pool.getConnection();
+
+		// maintenance busy with a slow validation
+		final CountDownLatch maintaining = new CountDownLatch(1);
+		assertTrue(pool.execute(new Runnable()
+		{
+			public void run()
+			{
+				try
+				{
+					maintaining.await(10, TimeUnit.SECONDS);
+				}
+				catch (InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+				}
+			}
+		}));
+
+		long start = System.nanoTime();
+		try
+		{
+			pool.getConnectionAsync().get(5, TimeUnit.SECONDS);
+			fail("the pool should be exhausted");
+		}
+		catch (ExecutionException e)
+		{
+			assertTrue(e.getCause() instanceof SQLTransientConnectionException);
+		}
+		assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 2000);
+		maintaining.countDown();
+		first.close();
+		pool.close();
+	}
+
+	@Test
+	public void testPriorityLanes() throws Exception
+	{
+		PooledCassandraDataSource pool = new PooledCassandraDataSource(newDataSource(true, new AtomicInteger()));
+		pool.setMinIdle(0);
+		pool.setMaxTotal(3);
+		pool.setReservedConnections(1);
+		pool.setBorrowTimeout(50);
+
+		Connection bulk1 = pool.getConnection(Priority.LOW);
+		Connection bulk2 = pool.getConnection(Priority.LOW);
+		try
+		{
+			pool.getConnection(Priority.LOW);
+			fail("the LOW lane should not get the reserved connection");
+		}
+		catch (SQLTransientConnectionException e)
+		{
+			// expected
+		}
+		pool.setBorrowTimeout(5000);
+		ListenableFuture<Connection> bulk3 = pool.getConnectionAsync(Priority.LOW);
+
+		// the reserved connection is still there for the HIGH lane
+		Connection interactive = pool.getConnection();
+		assertFalse(bulk3.isDone());
+
+		// and returning it does not let the LOW lane in
+		interactive.close();
+		assertFalse(bulk3.isDone());
+		bulk1.close();
+		bulk3.get(5, TimeUnit.SECONDS).close();
+
+		bulk2.close();
+		pool.close();
+	}
+
+	@Test
+	public void testStatementPropagation() throws Exception
+	{
+		final List<CassandraConnection> physicalConnections = new CopyOnWriteArrayList<CassandraConnection>();
+		CassandraDataSource dataSource = mock(CassandraDataSource.class);
+		when(dataSource.getServerName()).thenReturn("localhost");
+		when(dataSource.getPooledConnection()).thenAnswer(new Answer<PooledCassandraConnection>()
+		{
+			public PooledCassandraConnection answer(InvocationOnMock invocation) throws Exception
+			{
+				CassandraConnection connection = mock(CassandraConnection.class);
+				CassandraPreparedStatement statement = mock(CassandraPreparedStatement.class);
+				when(statement.getCql()).thenReturn("SELECT * FROM t");
+				when(connection.prepareStatement("SELECT * FROM t")).thenReturn(statement);
+				physicalConnections.add(connection);
+				return new PooledCassandraConnection(connection);
+			}
+		});
+		PooledCassandraDataSource pool = new PooledCassandraDataSource(dataSource);
+		pool.setMinIdle(0);
+
+		Connection first = pool.getConnection();
+		pool.getConnection().close();
+		first.prepareStatement("SELECT * FROM t").close();
+
+		// the idle connection prepares the statement in the background
+		verify(physicalConnections.get(1), timeout(5000)).prepareCached("SELECT * FROM t");
+
+		// and so does a connection once it is returned
+		Connection third = pool.getConnection();
+		first.close();
+		verify(physicalConnections.get(0), timeout(5000)).prepareCached("SELECT * FROM t");
+		third.close();
+		pool.close();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMaxTotalBelowMinIdle() throws Exception
+	{
+		PooledCassandraDataSource pool = new PooledCassandraDataSource(newDataSource());
+		pool.setMinIdle(4);
+		pool.setMaxTotal(2);
+	}
+}
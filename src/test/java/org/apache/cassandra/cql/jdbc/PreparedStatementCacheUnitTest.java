@@ -0,0 +1,93 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.cassandra.cql.jdbc;
+
+import static org.junit.Assert.*;
+
+import org.apache.cassandra.thrift.CqlPreparedResult;
+import org.junit.Test;
+
+public class PreparedStatementCacheUnitTest
+{
+    private static CqlPreparedResult prepared(int itemId)
+    {
+        return new CqlPreparedResult(itemId, 1);
+    }
+
+    // what a connection does: look the statement up, prepare and cache it on a miss
+    private static void use(PreparedStatementCache cache, String cql)
+    {
+        if (cache.get("ks", cql) == null) cache.put("ks", cql, prepared(cql.hashCode()));
+    }
+
+    @Test
+    public void testHitsAndKeyspaces() throws Exception
+    {
+        PreparedStatementCache cache = new PreparedStatementCache(10, 1024);
+        assertNull(cache.get("ks", "SELECT * FROM t"));
+        assertTrue(cache.put("ks", "SELECT * FROM t", prepared(1)));
+        assertEquals(1, cache.get("ks", "SELECT * FROM t").getItemId());
+
+        // the same CQL means another table in another keyspace
+        assertNull(cache.get("other", "SELECT * FROM t"));
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getMisses());
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getBytes());
+    }
+
+    @Test
+    public void testFrequentStatementsStay() throws Exception
+    {
+        PreparedStatementCache cache = new PreparedStatementCache(2, 1024);
+        // one-off statements do not push out the statements in use
+        for (int i = 0; i < 100; i++)
+        {
+            use(cache, "SELECT * FROM a");
+            use(cache, "SELECT * FROM b");
+            use(cache, "SELECT * FROM a WHERE k = " + i);
+        }
+        assertNotNull(cache.get("ks", "SELECT * FROM a"));
+        assertNotNull(cache.get("ks", "SELECT * FROM b"));
+
+        // a statement that becomes popular gets in eventually
+        for (int i = 0; i < 10; i++)
+        {
+            use(cache, "SELECT * FROM c");
+        }
+        assertNotNull(cache.get("ks", "SELECT * FROM c"));
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testByteBound() throws Exception
+    {
+        PreparedStatementCache cache = new PreparedStatementCache(100, 64);
+        assertTrue(cache.put("ks", "SELECT * FROM a", prepared(1)));
+        assertTrue(cache.getBytes() <= 64);
+
+        // larger than the whole cache
+        assertFalse(cache.put("ks", "SELECT * FROM a_table_with_a_rather_long_name", prepared(2)));
+        assertEquals(1, cache.size());
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.cassandra.cql.jdbc;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import org.apache.cassandra.thrift.ConsistencyLevel;
+import org.apache.cassandra.thrift.TimedOutException;
+import org.apache.cassandra.thrift.UnavailableException;
+import org.junit.Test;
+
+public class RetryPolicyUnitTest
+{
+    private static CassandraStatementExtras statement(boolean idempotent)
+    {
+        CassandraStatementExtras statement = mock(CassandraStatementExtras.class);
+        when(statement.isIdempotent()).thenReturn(idempotent);
+        return statement;
+    }
+
+    @Test
+    public void testDefaultPolicy() throws Exception
+    {
+        RetryPolicy policy = DefaultRetryPolicy.INSTANCE;
+        TimedOutException timeout = new TimedOutException();
+
+        RetryDecision decision = policy.onReadTimeout(statement(false), ConsistencyLevel.QUORUM, timeout, 0);
+        assertEquals(RetryDecision.Type.RETRY, decision.getType());
+        assertEquals(ConsistencyLevel.QUORUM, decision.getConsistencyLevel());
+        assertEquals(RetryDecision.Type.RETHROW, policy.onReadTimeout(statement(false), ConsistencyLevel.QUORUM, timeout, 1).getType());
+
+        assertEquals(RetryDecision.Type.RETHROW, policy.onWriteTimeout(statement(false), ConsistencyLevel.QUORUM, timeout, 0).getType());
+        assertEquals(RetryDecision.Type.RETRY, policy.onWriteTimeout(statement(true), ConsistencyLevel.QUORUM, timeout, 0).getType());
+
+        assertEquals(RetryDecision.Type.RETHROW, policy.onUnavailable(statement(true), ConsistencyLevel.QUORUM, new UnavailableException(), 0).getType());
+    }
+
+    @Test
+    public void testDowngradingPolicy() throws Exception
+    {
+        RetryPolicy policy = DowngradingConsistencyRetryPolicy.INSTANCE;
+
+        TimedOutException timeout = new TimedOutException();
+        timeout.setAcknowledged_by(2);
+        RetryDecision decision = policy.onReadTimeout(statement(false), ConsistencyLevel.ALL, timeout, 0);
+        assertEquals(RetryDecision.Type.RETRY, decision.getType());
+        assertEquals(ConsistencyLevel.TWO, decision.getConsistencyLevel());
+
+        // a non idempotent write that reached a replica is ignored
+        assertEquals(RetryDecision.Type.IGNORE, policy.onWriteTimeout(statement(false), ConsistencyLevel.QUORUM, timeout, 0).getType());
+        decision = policy.onWriteTimeout(statement(true), ConsistencyLevel.QUORUM, timeout, 0);
+        assertEquals(RetryDecision.Type.RETRY, decision.getType());
+        assertEquals(ConsistencyLevel.TWO, decision.getConsistencyLevel());
+
+        timeout.setAcknowledged_by(0);
+        assertEquals(RetryDecision.Type.RETHROW, policy.onWriteTimeout(statement(false), ConsistencyLevel.QUORUM, timeout, 0).getType());
+
+        decision = policy.onUnavailable(statement(false), ConsistencyLevel.QUORUM, new UnavailableException(), 0);
+        assertEquals(RetryDecision.Type.RETRY, decision.getType());
+        assertEquals(ConsistencyLevel.ONE, decision.getConsistencyLevel());
+        assertEquals(RetryDecision.Type.RETHROW, policy.onUnavailable(statement(false), ConsistencyLevel.ONE, new UnavailableException(), 0).getType());
+    }
+
+    @Test
+    public void testRetryBudget() throws Exception
+    {
+        RetryBudget budget = new RetryBudget(0.5);
+
+        // spend the initial reserve
+        int retries = 0;
+        while (budget.tryAcquire()) retries++;
+        assertEquals(10, retries);
+
+        // two requests pay for one more retry
+        budget.deposit();
+        assertFalse(budget.tryAcquire());
+        budget.deposit();
+        assertTrue(budget.tryAcquire());
+        assertFalse(budget.tryAcquire());
+
+        RetryBudget none = new RetryBudget(0);
+        for (int i = 0; i < 10; i++) assertTrue(none.tryAcquire());
+        none.deposit();
+        assertFalse(none.tryAcquire());
+    }
+}
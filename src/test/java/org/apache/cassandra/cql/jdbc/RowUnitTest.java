@@ -0,0 +1,140 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.cassandra.cql.jdbc;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.nio.ByteBuffer;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.cassandra.thrift.Column;
+import org.apache.cassandra.thrift.CqlMetadata;
+import org.apache.cassandra.thrift.CqlResult;
+import org.apache.cassandra.thrift.CqlResultType;
+import org.apache.cassandra.thrift.CqlRow;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.junit.Test;
+
+public class RowUnitTest
+{
+    private static CqlResult result(int rows)
+    {
+        Map<ByteBuffer, String> nameTypes = new HashMap<ByteBuffer, String>();
+        Map<ByteBuffer, String> valueTypes = new HashMap<ByteBuffer, String>();
+        nameTypes.put(ByteBufferUtil.bytes("name"), "UTF8Type");
+        nameTypes.put(ByteBufferUtil.bytes("value"), "UTF8Type");
+        valueTypes.put(ByteBufferUtil.bytes("name"), "UTF8Type");
+        valueTypes.put(ByteBufferUtil.bytes("value"), "Int32Type");
+
+        CqlResult result = new CqlResult(CqlResultType.ROWS);
+        result.setSchema(new CqlMetadata(nameTypes, valueTypes, "UTF8Type", "UTF8Type"));
+        for (int i = 0; i < rows; i++)
+        {
+            List<Column> columns = new ArrayList<Column>();
+            columns.add(new Column(ByteBufferUtil.bytes("name")).setValue(ByteBufferUtil.bytes("row" + i)));
+            columns.add(new Column(ByteBufferUtil.bytes("value")).setValue(ByteBufferUtil.bytes(i)));
+            result.addToRows(new CqlRow(ByteBufferUtil.bytes("row" + i), columns));
+        }
+        return result;
+    }
+
+    private static CassandraResultSet resultSet(int rows) throws SQLException
+    {
+        return new CassandraResultSet(mock(CassandraStatement.class), result(rows));
+    }
+
+    @Test
+    public void testForEachRow() throws Exception
+    {
+        CassandraResultSet resultSet = resultSet(5);
+        assertTrue(resultSet.next());
+        assertEquals("row0", resultSet.getString(1));
+
+        final List<Row> copies = new ArrayList<Row>();
+        int handled = resultSet.forEachRow(new RowHandler()
+        {
+            public boolean handle(Row row) throws SQLException
+            {
+                assertEquals(2, row.getColumnCount());
+                assertEquals("value", row.getColumnName(2));
+                assertEquals("row" + row.getInt("value"), row.getString(1));
+                assertEquals((long) row.getInt(2), row.getLong("value"));
+                copies.add(row.copy());
+                return row.getInt(2) < 3;
+            }
+        });
+
+        // the iteration starts after the current row and stops when asked to
+        assertEquals(3, handled);
+        assertEquals(3, copies.size());
+        assertEquals(1, copies.get(0).getInt(2));
+        assertEquals(3, copies.get(2).getInt(2));
+
+        // the cursor continues after the last row handled
+        assertTrue(resultSet.next());
+        assertEquals(4, resultSet.getInt(2));
+        assertFalse(resultSet.next());
+    }
+
+    @Test
+    public void testRowIterator() throws Exception
+    {
+        Iterator<Row> rows = resultSet(3).rowIterator();
+        Row first = rows.next();
+        assertEquals("row0", first.getString("name"));
+        assertFalse(first.isNull(1));
+        assertEquals(ByteBufferUtil.bytes(0), first.getBytes(2));
+
+        // the same view is reset for each row
+        assertSame(first, rows.next());
+        assertEquals(1, first.getInt(2));
+        rows.next();
+        assertFalse(rows.hasNext());
+    }
+
+    @Test
+    public void testConversionErrors() throws Exception
+    {
+        Row row = resultSet(1).rowIterator().next();
+        try
+        {
+            row.getInt("missing");
+            fail();
+        }
+        catch (IllegalArgumentException e)
+        {
+        }
+        try
+        {
+            row.getList(2);
+            fail();
+        }
+        catch (ClassCastException e)
+        {
+        }
+    }
+}